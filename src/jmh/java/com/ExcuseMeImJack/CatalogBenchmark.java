@@ -0,0 +1,88 @@
+package com.ExcuseMeImJack;
+
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Catalog replay on startup, retention selection and backup ID tab completion with a large backup history
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CatalogBenchmark {
+
+	private static final String COMMAND = "serverbackup restoreworld ";
+	private static final RetentionPolicy RETENTION = new RetentionPolicy(12, 48, 14, 8, 12, 0, 0);
+
+	@Param({"1000", "10000"})
+	public int backups;
+
+	private Path catalogFile;
+	private BackupCatalog catalog;
+	private long now;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		catalogFile = Paths.get("build", "jmh-work", "catalog-" + backups + ".jsonl");
+		Files.createDirectories(catalogFile.getParent());
+		Files.deleteIfExists(catalogFile);
+
+		Random random = new Random(backups);
+		catalog = new BackupCatalog(catalogFile);
+		long timestamp = System.currentTimeMillis() - backups * 3_600_000L;
+		for (int i = 0; i < backups; i++) {
+			String id = String.format("%05d", i);
+			String type = i % 10 == 0 ? "manual" : "auto";
+			BackupFormat format = type.equals("manual") ? BackupFormat.ARCHIVE : BackupFormat.INCREMENTAL;
+			catalog.add(new BackupCatalog.Entry(id, type, timestamp, Paths.get("server_backups", type + "_backups", id),
+					random.nextInt(1 << 30), random.nextInt(10_000), String.format("sha256:%064x", random.nextLong()),
+					format));
+			timestamp += 3_600_000L;
+		}
+		now = timestamp;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(catalogFile);
+	}
+
+	@Benchmark
+	public BackupCatalog loadCatalog() throws IOException {
+		BackupCatalog loaded = new BackupCatalog(catalogFile);
+		loaded.load();
+		return loaded;
+	}
+
+	@Benchmark
+	public List<BackupCatalog.Entry> selectExpired() {
+		return RETENTION.select(catalog.getEntries(), now, ZoneId.systemDefault());
+	}
+
+	// Same work as ServerBackup.suggestBackupIDs for one completion request
+	@Benchmark
+	public Suggestions suggestBackupIds() {
+		SuggestionsBuilder builder = new SuggestionsBuilder(COMMAND, COMMAND.length());
+		for (BackupCatalog.Entry entry : catalog.getEntries()) {
+			builder.suggest(entry.getId());
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,150 @@
+package com.ExcuseMeImJack;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+// Generates a world folder laid out like a dedicated server's: region, entities and poi files with valid
+// region headers in all three dimensions, plus playerdata, stats, advancements and map data. Worlds are
+// cached under build/jmh-worlds so each scale is only generated once.
+public class SyntheticWorld {
+
+	private static final Path CACHE_DIR = Paths.get("build", "jmh-worlds");
+	private static final String COMPLETE_MARKER = ".complete";
+	private static final int POOL_SIZE = 4 << 20;
+
+	public enum Scale {
+		// ~1 GiB in a few hundred large files
+		ONE_GB(80, 1024, 64, 100),
+		// ~10 GiB in ~5 000 files
+		TEN_GB(800, 1024, 640, 1000),
+		// ~100 000 small files
+		HUNDRED_K_FILES(400, 16, 30_000, 8_000);
+
+		private final int regions;
+		private final int chunksPerRegion;
+		private final int players;
+		private final int maps;
+
+		Scale(int regions, int chunksPerRegion, int players, int maps) {
+			this.regions = regions;
+			this.chunksPerRegion = chunksPerRegion;
+			this.players = players;
+			this.maps = maps;
+		}
+	}
+
+	private final Random random;
+	private final byte[] pool = new byte[POOL_SIZE];
+
+	private SyntheticWorld(long seed) {
+		this.random = new Random(seed);
+		// Half random, half runs of repeated bytes, so the data compresses roughly like chunk NBT does
+		random.nextBytes(pool);
+		for (int i = 0; i < POOL_SIZE; i += 256) {
+			if (random.nextBoolean()) {
+				Arrays.fill(pool, i, Math.min(i + 256, POOL_SIZE), pool[i]);
+			}
+		}
+	}
+
+	public static Path generate(Scale scale) throws IOException {
+		Path worldDir = CACHE_DIR.resolve(scale.name().toLowerCase()).resolve("world");
+		if (Files.exists(worldDir.resolve(COMPLETE_MARKER))) {
+			return worldDir;
+		}
+		if (Files.exists(worldDir)) {
+			BackupFiles.deleteDirectory(worldDir);
+		}
+
+		new SyntheticWorld(scale.ordinal()).write(worldDir, scale);
+		Files.createFile(worldDir.resolve(COMPLETE_MARKER));
+		return worldDir;
+	}
+
+	private void write(Path worldDir, Scale scale) throws IOException {
+		Files.createDirectories(worldDir);
+		writeFile(worldDir.resolve("level.dat"), 4096);
+		writeFile(worldDir.resolve("level.dat_old"), 4096);
+		writeFile(worldDir.resolve("session.lock"), 3);
+
+		// The overworld gets most of the regions; the nether and the end a tenth each
+		int dimensionRegions = Math.max(1, scale.regions / 10);
+		writeDimension(worldDir, scale.regions - 2 * dimensionRegions, scale.chunksPerRegion);
+		writeDimension(worldDir.resolve("DIM-1"), dimensionRegions, scale.chunksPerRegion);
+		writeDimension(worldDir.resolve("DIM1"), dimensionRegions, scale.chunksPerRegion);
+
+		for (int i = 0; i < scale.players; i++) {
+			String uuid = new UUID(random.nextLong(), random.nextLong()).toString();
+			writeFile(worldDir.resolve("playerdata").resolve(uuid + ".dat"), 2048 + random.nextInt(8192));
+			writeFile(worldDir.resolve("stats").resolve(uuid + ".json"), 512 + random.nextInt(4096));
+			writeFile(worldDir.resolve("advancements").resolve(uuid + ".json"), 512 + random.nextInt(2048));
+		}
+
+		for (int i = 0; i < scale.maps; i++) {
+			writeFile(worldDir.resolve("data").resolve("map_" + i + ".dat"), 1024 + random.nextInt(2048));
+		}
+		writeFile(worldDir.resolve("data").resolve("raids.dat"), 256);
+		writeFile(worldDir.resolve("data").resolve("random_sequences.dat"), 1024);
+	}
+
+	private void writeDimension(Path dimensionDir, int regions, int chunksPerRegion) throws IOException {
+		int side = (int) Math.ceil(Math.sqrt(regions));
+		for (int i = 0; i < regions; i++) {
+			String name = RegionFile.fileName(i % side - side / 2, i / side - side / 2);
+			// Region data dominates; entities and poi hold far less per chunk
+			writeRegion(dimensionDir.resolve("region").resolve(name), chunksPerRegion, 6144, 4096);
+			writeRegion(dimensionDir.resolve("entities").resolve(name), chunksPerRegion, 256, 1024);
+			writeRegion(dimensionDir.resolve("poi").resolve(name), chunksPerRegion / 4, 128, 512);
+		}
+	}
+
+	private void writeRegion(Path file, int chunks, int minPayload, int payloadSpread) throws IOException {
+		Files.createDirectories(file.getParent());
+		ByteBuffer header = ByteBuffer.allocate(RegionFile.HEADER_SIZE);
+		int sector = RegionFile.HEADER_SIZE / RegionFile.SECTOR_SIZE;
+		int timestamp = (int) (System.currentTimeMillis() / 1000);
+
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			out.position(RegionFile.HEADER_SIZE);
+			for (int i = 0; i < Math.min(chunks, RegionFile.CHUNK_COUNT); i++) {
+				int payload = minPayload + random.nextInt(payloadSpread);
+				int sectors = (payload + 5 + RegionFile.SECTOR_SIZE - 1) / RegionFile.SECTOR_SIZE;
+				ByteBuffer chunk = ByteBuffer.allocate(sectors * RegionFile.SECTOR_SIZE);
+				chunk.putInt(payload + 1);
+				// Compression type 3 (uncompressed) keeps the payload readable by RegionFile.decompress
+				chunk.put((byte) 3);
+				chunk.put(pool, random.nextInt(POOL_SIZE - payload), payload);
+				chunk.clear();
+				while (chunk.hasRemaining()) {
+					out.write(chunk);
+				}
+
+				header.putInt(i * 4, sector << 8 | sectors);
+				header.putInt(RegionFile.SECTOR_SIZE + i * 4, timestamp);
+				sector += sectors;
+			}
+
+			header.clear();
+			while (header.hasRemaining()) {
+				out.write(header, header.position());
+			}
+		}
+	}
+
+	private void writeFile(Path file, int size) throws IOException {
+		Files.createDirectories(file.getParent());
+		try (OutputStream out = Files.newOutputStream(file)) {
+			out.write(pool, random.nextInt(POOL_SIZE - size), size);
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package com.ExcuseMeImJack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Full backup, restore and retention pruning against a generated world. Every invocation works on a
+// freshly emptied target folder, so each is timed once (single shot) rather than in a loop.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WorldBackupBenchmark {
+
+	private static final int COPY_WORKERS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	private static final int ARCHIVE_COMPRESSION_LEVEL = 3;
+	private static final int PRUNED_BACKUPS = 2;
+
+	@Param({"ONE_GB", "TEN_GB", "HUNDRED_K_FILES"})
+	public SyntheticWorld.Scale scale;
+
+	private Path worldDir;
+	private Path workDir;
+	private Path target;
+	private CopyEngine copyEngine;
+	private WorldSnapshot snapshot;
+	private Path directoryBackup;
+	private Path archiveBackup;
+	private IncrementalBackupEngine incrementalEngine;
+	private BackupManifest incrementalManifest;
+	private IncrementalBackupEngine chunkedEngine;
+	private BackupManifest chunkedManifest;
+	private WorldSnapshot touchedSnapshot;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		worldDir = SyntheticWorld.generate(scale);
+		workDir = Paths.get("build", "jmh-work", scale.name().toLowerCase());
+		if (Files.exists(workDir)) {
+			BackupFiles.deleteDirectory(workDir);
+		}
+		target = workDir.resolve("target");
+		copyEngine = new CopyEngine(COPY_WORKERS);
+		snapshot = new WorldSnapshot(worldDir, WorldSnapshot.scan(worldDir, BackupFilter.DEFAULT),
+				System.currentTimeMillis(), 0);
+
+		// One backup of each format to restore from
+		directoryBackup = workDir.resolve("directory");
+		copyEngine.copyTree(worldDir, directoryBackup, BackupFilter.DEFAULT);
+
+		archiveBackup = workDir.resolve("archive").resolve(BackupArchive.FILE_NAME);
+		Files.createDirectories(archiveBackup.getParent());
+		writeArchive(archiveBackup);
+
+		incrementalEngine = new IncrementalBackupEngine(new ObjectStore(workDir.resolve("objects")), copyEngine);
+		incrementalManifest = incrementalEngine.backup(snapshot, null, "00001", "auto").manifest();
+		chunkedEngine = new IncrementalBackupEngine(new ObjectStore(workDir.resolve("chunked-objects")), copyEngine,
+				true);
+		chunkedManifest = chunkedEngine.backup(snapshot, null, "00001", "auto").manifest();
+
+		// Every region file saved since the last backup, as on a busy server, without any chunk in them changing
+		Map<Path, WorldSnapshot.FileState> touched = new LinkedHashMap<>();
+		snapshot.files().forEach((path, state) -> touched.put(path, path.toString().endsWith(".mca")
+				? new WorldSnapshot.FileState(state.size(), state.modified() + 1000) : state));
+		touchedSnapshot = new WorldSnapshot(worldDir, touched, System.currentTimeMillis(), 0);
+	}
+
+	@Setup(Level.Invocation)
+	public void clearTarget() throws IOException {
+		if (Files.exists(target)) {
+			BackupFiles.deleteDirectory(target);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		copyEngine.shutdown();
+		BackupFiles.deleteDirectory(workDir);
+	}
+
+	// Section: Backup
+	@Benchmark
+	public WorldSnapshot snapshotScan() throws IOException {
+		return new WorldSnapshot(worldDir, WorldSnapshot.scan(worldDir, BackupFilter.DEFAULT),
+				System.currentTimeMillis(), 0);
+	}
+
+	@Benchmark
+	public CopyEngine.CopyResult backupDirectory() throws IOException {
+		return copyEngine.copyTree(worldDir, target, BackupFilter.DEFAULT);
+	}
+
+	@Benchmark
+	public BackupArchive.WriteResult backupArchive() throws IOException {
+		Files.createDirectories(target);
+		return writeArchive(target.resolve(BackupArchive.FILE_NAME));
+	}
+
+	@Benchmark
+	public IncrementalBackupEngine.BackupResult backupIncrementalFirst() throws IOException {
+		IncrementalBackupEngine engine = new IncrementalBackupEngine(new ObjectStore(target), copyEngine);
+		return engine.backup(snapshot, null, "00001", "auto");
+	}
+
+	@Benchmark
+	public IncrementalBackupEngine.BackupResult backupIncrementalUnchanged() throws IOException {
+		return incrementalEngine.backup(snapshot, incrementalManifest, "00002", "auto");
+	}
+
+	@Benchmark
+	public IncrementalBackupEngine.BackupResult backupIncrementalRegionsTouched() throws IOException {
+		return incrementalEngine.backup(touchedSnapshot, incrementalManifest, "00002", "auto");
+	}
+
+	@Benchmark
+	public IncrementalBackupEngine.BackupResult backupChunkedRegionsTouched() throws IOException {
+		return chunkedEngine.backup(touchedSnapshot, chunkedManifest, "00002", "auto");
+	}
+
+	// Section: Restore
+	@Benchmark
+	public CopyEngine.CopyResult restoreDirectory() throws IOException {
+		return copyEngine.copyTree(directoryBackup, target, BackupFilter.DEFAULT);
+	}
+
+	@Benchmark
+	public CopyEngine.CopyResult restoreArchive() throws IOException {
+		try (BackupArchive archive = BackupArchive.open(archiveBackup)) {
+			return archive.extractAll(target, copyEngine.getWorkers());
+		}
+	}
+
+	@Benchmark
+	public CopyEngine.CopyResult restoreIncremental() throws IOException {
+		return incrementalEngine.restore(incrementalManifest, target);
+	}
+
+	@Benchmark
+	public CopyEngine.CopyResult restoreChunked() throws IOException {
+		return chunkedEngine.restore(chunkedManifest, target);
+	}
+
+	// Section: Retention
+	@State(Scope.Thread)
+	public static class PopulatedBackups {
+		private final List<BackupCatalog.Entry> entries = new ArrayList<>();
+
+		@Setup(Level.Invocation)
+		public void populate(WorldBackupBenchmark benchmark) throws IOException {
+			entries.clear();
+			for (int i = 0; i <= PRUNED_BACKUPS; i++) {
+				Path backupDir = benchmark.target.resolve("backup_" + i);
+				CopyEngine.CopyResult copied = benchmark.copyEngine.copyTree(benchmark.directoryBackup, backupDir,
+						BackupFilter.DEFAULT);
+				entries.add(new BackupCatalog.Entry(String.format("%05d", i), "manual", i, backupDir, copied.bytes(),
+						copied.files(), null, BackupFormat.DIRECTORY));
+			}
+		}
+	}
+
+	@Benchmark
+	public void deleteDirectory(PopulatedBackups backups) throws IOException {
+		BackupFiles.deleteDirectory(backups.entries.get(0).getPath());
+	}
+
+	@Benchmark
+	public int pruneExpired(PopulatedBackups backups) throws IOException {
+		List<BackupCatalog.Entry> expired = RetentionPolicy.keepLast(1).select(backups.entries,
+				System.currentTimeMillis(), ZoneId.systemDefault());
+		for (BackupCatalog.Entry entry : expired) {
+			BackupFiles.deleteDirectory(entry.getPath());
+		}
+		return expired.size();
+	}
+
+	private BackupArchive.WriteResult writeArchive(Path archive) throws IOException {
+		return BackupArchive.write(archive, worldDir, snapshot.files().keySet(), ARCHIVE_COMPRESSION_LEVEL,
+				copyEngine.getWorkers(), COPY_WORKERS * 4, IoBudget.UNLIMITED);
+	}
+}
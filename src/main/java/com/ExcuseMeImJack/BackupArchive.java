@@ -0,0 +1,413 @@
+package com.ExcuseMeImJack;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Single-file backup archive. Files are split into 1 MiB blocks that are deflated independently on the
+// worker pool, and an index of block offsets is written at the end so any entry can be read on its own.
+// Since version 2 the index also holds a CRC32C of each block's uncompressed data, computed by the worker
+// that compresses it and checked whenever the block is read back.
+public class BackupArchive implements Closeable {
+
+	public static final String FILE_NAME = "backup.sbak";
+	private static final int MAGIC = 0x5342414B;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 8;
+	private static final int TRAILER_SIZE = 12;
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+	private final int version;
+	private final Map<String, Entry> entries;
+
+	// checksum is 0 for blocks of version 1 archives, which were written without one
+	public record Block(long offset, int compressedLength, int length, int checksum) {
+	}
+
+	public record Entry(String path, long size, long modified, List<Block> blocks) {
+	}
+
+	public record WriteResult(long files, long bytes, long compressedBytes, long nanos, String checksum) {
+
+		@Override
+		public String toString() {
+			double seconds = nanos / 1_000_000_000.0;
+			return String.format("%d files, %.1f MB compressed to %.1f MB (%.0f%%) in %.2f s, %.1f MB/s", files,
+					bytes / 1_048_576.0, compressedBytes / 1_048_576.0,
+					bytes == 0 ? 100.0 : compressedBytes * 100.0 / bytes, seconds,
+					seconds == 0 ? 0 : bytes / 1_048_576.0 / seconds);
+		}
+	}
+
+	private BackupArchive(FileChannel channel, int version, Map<String, Entry> entries) {
+		this.channel = channel;
+		this.version = version;
+		this.entries = entries;
+	}
+
+	public static boolean exists(Path backupDir) {
+		return Files.isRegularFile(backupDir.resolve(FILE_NAME));
+	}
+
+	// Section: Writing
+	private record CompressedBlock(byte[] data, int checksum) {
+	}
+
+	private record PendingBlock(List<Block> blocks, int length, Future<CompressedBlock> data) {
+	}
+
+	public static WriteResult write(Path archive, Path sourceRoot, Collection<Path> relativeFiles, int level,
+			ExecutorService workers, int maxInFlight, IoBudget budget) throws IOException {
+		long start = System.nanoTime();
+		long files = 0;
+		long bytes = 0;
+		List<Entry> written = new ArrayList<>(relativeFiles.size());
+		Deque<PendingBlock> pending = new ArrayDeque<>();
+		CRC32C checksum = new CRC32C();
+
+		try (FileChannel out = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+			writeFully(out, header);
+			long position = HEADER_SIZE;
+
+			for (Path relativePath : relativeFiles) {
+				Path file = sourceRoot.resolve(relativePath);
+				List<Block> blocks = new ArrayList<>();
+				long size = 0;
+				long modified;
+
+				try (InputStream in = Files.newInputStream(file)) {
+					modified = Files.getLastModifiedTime(file).toMillis();
+					byte[] chunk;
+					while ((chunk = in.readNBytes(BLOCK_SIZE)).length > 0) {
+						budget.acquire(chunk.length);
+						byte[] input = chunk;
+						pending.add(new PendingBlock(blocks, input.length, workers.submit(() -> compress(input, level))));
+						size += input.length;
+						while (pending.size() > maxInFlight) {
+							position = drain(out, pending.poll(), position, checksum);
+						}
+					}
+				} catch (NoSuchFileException e) {
+					ServerBackup.LOGGER.warn("File removed after snapshot, skipping: " + file);
+					continue;
+				}
+
+				written.add(new Entry(IncrementalBackupEngine.toManifestPath(relativePath), size, modified, blocks));
+				files++;
+				bytes += size;
+			}
+
+			while (!pending.isEmpty()) {
+				position = drain(out, pending.poll(), position, checksum);
+			}
+
+			long indexOffset = position;
+			out.position(indexOffset);
+			DataOutputStream index = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)));
+			index.writeInt(written.size());
+			for (Entry entry : written) {
+				index.writeUTF(entry.path());
+				index.writeLong(entry.size());
+				index.writeLong(entry.modified());
+				index.writeInt(entry.blocks().size());
+				for (Block block : entry.blocks()) {
+					index.writeLong(block.offset());
+					index.writeInt(block.compressedLength());
+					index.writeInt(block.length());
+					index.writeInt(block.checksum());
+				}
+			}
+			index.writeLong(indexOffset);
+			index.writeInt(MAGIC);
+			index.flush();
+			out.force(true);
+
+			return new WriteResult(files, bytes, indexOffset - HEADER_SIZE, System.nanoTime() - start,
+					String.format("crc32c:%08x", checksum.getValue()));
+		} finally {
+			pending.forEach(block -> block.data().cancel(true));
+		}
+	}
+
+	private static long drain(FileChannel out, PendingBlock block, long position, CRC32C checksum)
+			throws IOException {
+		CompressedBlock compressed;
+		try {
+			compressed = block.data().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Archive write interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to compress block", e.getCause());
+		}
+
+		byte[] data = compressed.data();
+		out.position(position);
+		writeFully(out, ByteBuffer.wrap(data));
+		checksum.update(data);
+		block.blocks().add(new Block(position, data.length, block.length(), compressed.checksum()));
+		return position + data.length;
+	}
+
+	private static CompressedBlock compress(byte[] input, int level) {
+		CRC32C checksum = new CRC32C();
+		checksum.update(input);
+		return new CompressedBlock(deflate(input, level), (int) checksum.getValue());
+	}
+
+	private static byte[] deflate(byte[] input, int level) {
+		Deflater deflater = new Deflater(level);
+		try {
+			deflater.setInput(input);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 64);
+			byte[] buffer = new byte[64 * 1024];
+			while (!deflater.finished()) {
+				int length = deflater.deflate(buffer);
+				out.write(buffer, 0, length);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	// Section: Reading
+	public static BackupArchive open(Path archive) throws IOException {
+		FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size < HEADER_SIZE + TRAILER_SIZE) {
+				throw new IOException("Backup archive is truncated: " + archive);
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(channel, header, 0);
+			header.flip();
+			int version = header.getInt() == MAGIC ? header.getInt() : -1;
+			if (version < 1 || version > VERSION) {
+				throw new IOException("Not a supported backup archive: " + archive);
+			}
+
+			ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+			readFully(channel, trailer, size - TRAILER_SIZE);
+			trailer.flip();
+			long indexOffset = trailer.getLong();
+			if (trailer.getInt() != MAGIC || indexOffset < HEADER_SIZE || indexOffset > size - TRAILER_SIZE) {
+				throw new IOException("Backup archive has no valid index: " + archive);
+			}
+
+			channel.position(indexOffset);
+			DataInputStream index = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			int count = index.readInt();
+			Map<String, Entry> entries = new LinkedHashMap<>(count * 2);
+			for (int i = 0; i < count; i++) {
+				String path = index.readUTF();
+				long entrySize = index.readLong();
+				long modified = index.readLong();
+				int blockCount = index.readInt();
+				List<Block> blocks = new ArrayList<>(blockCount);
+				for (int b = 0; b < blockCount; b++) {
+					blocks.add(new Block(index.readLong(), index.readInt(), index.readInt(),
+							version >= 2 ? index.readInt() : 0));
+				}
+				entries.put(path, new Entry(path, entrySize, modified, blocks));
+			}
+			return new BackupArchive(channel, version, entries);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	// CRC32C over all compressed blocks in file order, the checksum returned by write
+	public String computeChecksum() throws IOException {
+		List<Block> blocks = new ArrayList<>();
+		for (Entry entry : entries.values()) {
+			blocks.addAll(entry.blocks());
+		}
+		blocks.sort(Comparator.comparingLong(Block::offset));
+
+		CRC32C checksum = new CRC32C();
+		for (Block block : blocks) {
+			ByteBuffer compressed = ByteBuffer.allocate(block.compressedLength());
+			readFully(channel, compressed, block.offset());
+			checksum.update(compressed.array());
+		}
+		return String.format("crc32c:%08x", checksum.getValue());
+	}
+
+	public Entry get(String path) {
+		return entries.get(path);
+	}
+
+	public InputStream openEntry(String path) {
+		Entry entry = entries.get(path);
+		return entry == null ? null : new EntryInputStream(entry);
+	}
+
+	public CopyEngine.CopyResult extractAll(Path target, ExecutorService workers) throws IOException {
+		long start = System.nanoTime();
+		AtomicLong bytes = new AtomicLong();
+		List<Future<?>> futures = new ArrayList<>(entries.size());
+
+		for (Entry entry : entries.values()) {
+			futures.add(workers.submit(() -> {
+				Path targetPath = target.resolve(entry.path());
+				try {
+					Files.createDirectories(targetPath.getParent());
+					try (OutputStream out = Files.newOutputStream(targetPath)) {
+						for (Block block : entry.blocks()) {
+							out.write(readBlock(block));
+						}
+					}
+					bytes.addAndGet(entry.size());
+				} catch (IOException e) {
+					throw new UncheckedIOException("Failed to extract " + entry.path(), e);
+				}
+			}));
+		}
+
+		CopyEngine.awaitAll(futures, "Extraction");
+
+		return new CopyEngine.CopyResult(entries.size(), bytes.get(), System.nanoTime() - start);
+	}
+
+	private byte[] readBlock(Block block) throws IOException {
+		ByteBuffer compressed = ByteBuffer.allocate(block.compressedLength());
+		readFully(channel, compressed, block.offset());
+
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed.array());
+			byte[] data = new byte[block.length()];
+			int inflated = 0;
+			while (inflated < data.length && !inflater.finished()) {
+				int length = inflater.inflate(data, inflated, data.length - inflated);
+				if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated += length;
+			}
+			if (inflated != data.length) {
+				throw new IOException("Corrupt archive block at offset " + block.offset());
+			}
+			if (version >= 2) {
+				CRC32C checksum = new CRC32C();
+				checksum.update(data);
+				if ((int) checksum.getValue() != block.checksum()) {
+					throw new IOException("Checksum mismatch in archive block at offset " + block.offset());
+				}
+			}
+			return data;
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt archive block at offset " + block.offset(), e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new EOFException("Unexpected end of backup archive");
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private class EntryInputStream extends InputStream {
+		private final Entry entry;
+		private int blockIndex = 0;
+		private byte[] current = new byte[0];
+		private int offset = 0;
+
+		private EntryInputStream(Entry entry) {
+			this.entry = entry;
+		}
+
+		private boolean fill() throws IOException {
+			while (offset >= current.length) {
+				if (blockIndex >= entry.blocks().size()) {
+					return false;
+				}
+				current = readBlock(entry.blocks().get(blockIndex++));
+				offset = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return fill() ? current[offset++] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] buffer, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int length = Math.min(len, current.length - offset);
+			System.arraycopy(current, offset, buffer, off, length);
+			offset += length;
+			return length;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package com.ExcuseMeImJack;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Append-only log of every backup. Each line adds or removes one entry; the whole log is replayed into
+// memory on startup, so lookups and listings never touch the backup folders.
+public class BackupCatalog {
+
+	private static final Gson GSON = new Gson();
+	private static final Comparator<Entry> BY_TIME = Comparator.comparingLong(Entry::getTimestamp)
+			.thenComparing(Entry::getId);
+
+	private final Path file;
+	private final Map<String, Entry> entriesById = new HashMap<>();
+	private final List<Entry> entriesByTime = new ArrayList<>();
+	private int deadRecords = 0;
+	// Handed out by newId to backups that are not cataloged yet
+	private final Set<String> reservedIds = new HashSet<>();
+
+	public static class Entry {
+		private String id;
+		private String type;
+		private long timestamp;
+		private String path;
+		private long size;
+		private long files;
+		private String checksum;
+		private BackupFormat format;
+		// The backup unit it holds, or null for a backup of the whole world
+		private String unit;
+
+		public Entry(String id, String type, long timestamp, Path path, long size, long files, String checksum,
+				BackupFormat format) {
+			this(id, type, timestamp, path, size, files, checksum, format, null);
+		}
+
+		public Entry(String id, String type, long timestamp, Path path, long size, long files, String checksum,
+				BackupFormat format, String unit) {
+			this.id = id;
+			this.type = type;
+			this.timestamp = timestamp;
+			this.path = path.toString();
+			this.size = size;
+			this.files = files;
+			this.checksum = checksum;
+			this.format = format;
+			this.unit = unit;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public Path getPath() {
+			return Paths.get(path);
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getFiles() {
+			return files;
+		}
+
+		public String getChecksum() {
+			return checksum;
+		}
+
+		public BackupFormat getFormat() {
+			return format;
+		}
+
+		public String getUnit() {
+			return unit;
+		}
+
+		// Whole-world backups and those of the root unit hold level.dat and the player data
+		public boolean holdsPlayerData() {
+			return unit == null || unit.equals(BackupUnit.ROOT);
+		}
+	}
+
+	private static class LogRecord {
+		private String op;
+		private String id;
+		private Entry entry;
+
+		private LogRecord(String op, String id, Entry entry) {
+			this.op = op;
+			this.id = id;
+			this.entry = entry;
+		}
+	}
+
+	public BackupCatalog(Path file) {
+		this.file = file;
+	}
+
+	public synchronized void load() throws IOException {
+		entriesById.clear();
+		entriesByTime.clear();
+		deadRecords = 0;
+
+		if (!Files.exists(file)) {
+			return;
+		}
+		if (BackupFiles.truncateTornLine(file)) {
+			ServerBackup.LOGGER.warn("Dropped a partly written last line from " + file);
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				try {
+					apply(GSON.fromJson(line, LogRecord.class));
+				} catch (JsonParseException e) {
+					ServerBackup.LOGGER.warn("Skipping unreadable backup catalog line: " + line);
+					deadRecords++;
+				}
+			}
+		}
+
+		entriesByTime.addAll(entriesById.values());
+		entriesByTime.sort(BY_TIME);
+	}
+
+	private void apply(LogRecord record) {
+		if (record == null || record.op == null) {
+			deadRecords++;
+			return;
+		}
+		switch (record.op) {
+			case "add" -> {
+				if (entriesById.put(record.entry.getId(), record.entry) != null) {
+					deadRecords++;
+				}
+			}
+			case "remove" -> {
+				entriesById.remove(record.id);
+				deadRecords += 2;
+			}
+			default -> deadRecords++;
+		}
+	}
+
+	// A short ID to type in commands that no cataloged backup and no backup still being made has. IDs have five
+	// digits until half of those are taken.
+	public synchronized String newId() {
+		int bound = entriesById.size() + reservedIds.size() < 45_000 ? 100_000 : Integer.MAX_VALUE;
+		String id;
+		do {
+			id = Integer.toString(ThreadLocalRandom.current().nextInt(10_000, bound));
+		} while (entriesById.containsKey(id) || reservedIds.contains(id));
+		reservedIds.add(id);
+		return id;
+	}
+
+	// For a backup that failed before it was cataloged
+	public synchronized void releaseId(String id) {
+		reservedIds.remove(id);
+	}
+
+	// A second backup with the same ID would replace the first, whose objects would then be collected as garbage
+	public synchronized void add(Entry entry) throws IOException {
+		if (entriesById.containsKey(entry.getId())) {
+			throw new IOException("A backup with ID " + entry.getId() + " is already cataloged");
+		}
+		append(new LogRecord("add", entry.getId(), entry));
+
+		entriesById.put(entry.getId(), entry);
+		reservedIds.remove(entry.getId());
+		int index = Collections.binarySearch(entriesByTime, entry, BY_TIME);
+		entriesByTime.add(index < 0 ? -index - 1 : index, entry);
+	}
+
+	public synchronized Entry remove(String id) throws IOException {
+		Entry entry = entriesById.remove(id);
+		if (entry == null) {
+			return null;
+		}
+		append(new LogRecord("remove", id, null));
+		entriesByTime.remove(entry);
+		deadRecords += 2;
+		return entry;
+	}
+
+	public synchronized Entry get(String id) {
+		return entriesById.get(id);
+	}
+
+	// Oldest first
+	public synchronized List<Entry> getEntries() {
+		return List.copyOf(entriesByTime);
+	}
+
+	// Up to count entries starting at the given position in time order, copied so a page of a long list does
+	// not copy the whole catalog
+	public synchronized List<Entry> getEntries(int from, int count) {
+		int start = Math.max(0, Math.min(from, entriesByTime.size()));
+		return List.copyOf(entriesByTime.subList(start, Math.min(entriesByTime.size(), start + count)));
+	}
+
+	// The newest backup taken before the given one with the same type and unit, or null. Walks back from the
+	// given backup, so a backup with a recent predecessor is found without going through the whole list.
+	public synchronized Entry getPrevious(Entry backup) {
+		int index = Collections.binarySearch(entriesByTime, backup, BY_TIME);
+		for (int i = (index < 0 ? -index - 1 : index) - 1; i >= 0; i--) {
+			Entry entry = entriesByTime.get(i);
+			if (entry.getTimestamp() < backup.getTimestamp() && Objects.equals(entry.getType(), backup.getType())
+					&& Objects.equals(entry.getUnit(), backup.getUnit())) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	public synchronized int size() {
+		return entriesById.size();
+	}
+
+	public synchronized boolean needsCompaction() {
+		return deadRecords > Math.max(64, entriesById.size());
+	}
+
+	public synchronized void compact() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (Entry entry : entriesByTime) {
+			text.append(GSON.toJson(new LogRecord("add", entry.getId(), entry))).append('\n');
+		}
+		BackupFiles.replaceAtomically(file, text.toString().getBytes(StandardCharsets.UTF_8));
+		deadRecords = 0;
+	}
+
+	private void append(LogRecord record) throws IOException {
+		BackupFiles.appendLines(file, List.of(GSON.toJson(record)));
+	}
+}
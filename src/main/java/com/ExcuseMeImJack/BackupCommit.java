@@ -0,0 +1,41 @@
+package com.ExcuseMeImJack;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// The commit marker of a backup. It is written last, after everything else in the backup folder has been
+// synced, so a folder without one was never finished. It holds the backup's catalog entry, which lets a backup
+// that was moved into place but not yet cataloged when the server stopped be recovered on the next start.
+public class BackupCommit {
+
+	public static final String FILE_NAME = "commit.json";
+	private static final Gson GSON = new Gson();
+
+	private BackupCommit() {
+	}
+
+	public static boolean exists(Path backupDir) {
+		return Files.isRegularFile(backupDir.resolve(FILE_NAME));
+	}
+
+	public static void write(Path backupDir, BackupCatalog.Entry entry) throws IOException {
+		BackupFiles.writeSynced(backupDir.resolve(FILE_NAME), GSON.toJson(entry).getBytes(StandardCharsets.UTF_8));
+		BackupFiles.syncDirectory(backupDir);
+	}
+
+	// Returns null if the marker is missing or unreadable
+	public static BackupCatalog.Entry read(Path backupDir) {
+		try {
+			BackupCatalog.Entry entry = GSON.fromJson(
+					Files.readString(backupDir.resolve(FILE_NAME), StandardCharsets.UTF_8), BackupCatalog.Entry.class);
+			return entry == null || entry.getId() == null ? null : entry;
+		} catch (IOException | JsonParseException e) {
+			return null;
+		}
+	}
+}
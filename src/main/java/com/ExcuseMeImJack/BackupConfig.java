@@ -0,0 +1,396 @@
+package com.ExcuseMeImJack;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// The mod's settings, kept in config/serverbackup.json. The file is written with the defaults on first start,
+// taking over the -Dserverbackup.* properties older versions were configured with. It is checked when the mod
+// starts, and a file that cannot be read or holds an invalid setting stops the server rather than running
+// with defaults that might prune backups the owner meant to keep.
+//
+// Instances are not changed once loaded: a reload, or a command that changes a setting, swaps in a new one.
+// backupRoot, metricsPort and the replication target, endpoint, region and workers are read on start only.
+public class BackupConfig {
+
+	public static final String FILE_NAME = "serverbackup.json";
+	public static final List<String> BACKUP_TYPES = List.of("manual", "auto", "safety");
+	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+	private String backupRoot = "server_backups";
+	private int jobWorkers = 2;
+	private int copyWorkers = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	private int compressionLevel = 3;
+	// Incremental backups store region files chunk by chunk, so only the chunks saved since the last backup
+	// are written
+	private boolean chunkedRegions = true;
+	private Io io = new Io();
+	private Map<String, BackupType> types = new LinkedHashMap<>();
+	private Map<String, Unit> units = new LinkedHashMap<>();
+	private int metricsPort = 0;
+	private Replication replication = new Replication();
+
+	public static class Io {
+		private long backupMegabytesPerSecond = 0;
+		private long backupReadsPerSecond = 0;
+		private long scrubMegabytesPerSecond = 16;
+		private double backoffMspt = 40.0;
+
+		public long getBackupMegabytesPerSecond() {
+			return backupMegabytesPerSecond;
+		}
+
+		public long getBackupReadsPerSecond() {
+			return backupReadsPerSecond;
+		}
+
+		public long getScrubMegabytesPerSecond() {
+			return scrubMegabytesPerSecond;
+		}
+
+		public double getBackoffMspt() {
+			return backoffMspt;
+		}
+	}
+
+	public static class BackupType {
+		private BackupFormat format;
+		// Left out of the file, no includes and the default excludes
+		private List<String> includes;
+		private List<String> excludes;
+		private Retention retention;
+
+		BackupType(BackupFormat format, Retention retention) {
+			this.format = format;
+			this.includes = List.of();
+			this.excludes = BackupFilter.DEFAULT_EXCLUDES;
+			this.retention = retention;
+		}
+
+		public BackupFormat getFormat() {
+			return format;
+		}
+
+		public BackupFilter getFilter() {
+			return new BackupFilter(includes == null ? List.of() : includes,
+					excludes == null ? BackupFilter.DEFAULT_EXCLUDES : excludes);
+		}
+
+		public Retention getRetention() {
+			return retention;
+		}
+	}
+
+	// An automatic backup unit, keyed by ROOT or the name of the dimension it covers
+	public static class Unit {
+		private int intervalMinutes;
+		private Retention retention;
+
+		Unit(int intervalMinutes, Retention retention) {
+			this.intervalMinutes = intervalMinutes;
+			this.retention = retention;
+		}
+
+		public int getIntervalMinutes() {
+			return intervalMinutes;
+		}
+
+		public Retention getRetention() {
+			return retention;
+		}
+	}
+
+	// The tiers of a RetentionPolicy; 0 turns a tier or cap off
+	public static class Retention {
+		private int keepLast;
+		private int hourly;
+		private int daily;
+		private int weekly;
+		private int monthly;
+		private long maxTotalMegabytes;
+		private long maxAgeDays;
+
+		Retention(int keepLast, int hourly, int daily, int weekly, int monthly) {
+			this.keepLast = keepLast;
+			this.hourly = hourly;
+			this.daily = daily;
+			this.weekly = weekly;
+			this.monthly = monthly;
+		}
+
+		public RetentionPolicy toPolicy() {
+			return new RetentionPolicy(keepLast, hourly, daily, weekly, monthly, maxTotalMegabytes * 1_048_576L,
+					maxAgeDays * 24 * 60 * 60 * 1000);
+		}
+	}
+
+	public static class Replication {
+		// A directory or s3://bucket/prefix; empty to not replicate
+		private String target = "";
+		private String endpoint = "";
+		private String region = "us-east-1";
+		private long megabytesPerSecond = 0;
+		private int workers = 4;
+
+		public String getTarget() {
+			return target;
+		}
+
+		// Null for AWS itself
+		public String getEndpoint() {
+			return endpoint == null || endpoint.isEmpty() ? null : endpoint;
+		}
+
+		public String getRegion() {
+			return region;
+		}
+
+		public long getMegabytesPerSecond() {
+			return megabytesPerSecond;
+		}
+
+		public int getWorkers() {
+			return workers;
+		}
+	}
+
+	public static BackupConfig defaults() {
+		BackupConfig config = new BackupConfig();
+		config.types.put("manual", new BackupType(BackupFormat.ARCHIVE, new Retention(5, 0, 0, 0, 0)));
+		config.types.put("auto", new BackupType(BackupFormat.INCREMENTAL, new Retention(12, 48, 14, 8, 12)));
+		// Safety snapshots go through the incremental path so they only copy what changed since the last backup
+		config.types.put("safety", new BackupType(BackupFormat.INCREMENTAL, new Retention(5, 0, 0, 0, 0)));
+		// The nether and the end are backed up apart from the rest of the world, which changes far more often
+		config.units.put(BackupUnit.ROOT, new Unit(10, new Retention(12, 48, 14, 8, 12)));
+		config.units.put("minecraft:the_nether", new Unit(10, new Retention(12, 48, 14, 8, 12)));
+		config.units.put("minecraft:the_end", new Unit(30, new Retention(6, 24, 14, 8, 12)));
+
+		config.metricsPort = Integer.getInteger("serverbackup.metricsPort", config.metricsPort);
+		Replication replication = config.replication;
+		replication.target = System.getProperty("serverbackup.replication.target", replication.target);
+		replication.endpoint = System.getProperty("serverbackup.replication.endpoint", replication.endpoint);
+		replication.region = System.getProperty("serverbackup.replication.region", replication.region);
+		replication.megabytesPerSecond = Integer.getInteger("serverbackup.replication.megabytesPerSecond",
+				(int) replication.megabytesPerSecond);
+		return config;
+	}
+
+	// Section: Persistence
+	// Reads the file, writing it with the defaults first if there is none. Throws if the file cannot be parsed
+	// or a setting is invalid, naming every invalid setting.
+	public static BackupConfig load(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			BackupConfig config = defaults();
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			config.save(file);
+			return config;
+		}
+
+		BackupConfig config;
+		try {
+			config = GSON.fromJson(Files.readString(file, StandardCharsets.UTF_8), BackupConfig.class);
+		} catch (JsonParseException e) {
+			throw new IOException("Backup config is unreadable: " + file + ": " + e.getMessage(), e);
+		}
+		if (config == null) {
+			throw new IOException("Backup config is empty: " + file);
+		}
+		List<String> problems = config.validate();
+		if (!problems.isEmpty()) {
+			throw new IOException("Backup config " + file + " is invalid: " + String.join("; ", problems));
+		}
+		return config;
+	}
+
+	public void save(Path file) throws IOException {
+		BackupFiles.replaceAtomically(file, GSON.toJson(this).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private BackupConfig copy() {
+		return GSON.fromJson(GSON.toJson(this), BackupConfig.class);
+	}
+
+	// Section: Validation
+	public List<String> validate() {
+		List<String> problems = new ArrayList<>();
+		if (backupRoot == null || backupRoot.isBlank()) {
+			problems.add("backupRoot must be set");
+		}
+		checkRange(problems, "jobWorkers", jobWorkers, 1, 16);
+		checkRange(problems, "copyWorkers", copyWorkers, 1, 64);
+		checkRange(problems, "compressionLevel", compressionLevel, 0, 9);
+		checkRange(problems, "metricsPort", metricsPort, 0, 65535);
+
+		if (io == null) {
+			problems.add("io must be set");
+		} else {
+			checkRange(problems, "io.backupMegabytesPerSecond", io.backupMegabytesPerSecond, 0, Integer.MAX_VALUE);
+			checkRange(problems, "io.backupReadsPerSecond", io.backupReadsPerSecond, 0, Integer.MAX_VALUE);
+			checkRange(problems, "io.scrubMegabytesPerSecond", io.scrubMegabytesPerSecond, 0, Integer.MAX_VALUE);
+			if (!(io.backoffMspt > 0)) {
+				problems.add("io.backoffMspt must be above 0");
+			}
+		}
+
+		for (String type : BACKUP_TYPES) {
+			BackupType settings = types == null ? null : types.get(type);
+			if (settings == null) {
+				problems.add("types." + type + " must be set");
+				continue;
+			}
+			if (settings.format == null) {
+				problems.add("types." + type + ".format must be one of DIRECTORY, INCREMENTAL or ARCHIVE");
+			}
+			try {
+				settings.getFilter();
+			} catch (IllegalArgumentException e) {
+				problems.add("types." + type + " has an invalid pattern: " + e.getMessage());
+			}
+			checkRetention(problems, "types." + type + ".retention", settings.retention);
+		}
+
+		if (units == null || !units.containsKey(BackupUnit.ROOT)) {
+			problems.add("units." + BackupUnit.ROOT + " must be set");
+		}
+		if (units != null) {
+			for (Map.Entry<String, Unit> unit : units.entrySet()) {
+				String key = "units." + unit.getKey();
+				if (unit.getValue() == null) {
+					problems.add(key + " must be set");
+					continue;
+				}
+				if (!unit.getKey().equals(BackupUnit.ROOT)) {
+					try {
+						BackupUnit.directoryOf(unit.getKey());
+					} catch (IllegalArgumentException e) {
+						problems.add(key + ": " + e.getMessage());
+					}
+				}
+				checkRange(problems, key + ".intervalMinutes", unit.getValue().intervalMinutes, 1, 7 * 24 * 60);
+				checkRetention(problems, key + ".retention", unit.getValue().retention);
+			}
+		}
+
+		if (replication == null) {
+			problems.add("replication must be set");
+		} else {
+			checkRange(problems, "replication.megabytesPerSecond", replication.megabytesPerSecond, 0,
+					Integer.MAX_VALUE);
+			checkRange(problems, "replication.workers", replication.workers, 1, 16);
+			if (replication.region == null || replication.region.isBlank()) {
+				problems.add("replication.region must be set");
+			}
+		}
+		return problems;
+	}
+
+	private static void checkRetention(List<String> problems, String key, Retention retention) {
+		if (retention == null) {
+			problems.add(key + " must be set");
+			return;
+		}
+		checkRange(problems, key + ".keepLast", retention.keepLast, 0, Integer.MAX_VALUE);
+		checkRange(problems, key + ".hourly", retention.hourly, 0, Integer.MAX_VALUE);
+		checkRange(problems, key + ".daily", retention.daily, 0, Integer.MAX_VALUE);
+		checkRange(problems, key + ".weekly", retention.weekly, 0, Integer.MAX_VALUE);
+		checkRange(problems, key + ".monthly", retention.monthly, 0, Integer.MAX_VALUE);
+		checkRange(problems, key + ".maxTotalMegabytes", retention.maxTotalMegabytes, 0, Long.MAX_VALUE / 1_048_576L);
+		checkRange(problems, key + ".maxAgeDays", retention.maxAgeDays, 0, 100 * 365);
+	}
+
+	private static void checkRange(List<String> problems, String key, long value, long min, long max) {
+		if (value < min || value > max) {
+			problems.add(key + " must be between " + min + " and " + max + ", not " + value);
+		}
+	}
+
+	// The settings read on start only that differ from the ones the server started with
+	public List<String> changesNeedingRestart(BackupConfig started) {
+		List<String> changed = new ArrayList<>();
+		if (!backupRoot.equals(started.backupRoot)) {
+			changed.add("backupRoot");
+		}
+		if (metricsPort != started.metricsPort) {
+			changed.add("metricsPort");
+		}
+		if (!Objects.equals(replication.target, started.replication.target)
+				|| !Objects.equals(replication.getEndpoint(), started.replication.getEndpoint())
+				|| !replication.region.equals(started.replication.region)
+				|| replication.workers != started.replication.workers) {
+			changed.add("replication");
+		}
+		if (!units.keySet().equals(started.units.keySet())) {
+			changed.add("units (added or removed)");
+		}
+		return changed;
+	}
+
+	// Section: Settings
+	public String getBackupRoot() {
+		return backupRoot;
+	}
+
+	public int getJobWorkers() {
+		return jobWorkers;
+	}
+
+	public int getCopyWorkers() {
+		return copyWorkers;
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	public boolean isChunkedRegions() {
+		return chunkedRegions;
+	}
+
+	public Io getIo() {
+		return io;
+	}
+
+	public BackupType getType(String type) {
+		return types.get(type);
+	}
+
+	public Map<String, Unit> getUnits() {
+		return units;
+	}
+
+	public int getMetricsPort() {
+		return metricsPort;
+	}
+
+	public Replication getReplication() {
+		return replication;
+	}
+
+	// A copy with the interval of one unit changed, or of every unit when unit is null
+	public BackupConfig withIntervalMinutes(String unit, int minutes) {
+		BackupConfig changed = copy();
+		for (Map.Entry<String, Unit> entry : changed.units.entrySet()) {
+			if (unit == null || entry.getKey().equals(unit)) {
+				entry.getValue().intervalMinutes = minutes;
+			}
+		}
+		return changed;
+	}
+
+	public BackupConfig withBackupIo(long megabytesPerSecond, long readsPerSecond) {
+		BackupConfig changed = copy();
+		changed.io.backupMegabytesPerSecond = megabytesPerSecond;
+		changed.io.backupReadsPerSecond = readsPerSecond;
+		return changed;
+	}
+}
@@ -0,0 +1,219 @@
+package com.ExcuseMeImJack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+// The list of files a backup holds, read from its manifest or archive index so backups can be described and
+// compared without reading any world data. Only old directory backups, which have neither, are walked.
+public class BackupContents {
+
+	public static final String PLAYERS = "players";
+	public static final String OTHER = "other";
+	// Dimensions first, in name order, then players, then everything else
+	public static final Comparator<String> GROUP_ORDER = Comparator
+			.comparingInt((String group) -> group.equals(PLAYERS) ? 1 : group.equals(OTHER) ? 2 : 0)
+			.thenComparing(Comparator.naturalOrder());
+
+	// fingerprint identifies the content where the format records one: the object hash of an incremental
+	// backup, or the block checksums of an archive. It is null for directory backups and version 1 archives.
+	public record FileInfo(long size, long modified, String fingerprint) {
+	}
+
+	private final Map<String, FileInfo> files;
+
+	private BackupContents(Map<String, FileInfo> files) {
+		this.files = files;
+	}
+
+	public static BackupContents read(Path backupDir) throws IOException {
+		Map<String, FileInfo> files = new HashMap<>();
+		switch (BackupFormat.of(backupDir)) {
+			case INCREMENTAL -> {
+				for (BackupManifest.Entry entry : BackupManifest.read(backupDir).getEntries()) {
+					String fingerprint = (entry.isChunked() ? "index:" : "sha256:") + entry.getHash();
+					files.put(entry.getPath(), new FileInfo(entry.getSize(), entry.getModified(), fingerprint));
+				}
+			}
+			case ARCHIVE -> {
+				try (BackupArchive archive = BackupArchive.open(backupDir.resolve(BackupArchive.FILE_NAME))) {
+					for (BackupArchive.Entry entry : archive.getEntries()) {
+						files.put(entry.path(), new FileInfo(entry.size(), entry.modified(),
+								archive.getVersion() >= 2 ? fingerprintOf(entry) : null));
+					}
+				}
+			}
+			default -> Files.walkFileTree(backupDir, new SimpleFileVisitor<>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					String path = IncrementalBackupEngine.toManifestPath(backupDir.relativize(file));
+					if (attrs.isRegularFile() && !path.equals(BackupCommit.FILE_NAME)) {
+						files.put(path, new FileInfo(attrs.size(), attrs.lastModifiedTime().toMillis(), null));
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		return new BackupContents(files);
+	}
+
+	private static String fingerprintOf(BackupArchive.Entry entry) {
+		CRC32C checksum = new CRC32C();
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		for (BackupArchive.Block block : entry.blocks()) {
+			checksum.update(buffer.clear().putInt(block.checksum()).flip());
+		}
+		return String.format("crc32c:%08x", checksum.getValue());
+	}
+
+	public Map<String, FileInfo> getFiles() {
+		return files;
+	}
+
+	// Section: Groups
+	// Region files are grouped by the dimension they belong to, player data files under PLAYERS, and
+	// everything else, including entity and point of interest regions, under OTHER
+	public static String groupOf(String path) {
+		if (path.startsWith("playerdata/") && path.endsWith(".dat") && path.indexOf('/', 11) < 0) {
+			return PLAYERS;
+		}
+		String dimension = dimensionOf(path);
+		return dimension == null ? OTHER : dimension;
+	}
+
+	// The dimension whose terrain the file holds, or null if it is not a region file
+	public static String dimensionOf(String path) {
+		int fileStart = path.lastIndexOf('/') + 1;
+		int regionDir = fileStart - "region/".length();
+		if (!path.endsWith(".mca") || regionDir < 0 || !path.startsWith("region/", regionDir)
+				|| (regionDir > 0 && path.charAt(regionDir - 1) != '/')) {
+			return null;
+		}
+
+		String dimensionDir = path.substring(0, regionDir);
+		if (dimensionDir.isEmpty()) {
+			return "minecraft:overworld";
+		}
+		if (dimensionDir.equals("DIM-1/")) {
+			return "minecraft:the_nether";
+		}
+		if (dimensionDir.equals("DIM1/")) {
+			return "minecraft:the_end";
+		}
+		if (dimensionDir.startsWith("dimensions/")) {
+			String[] parts = dimensionDir.substring("dimensions/".length(), dimensionDir.length() - 1).split("/", 2);
+			if (parts.length == 2) {
+				return parts[0] + ":" + parts[1];
+			}
+		}
+		return null;
+	}
+
+	public record Group(long files, long bytes) {
+	}
+
+	public Map<String, Group> summarize() {
+		Map<String, long[]> totals = new TreeMap<>(GROUP_ORDER);
+		for (Map.Entry<String, FileInfo> file : files.entrySet()) {
+			long[] group = totals.computeIfAbsent(groupOf(file.getKey()), key -> new long[2]);
+			group[0]++;
+			group[1] += file.getValue().size();
+		}
+		Map<String, Group> groups = new TreeMap<>(GROUP_ORDER);
+		totals.forEach((group, total) -> groups.put(group, new Group(total[0], total[1])));
+		return groups;
+	}
+
+	public long totalSize() {
+		long total = 0;
+		for (FileInfo file : files.values()) {
+			total += file.size();
+		}
+		return total;
+	}
+
+	// Section: Diff
+	public static class Delta {
+		private final List<String> added = new ArrayList<>();
+		private final List<String> removed = new ArrayList<>();
+		private final List<String> changed = new ArrayList<>();
+		private long bytesBefore;
+		private long bytesAfter;
+
+		public List<String> getAdded() {
+			return added;
+		}
+
+		public List<String> getRemoved() {
+			return removed;
+		}
+
+		public List<String> getChanged() {
+			return changed;
+		}
+
+		public long getBytesBefore() {
+			return bytesBefore;
+		}
+
+		public long getBytesAfter() {
+			return bytesAfter;
+		}
+
+		public boolean isEmpty() {
+			return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+		}
+	}
+
+	// What changed from this backup to the newer one, by group. Files are compared by fingerprint when both
+	// backups record the same kind, and by size and modification time otherwise.
+	public Map<String, Delta> diff(BackupContents newer) {
+		Map<String, Delta> deltas = new TreeMap<>(GROUP_ORDER);
+		for (Map.Entry<String, FileInfo> file : files.entrySet()) {
+			Delta delta = deltas.computeIfAbsent(groupOf(file.getKey()), key -> new Delta());
+			delta.bytesBefore += file.getValue().size();
+			FileInfo after = newer.files.get(file.getKey());
+			if (after == null) {
+				delta.removed.add(file.getKey());
+			} else if (!sameContent(file.getValue(), after)) {
+				delta.changed.add(file.getKey());
+			}
+		}
+		for (Map.Entry<String, FileInfo> file : newer.files.entrySet()) {
+			Delta delta = deltas.computeIfAbsent(groupOf(file.getKey()), key -> new Delta());
+			delta.bytesAfter += file.getValue().size();
+			if (!files.containsKey(file.getKey())) {
+				delta.added.add(file.getKey());
+			}
+		}
+		for (Delta delta : deltas.values()) {
+			delta.added.sort(null);
+			delta.removed.sort(null);
+			delta.changed.sort(null);
+		}
+		return deltas;
+	}
+
+	private static boolean sameContent(FileInfo before, FileInfo after) {
+		String kind = kindOf(before.fingerprint());
+		if (kind != null && kind.equals(kindOf(after.fingerprint()))) {
+			return before.fingerprint().equals(after.fingerprint()) && before.size() == after.size();
+		}
+		return before.size() == after.size() && before.modified() == after.modified();
+	}
+
+	private static String kindOf(String fingerprint) {
+		return fingerprint == null ? null : fingerprint.substring(0, fingerprint.indexOf(':'));
+	}
+}
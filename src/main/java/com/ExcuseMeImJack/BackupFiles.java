@@ -0,0 +1,155 @@
+package com.ExcuseMeImJack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+public class BackupFiles {
+
+	private BackupFiles() {
+	}
+
+	// Deletes files as the walk reaches them and each directory once it is empty, so only the directories
+	// above the current file are held in memory however many files the tree holds
+	public static void deleteDirectory(Path path) throws IOException {
+		Files.walkFileTree(path, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				if (e != null) {
+					throw e;
+				}
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	// Section: Durability
+	public static void sync(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+	}
+
+	// Makes new and renamed entries in a directory durable. Some platforms cannot open a directory (Windows),
+	// and there it is skipped.
+	public static void syncDirectory(Path dir) {
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Not supported here
+		}
+	}
+
+	public static void syncTree(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				sync(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				if (e != null) {
+					throw e;
+				}
+				syncDirectory(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	public static void writeSynced(Path file, byte[] data) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, ByteBuffer.wrap(data));
+			channel.force(true);
+		}
+	}
+
+	// Replaces the file through a synced temporary file and a rename, so a crash leaves either the old or the
+	// new content
+	public static void replaceAtomically(Path file, byte[] data) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		writeSynced(tempFile, data);
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(parent);
+	}
+
+	// Appends lines to a log and syncs them before returning
+	public static void appendLines(Path file, List<String> lines) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (String line : lines) {
+			text.append(line).append('\n');
+		}
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND)) {
+			writeFully(channel, ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+			channel.force(false);
+		}
+	}
+
+	// Cuts off a line left half-written by a crash, so the next append starts on a line of its own
+	public static boolean truncateTornLine(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long end = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocate(4096);
+			long position = end;
+			while (position > 0) {
+				int length = (int) Math.min(buffer.capacity(), position);
+				position -= length;
+				buffer.clear().limit(length);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, position + buffer.position()) < 0) {
+						break;
+					}
+				}
+				for (int i = length - 1; i >= 0; i--) {
+					if (buffer.get(i) == '\n') {
+						long keep = position + i + 1;
+						if (keep == end) {
+							return false;
+						}
+						channel.truncate(keep);
+						channel.force(true);
+						return true;
+					}
+				}
+			}
+			if (end == 0) {
+				return false;
+			}
+			channel.truncate(0);
+			channel.force(true);
+			return true;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.ExcuseMeImJack;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Include/exclude rules for the files copied into a backup. Patterns without a '/' match a file or
+// directory name at any depth, other patterns match the path relative to the world folder. A "regex:"
+// prefix switches from glob to regular expression syntax. A filter can also be narrowed to one folder of the
+// world, with other folders carved out of it, which is how a backup unit covers its part of the world.
+public class BackupFilter {
+
+	public static final List<String> DEFAULT_EXCLUDES = List.of("session.lock", "logs", "tmp", "*.tmp");
+	public static final BackupFilter DEFAULT = new BackupFilter(List.of(), DEFAULT_EXCLUDES);
+
+	private final List<Rule> includes;
+	private final List<Rule> excludes;
+	// Null for the whole world
+	private final Path scope;
+	private final List<Path> carvedOut;
+
+	private record Rule(PathMatcher matcher, boolean nameOnly) {
+
+		boolean matches(Path relativePath) {
+			if (nameOnly) {
+				Path name = relativePath.getFileName();
+				return name != null && matcher.matches(name);
+			}
+			return matcher.matches(relativePath);
+		}
+	}
+
+	public BackupFilter(List<String> includePatterns, List<String> excludePatterns) {
+		this(compile(includePatterns), compile(excludePatterns), null, List.of());
+	}
+
+	private BackupFilter(List<Rule> includes, List<Rule> excludes, Path scope, List<Path> carvedOut) {
+		this.includes = includes;
+		this.excludes = excludes;
+		this.scope = scope;
+		this.carvedOut = carvedOut;
+	}
+
+	// The same rules applied only inside directory ("" for the whole world), skipping the carved out folders
+	public BackupFilter within(String directory, List<String> carvedOutDirectories) {
+		List<Path> carved = new ArrayList<>(carvedOutDirectories.size());
+		for (String carvedOutDirectory : carvedOutDirectories) {
+			carved.add(Paths.get(carvedOutDirectory));
+		}
+		return new BackupFilter(includes, excludes, directory.isEmpty() ? null : Paths.get(directory), carved);
+	}
+
+	private static List<Rule> compile(List<String> patterns) {
+		List<Rule> rules = new ArrayList<>(patterns.size());
+		for (String pattern : patterns) {
+			if (pattern.startsWith("regex:")) {
+				rules.add(new Rule(FileSystems.getDefault().getPathMatcher(pattern), false));
+			} else {
+				String glob = pattern.startsWith("glob:") ? pattern.substring(5) : pattern;
+				rules.add(new Rule(FileSystems.getDefault().getPathMatcher("glob:" + glob), !glob.contains("/")));
+			}
+		}
+		return rules;
+	}
+
+	// Checked once per directory so excluded subtrees are never walked
+	public boolean includesDirectory(Path relativePath) {
+		// The folders above the scope are walked to reach it, but their files are not included
+		if (scope != null && !relativePath.startsWith(scope) && !scope.startsWith(relativePath)) {
+			return false;
+		}
+		return !isCarvedOut(relativePath) && !matchesAny(excludes, relativePath);
+	}
+
+	public boolean includesFile(Path relativePath) {
+		if (scope != null && !relativePath.startsWith(scope)) {
+			return false;
+		}
+		if (isCarvedOut(relativePath) || matchesAny(excludes, relativePath)) {
+			return false;
+		}
+		return includes.isEmpty() || matchesAny(includes, relativePath);
+	}
+
+	private boolean isCarvedOut(Path relativePath) {
+		for (Path directory : carvedOut) {
+			if (relativePath.startsWith(directory)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean matchesAny(List<Rule> rules, Path relativePath) {
+		for (Rule rule : rules) {
+			if (rule.matches(relativePath)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
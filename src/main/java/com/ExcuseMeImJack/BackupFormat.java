@@ -0,0 +1,19 @@
+package com.ExcuseMeImJack;
+
+import java.nio.file.Path;
+
+public enum BackupFormat {
+	DIRECTORY,
+	INCREMENTAL,
+	ARCHIVE;
+
+	public static BackupFormat of(Path backupDir) {
+		if (BackupArchive.exists(backupDir)) {
+			return ARCHIVE;
+		}
+		if (BackupManifest.exists(backupDir)) {
+			return INCREMENTAL;
+		}
+		return DIRECTORY;
+	}
+}
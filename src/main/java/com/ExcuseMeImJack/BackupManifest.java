@@ -0,0 +1,151 @@
+package com.ExcuseMeImJack;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+public class BackupManifest {
+
+	public static final String FILE_NAME = "manifest.json";
+	private static final Gson GSON = new GsonBuilder().create();
+
+	private String id;
+	private String type;
+	private String parent;
+	private long createdAt;
+	private List<Entry> entries = new ArrayList<>();
+
+	private transient Map<String, Entry> entriesByPath;
+
+	public BackupManifest(String id, String type, String parent, long createdAt) {
+		this.id = id;
+		this.type = type;
+		this.parent = parent;
+		this.createdAt = createdAt;
+	}
+
+	public static class Entry {
+		private String path;
+		private long size;
+		private long modified;
+		private String hash;
+		// Region files stored chunk by chunk; their hash names a RegionIndex rather than the file's content
+		private boolean chunked;
+
+		public Entry(String path, long size, long modified, String hash) {
+			this(path, size, modified, hash, false);
+		}
+
+		public Entry(String path, long size, long modified, String hash, boolean chunked) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+			this.chunked = chunked;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getModified() {
+			return modified;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public boolean isChunked() {
+			return chunked;
+		}
+	}
+
+	public static boolean exists(Path backupDir) {
+		return Files.isRegularFile(backupDir.resolve(FILE_NAME));
+	}
+
+	public static BackupManifest read(Path backupDir) throws IOException {
+		try (Reader reader = Files.newBufferedReader(backupDir.resolve(FILE_NAME), StandardCharsets.UTF_8)) {
+			BackupManifest manifest = GSON.fromJson(reader, BackupManifest.class);
+			if (manifest == null) {
+				throw new IOException("Empty backup manifest in " + backupDir);
+			}
+			return manifest;
+		}
+	}
+
+	// Returns the SHA-256 of the written manifest, which covers every object hash it references. The manifest
+	// is synced to disk before returning.
+	public String write(Path backupDir) throws IOException {
+		byte[] json = GSON.toJson(this).getBytes(StandardCharsets.UTF_8);
+		BackupFiles.writeSynced(backupDir.resolve(FILE_NAME), json);
+		try {
+			return "sha256:" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	public void add(Entry entry) {
+		entries.add(entry);
+		if (entriesByPath != null) {
+			entriesByPath.put(entry.getPath(), entry);
+		}
+	}
+
+	public Entry get(String path) {
+		if (entriesByPath == null) {
+			Map<String, Entry> index = new HashMap<>(entries.size() * 2);
+			for (Entry entry : entries) {
+				index.put(entry.getPath(), entry);
+			}
+			entriesByPath = index;
+		}
+		return entriesByPath.get(path);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getParent() {
+		return parent;
+	}
+
+	public long getCreatedAt() {
+		return createdAt;
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	public long totalSize() {
+		long total = 0;
+		for (Entry entry : entries) {
+			total += entry.getSize();
+		}
+		return total;
+	}
+}
@@ -0,0 +1,235 @@
+package com.ExcuseMeImJack;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+// In-process metrics for backups, rendered in the Prometheus text exposition format. Durations are kept as
+// histograms so slow outliers stay visible instead of being averaged away.
+public class BackupMetrics {
+
+	private static final String PREFIX = "serverbackup_";
+	private static final double[] PHASE_BUCKETS = {0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600,
+			1800};
+	private static final double[] TICK_BUCKETS = {0.005, 0.01, 0.02, 0.03, 0.04, 0.05, 0.075, 0.1, 0.25, 0.5, 1};
+
+	private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+	private enum Kind {
+		COUNTER,
+		GAUGE,
+		HISTOGRAM
+	}
+
+	private record Family(String name, String help, Kind kind, Map<String, Object> series) {
+	}
+
+	public static class Histogram {
+		private final double[] bounds;
+		private final long[] counts;
+		private long count = 0;
+		private double sum = 0;
+
+		private Histogram(double[] bounds) {
+			this.bounds = bounds;
+			this.counts = new long[bounds.length];
+		}
+
+		public synchronized void observe(double value) {
+			for (int i = 0; i < bounds.length; i++) {
+				if (value <= bounds[i]) {
+					counts[i]++;
+				}
+			}
+			count++;
+			sum += value;
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized double getSum() {
+			return sum;
+		}
+
+		// Upper bound of the bucket holding the given quantile, or infinity if it lies beyond all buckets
+		public synchronized double quantile(double quantile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(quantile * count);
+			for (int i = 0; i < bounds.length; i++) {
+				if (counts[i] >= rank) {
+					return bounds[i];
+				}
+			}
+			return Double.POSITIVE_INFINITY;
+		}
+
+		private synchronized void write(StringBuilder out, String name, String labels) {
+			for (int i = 0; i < bounds.length; i++) {
+				out.append(name).append("_bucket").append(withLabel(labels, "le", format(bounds[i]))).append(' ')
+						.append(counts[i]).append('\n');
+			}
+			out.append(name).append("_bucket").append(withLabel(labels, "le", "+Inf")).append(' ').append(count)
+					.append('\n');
+			out.append(name).append("_sum").append(braces(labels)).append(' ').append(format(sum)).append('\n');
+			out.append(name).append("_count").append(braces(labels)).append(' ').append(count).append('\n');
+		}
+	}
+
+	// Section: Recording
+	public void observePhase(String phase, long nanos) {
+		histogram("phase_duration_seconds", "Time spent in each backup phase.", PHASE_BUCKETS,
+				"phase=\"" + phase + "\"").observe(nanos / 1_000_000_000.0);
+	}
+
+	public void observeBackup(String type, boolean success, long nanos) {
+		counter("backups_total", "Backups attempted.",
+				"type=\"" + type + "\",result=\"" + (success ? "success" : "failure") + "\"").add(1);
+		if (success) {
+			histogram("backup_duration_seconds", "Time to write and catalog a backup once its snapshot was taken.", PHASE_BUCKETS,
+					"type=\"" + type + "\"").observe(nanos / 1_000_000_000.0);
+		}
+	}
+
+	public void addProcessed(String type, long files, long bytes) {
+		counter("files_processed_total", "Files read from the world by backups.", "type=\"" + type + "\"").add(files);
+		counter("bytes_processed_total", "Bytes read from the world by backups.", "type=\"" + type + "\"").add(bytes);
+	}
+
+	public void addWritten(String type, long bytes) {
+		counter("bytes_written_total", "Bytes written to backup storage after deduplication and compression.",
+				"type=\"" + type + "\"").add(bytes);
+	}
+
+	public void setDedupRatio(double ratio) {
+		gauge("dedup_ratio", "Share of the last incremental backup's bytes reused from earlier backups.", "")
+				.set(ratio);
+	}
+
+	public void setCompressionRatio(double ratio) {
+		gauge("compression_ratio", "Compressed size of the last archive backup relative to its input.", "")
+				.set(ratio);
+	}
+
+	public void addPruned(int backups) {
+		counter("backups_pruned_total", "Backups deleted by the retention policy.", "").add(backups);
+	}
+
+	public void addReplicated(long files, long bytes) {
+		counter("replicated_files_total", "Files uploaded to the replication target.", "").add(files);
+		counter("replicated_bytes_total", "Bytes uploaded to the replication target.", "").add(bytes);
+	}
+
+	public void setReplicationFailing(boolean failing) {
+		gauge("replication_failing", "Whether the last replication run failed.", "").set(failing ? 1 : 0);
+	}
+
+	public void addIntegrityProblems(String check, int problems) {
+		counter("integrity_problems_total", "Problems found by backup verification and the background scrub.",
+				"check=\"" + check + "\"").add(problems);
+	}
+
+	public void observeTick(long nanos, boolean jobRunning) {
+		histogram("tick_duration_seconds", "Server tick durations, split by whether a backup or restore was running.",
+				TICK_BUCKETS, "jobs=\"" + (jobRunning ? "running" : "idle") + "\"")
+				.observe(nanos / 1_000_000_000.0);
+	}
+
+	public void registerGauge(String name, String help, DoubleSupplier value) {
+		families.computeIfAbsent(name, key -> new Family(PREFIX + name, help, Kind.GAUGE, new ConcurrentSkipListMap<>()))
+				.series().put("", value);
+	}
+
+	// Section: Lookup
+	private Histogram histogram(String name, String help, double[] bounds, String labels) {
+		return (Histogram) series(name, help, Kind.HISTOGRAM, labels, () -> new Histogram(bounds));
+	}
+
+	public Histogram findHistogram(String name, String labels) {
+		Family family = families.get(name);
+		return family == null ? null : (Histogram) family.series().get(labels);
+	}
+
+	public double value(String name, String labels) {
+		return value(families.get(name), labels);
+	}
+
+	private static double value(Family family, String labels) {
+		Object series = family == null ? null : family.series().get(labels);
+		if (series instanceof DoubleAdder adder) {
+			return adder.sum();
+		}
+		if (series instanceof Gauge gauge) {
+			return gauge.value;
+		}
+		if (series instanceof DoubleSupplier supplier) {
+			return supplier.getAsDouble();
+		}
+		return 0;
+	}
+
+	private DoubleAdder counter(String name, String help, String labels) {
+		return (DoubleAdder) series(name, help, Kind.COUNTER, labels, DoubleAdder::new);
+	}
+
+	private Gauge gauge(String name, String help, String labels) {
+		return (Gauge) series(name, help, Kind.GAUGE, labels, Gauge::new);
+	}
+
+	private static class Gauge {
+		private volatile double value;
+
+		private void set(double value) {
+			this.value = value;
+		}
+	}
+
+	private Object series(String name, String help, Kind kind, String labels, Supplier<Object> factory) {
+		Family family = families.computeIfAbsent(name, key -> new Family(PREFIX + name, help, kind, new ConcurrentSkipListMap<>()));
+		return family.series().computeIfAbsent(labels, key -> factory.get());
+	}
+
+	// Section: Exposition
+	public String toPrometheusText() {
+		StringBuilder out = new StringBuilder();
+		for (Family family : new TreeMap<>(families).values()) {
+			out.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+			out.append("# TYPE ").append(family.name()).append(' ')
+					.append(family.kind().name().toLowerCase(Locale.ROOT)).append('\n');
+
+			for (Map.Entry<String, Object> entry : family.series().entrySet()) {
+				String labels = entry.getKey();
+				if (entry.getValue() instanceof Histogram histogram) {
+					histogram.write(out, family.name(), labels);
+				} else {
+					out.append(family.name()).append(braces(labels)).append(' ')
+							.append(format(value(family, labels))).append('\n');
+				}
+			}
+		}
+		return out.toString();
+	}
+
+	private static String braces(String labels) {
+		return labels.isEmpty() ? "" : "{" + labels + "}";
+	}
+
+	private static String withLabel(String labels, String name, String value) {
+		return "{" + (labels.isEmpty() ? "" : labels + ",") + name + "=\"" + value + "\"}";
+	}
+
+	private static String format(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+}
@@ -0,0 +1,109 @@
+package com.ExcuseMeImJack;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Reads individual files out of a backup regardless of how it is stored
+public class BackupReader implements Closeable {
+
+	private final Path backupDir;
+	private final BackupFormat format;
+	private final ObjectStore store;
+	private final BackupManifest manifest;
+	private final BackupArchive archive;
+
+	private BackupReader(Path backupDir, BackupFormat format, ObjectStore store, BackupManifest manifest,
+			BackupArchive archive) {
+		this.backupDir = backupDir;
+		this.format = format;
+		this.store = store;
+		this.manifest = manifest;
+		this.archive = archive;
+	}
+
+	public static BackupReader open(Path backupDir, ObjectStore store) throws IOException {
+		BackupFormat format = BackupFormat.of(backupDir);
+		return switch (format) {
+			case INCREMENTAL -> new BackupReader(backupDir, format, store, BackupManifest.read(backupDir), null);
+			case ARCHIVE -> new BackupReader(backupDir, format, store, null,
+					BackupArchive.open(backupDir.resolve(BackupArchive.FILE_NAME)));
+			default -> new BackupReader(backupDir, format, store, null, null);
+		};
+	}
+
+	public BackupFormat getFormat() {
+		return format;
+	}
+
+	public boolean contains(String relativePath) {
+		return switch (format) {
+			case INCREMENTAL -> manifest.get(relativePath) != null;
+			case ARCHIVE -> archive.get(relativePath) != null;
+			default -> Files.isRegularFile(backupDir.resolve(relativePath));
+		};
+	}
+
+	// Returns null when the backup does not contain the file
+	public InputStream open(String relativePath) throws IOException {
+		if (!contains(relativePath)) {
+			return null;
+		}
+		return switch (format) {
+			case INCREMENTAL -> manifest.get(relativePath).isChunked()
+					? Files.newInputStream(rebuildRegion(relativePath), StandardOpenOption.DELETE_ON_CLOSE)
+					: store.open(manifest.get(relativePath).getHash());
+			case ARCHIVE -> archive.openEntry(relativePath);
+			default -> Files.newInputStream(backupDir.resolve(relativePath));
+		};
+	}
+
+	// Random access to a file; archive entries are unpacked and chunked regions rebuilt to a temporary file first
+	public SeekableByteChannel openChannel(String relativePath) throws IOException {
+		if (!contains(relativePath)) {
+			return null;
+		}
+		switch (format) {
+			case INCREMENTAL -> {
+				if (manifest.get(relativePath).isChunked()) {
+					return FileChannel.open(rebuildRegion(relativePath), StandardOpenOption.READ,
+							StandardOpenOption.DELETE_ON_CLOSE);
+				}
+				return FileChannel.open(store.resolve(manifest.get(relativePath).getHash()), StandardOpenOption.READ);
+			}
+			case ARCHIVE -> {
+				Path tempFile = Files.createTempFile("serverbackup_", ".tmp");
+				try {
+					try (InputStream in = archive.openEntry(relativePath)) {
+						Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+					}
+					return FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+				} catch (IOException | RuntimeException e) {
+					// Once the channel is open, closing it deletes the file
+					Files.deleteIfExists(tempFile);
+					throw e;
+				}
+			}
+			default -> {
+				return FileChannel.open(backupDir.resolve(relativePath), StandardOpenOption.READ);
+			}
+		}
+	}
+
+	private Path rebuildRegion(String relativePath) throws IOException {
+		return RegionIndex.load(store, manifest.get(relativePath).getHash()).rebuildToTemp(store);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (archive != null) {
+			archive.close();
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.ExcuseMeImJack;
+
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+// Decides when the next automatic backup is due. Nothing is backed up while the world is unchanged. Once
+// something changed, a backup is due after the configured interval, or sooner under heavy activity: the
+// interval is divided by the number of BUSY_CHUNKS chunks saved, down to a quarter of it.
+public class BackupScheduler {
+
+	private static final int BUSY_CHUNKS = 1024;
+	private static final int MIN_INTERVAL_DIVISOR = 4;
+
+	private final ChangeTracker changes;
+	// The part of the world this scheduler watches, named in the log; null for the whole world
+	private final String name;
+	private final Predicate<String> dimensions;
+	private final boolean countsPlayers;
+	private volatile long intervalTicks;
+	private long ticksSinceLastBackup = 0;
+	private boolean idleLogged = false;
+	// The queued backup that has not taken its snapshot yet; no other is due until it does or gives up
+	private volatile Future<?> pending;
+
+	public BackupScheduler(ChangeTracker changes, long intervalTicks) {
+		this(changes, intervalTicks, null, dimension -> true, true);
+	}
+
+	// Watches only the given dimensions; player activity counts only if the part holds the player data
+	public BackupScheduler(ChangeTracker changes, long intervalTicks, String name, Predicate<String> dimensions,
+			boolean countsPlayers) {
+		this.changes = changes;
+		this.intervalTicks = intervalTicks;
+		this.name = name;
+		this.dimensions = dimensions;
+		this.countsPlayers = countsPlayers;
+	}
+
+	public long getIntervalTicks() {
+		return intervalTicks;
+	}
+
+	public void setIntervalTicks(long intervalTicks) {
+		this.intervalTicks = intervalTicks;
+	}
+
+	// Called once per server tick. Returns true when an automatic backup should start.
+	public synchronized boolean tick() {
+		ticksSinceLastBackup++;
+		Future<?> queued = pending;
+		if (queued != null && !queued.isDone()) {
+			return false;
+		}
+		if (ticksSinceLastBackup < intervalTicks / MIN_INTERVAL_DIVISOR) {
+			return false;
+		}
+
+		ChangeTracker.Activity activity = getActivity();
+		if (!activity.changed()) {
+			if (ticksSinceLastBackup >= intervalTicks && !idleLogged) {
+				ServerBackup.LOGGER.info("Nothing changed" + (name == null ? "" : " in " + name)
+						+ " since the last backup, skipping automatic backups until it does.");
+				idleLogged = true;
+			}
+			return false;
+		}
+
+		double pressure = Math.max(1.0, activity.dirtyChunks() / (double) BUSY_CHUNKS);
+		return ticksSinceLastBackup >= intervalTicks / pressure;
+	}
+
+	public ChangeTracker.Activity getActivity() {
+		return changes.getActivity(dimensions, countsPlayers);
+	}
+
+	public void backupQueued(Future<?> job) {
+		pending = job;
+	}
+
+	// Called by the job once the backup's snapshot was taken, so changes flushed by the snapshot's save count
+	// toward it. A job that fails or is cancelled before that leaves the activity for the next backup.
+	public synchronized void backupStarted() {
+		ticksSinceLastBackup = 0;
+		idleLogged = false;
+		changes.reset(dimensions, countsPlayers);
+		pending = null;
+	}
+}
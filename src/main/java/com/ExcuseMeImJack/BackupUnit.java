@@ -0,0 +1,116 @@
+package com.ExcuseMeImJack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// A part of the world with automatic backups of its own: the folder of one dimension, or ROOT, the rest of the
+// world with level.dat, the player data and every dimension no other unit takes. Each unit is snapshotted,
+// backed up and pruned on its own schedule and can be restored on its own, so a dimension that rarely changes
+// is neither walked nor copied along with a busy one.
+public class BackupUnit {
+
+	public static final String ROOT = "world";
+
+	private final String name;
+	private final String directory;
+	private final BackupScheduler scheduler;
+	private volatile RetentionPolicy retention;
+
+	public record Settings(long intervalTicks, RetentionPolicy retention) {
+	}
+
+	private BackupUnit(String name, String directory, BackupScheduler scheduler, RetentionPolicy retention) {
+		this.name = name;
+		this.directory = directory;
+		this.scheduler = scheduler;
+		this.retention = retention;
+	}
+
+	// One unit per dimension named in the settings, and ROOT for the rest, which uses the ROOT settings
+	public static List<BackupUnit> split(ChangeTracker changes, Map<String, Settings> settings) {
+		Set<String> dimensions = settings.keySet();
+		List<BackupUnit> units = new ArrayList<>();
+
+		Settings root = settings.get(ROOT);
+		units.add(new BackupUnit(ROOT, "", new BackupScheduler(changes, root.intervalTicks(), "the world",
+				dimension -> !dimensions.contains(dimension), true), root.retention()));
+
+		for (Map.Entry<String, Settings> dimension : settings.entrySet()) {
+			if (dimension.getKey().equals(ROOT)) {
+				continue;
+			}
+			String dimensionName = dimension.getKey();
+			units.add(new BackupUnit(dimensionName, directoryOf(dimensionName),
+					new BackupScheduler(changes, dimension.getValue().intervalTicks(), dimensionName,
+							dimensionName::equals, false), dimension.getValue().retention()));
+		}
+		return units;
+	}
+
+	// The folder a dimension is saved in, relative to the world folder, as DimensionType.getSaveDirectory
+	// lays it out
+	public static String directoryOf(String dimension) {
+		return switch (dimension) {
+			case "minecraft:overworld" -> throw new IllegalArgumentException(
+					"The overworld is saved in the world folder itself and cannot be a unit of its own");
+			case "minecraft:the_nether" -> "DIM-1";
+			case "minecraft:the_end" -> "DIM1";
+			default -> {
+				int separator = dimension.indexOf(':');
+				yield separator < 0 ? "dimensions/minecraft/" + dimension
+						: "dimensions/" + dimension.substring(0, separator) + "/" + dimension.substring(separator + 1);
+			}
+		};
+	}
+
+	public static BackupUnit find(List<BackupUnit> units, String name) {
+		for (BackupUnit unit : units) {
+			if (unit.name.equals(name)) {
+				return unit;
+			}
+		}
+		return null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	// Relative to the world folder; empty for ROOT
+	public String getDirectory() {
+		return directory;
+	}
+
+	public boolean isRoot() {
+		return directory.isEmpty();
+	}
+
+	public BackupScheduler getScheduler() {
+		return scheduler;
+	}
+
+	public RetentionPolicy getRetention() {
+		return retention;
+	}
+
+	public void setRetention(RetentionPolicy retention) {
+		this.retention = retention;
+	}
+
+	// The folders of the other units, which ROOT leaves out and which a restore of ROOT keeps as they are
+	public static List<String> directoriesBesideRoot(List<BackupUnit> units) {
+		List<String> directories = new ArrayList<>();
+		for (BackupUnit unit : units) {
+			if (!unit.isRoot()) {
+				directories.add(unit.directory);
+			}
+		}
+		return directories;
+	}
+
+	public BackupFilter filter(BackupFilter base, List<BackupUnit> units) {
+		return isRoot() ? base.within("", directoriesBesideRoot(units)) : base.within(directory, List.of());
+	}
+}
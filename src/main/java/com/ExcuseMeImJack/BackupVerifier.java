@@ -0,0 +1,295 @@
+package com.ExcuseMeImJack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Re-reads backups and checks them against the checksums recorded when they were written: the SHA-256 of
+// every object for incremental backups and the CRC32C of every block for archives. Region files are also
+// checked structurally. Files are verified in parallel on the copy workers, paced by the given budget.
+public class BackupVerifier {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	// Reused for every file a worker checks, as in ObjectStore
+	private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+	private final ObjectStore store;
+	private final ExecutorService workers;
+	private final IoBudget budget;
+
+	public BackupVerifier(ObjectStore store, ExecutorService workers, IoBudget budget) {
+		this.store = store;
+		this.workers = workers;
+		this.budget = budget;
+	}
+
+	public record Result(long files, long bytes, List<String> problems) {
+
+		public boolean ok() {
+			return problems.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d files (%.1f MB) checked, %d problems", files, bytes / 1_048_576.0,
+					problems.size());
+		}
+	}
+
+	private static class Progress {
+		private final AtomicLong files = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final List<String> problems = Collections.synchronizedList(new ArrayList<>());
+
+		private Result toResult() {
+			return new Result(files.get(), bytes.get(), List.copyOf(problems));
+		}
+	}
+
+	public Result verify(BackupCatalog.Entry backup) throws IOException {
+		Progress progress = new Progress();
+		Path backupDir = backup.getPath();
+
+		switch (backup.getFormat()) {
+			case INCREMENTAL -> verifyIncremental(backup, progress);
+			case ARCHIVE -> verifyArchive(backup, progress);
+			default -> verifyDirectory(backup, progress);
+		}
+
+		if (!progress.problems.isEmpty()) {
+			ServerBackup.LOGGER.error("Backup " + backup.getId() + " in " + backupDir + " failed verification: "
+					+ String.join("; ", progress.problems));
+		}
+		return progress.toResult();
+	}
+
+	// Section: Formats
+	private void verifyIncremental(BackupCatalog.Entry backup, Progress progress) throws IOException {
+		Path manifestFile = backup.getPath().resolve(BackupManifest.FILE_NAME);
+		if (!Files.isRegularFile(manifestFile)) {
+			progress.problems.add(BackupManifest.FILE_NAME + " is missing");
+			return;
+		}
+		if (backup.getChecksum() != null) {
+			String checksum = "sha256:" + HexFormat.of().formatHex(newDigest().digest(Files.readAllBytes(manifestFile)));
+			if (!checksum.equals(backup.getChecksum())) {
+				progress.problems.add(BackupManifest.FILE_NAME + " does not match the checksum in the catalog");
+			}
+		}
+
+		BackupManifest manifest = BackupManifest.read(backup.getPath());
+		List<Future<?>> futures = new ArrayList<>(manifest.getEntries().size());
+		for (BackupManifest.Entry entry : manifest.getEntries()) {
+			futures.add(workers.submit(() -> {
+				if (entry.isChunked()) {
+					verifyRegion(entry, progress);
+					return;
+				}
+				try (InputStream in = store.open(entry.getHash())) {
+					check(entry.getPath(), in, entry.getHash(), entry.getSize(), progress);
+				} catch (NoSuchFileException e) {
+					progress.problems.add(entry.getPath() + ": object " + entry.getHash() + " is missing");
+				} catch (IOException e) {
+					progress.problems.add(entry.getPath() + ": " + e.getMessage());
+				}
+			}));
+		}
+		CopyEngine.awaitAll(futures, "Verification");
+	}
+
+	// A region stored by chunk: its index and packs must match their hashes and every chunk must lie inside its
+	// pack. The region file is not rebuilt, so there is no sector table to check.
+	private void verifyRegion(BackupManifest.Entry entry, Progress progress) {
+		String path = entry.getPath();
+		try {
+			RegionIndex index;
+			try (InputStream in = store.open(entry.getHash())) {
+				byte[] data = in.readAllBytes();
+				if (!check(path + " (chunk index)", new ByteArrayInputStream(data), entry.getHash(), -1, progress)) {
+					return;
+				}
+				index = RegionIndex.read(new ByteArrayInputStream(data));
+			}
+
+			Map<String, Long> packSizes = new HashMap<>();
+			for (String packHash : index.getPackHashes()) {
+				try (InputStream in = store.open(packHash)) {
+					check(path + " (chunks)", in, packHash, -1, progress);
+					packSizes.put(packHash, Files.size(store.resolve(packHash)));
+				} catch (NoSuchFileException e) {
+					progress.problems.add(path + ": chunk pack " + packHash + " is missing");
+				}
+			}
+			for (String problem : index.check(packSizes)) {
+				progress.problems.add(path + ": " + problem);
+			}
+		} catch (NoSuchFileException e) {
+			progress.problems.add(path + ": chunk index " + entry.getHash() + " is missing");
+		} catch (IOException e) {
+			progress.problems.add(path + ": " + e.getMessage());
+		}
+	}
+
+	private void verifyArchive(BackupCatalog.Entry backup, Progress progress) throws IOException {
+		Path archiveFile = backup.getPath().resolve(BackupArchive.FILE_NAME);
+		if (!Files.isRegularFile(archiveFile)) {
+			progress.problems.add(BackupArchive.FILE_NAME + " is missing");
+			return;
+		}
+
+		try (BackupArchive archive = BackupArchive.open(archiveFile)) {
+			// Version 1 archives have no block checksums, only the whole-archive checksum in the catalog
+			if (archive.getVersion() < 2 && backup.getChecksum() != null
+					&& !archive.computeChecksum().equals(backup.getChecksum())) {
+				progress.problems.add(BackupArchive.FILE_NAME + " does not match the checksum in the catalog");
+			}
+
+			List<Future<?>> futures = new ArrayList<>(archive.getEntries().size());
+			for (BackupArchive.Entry entry : archive.getEntries()) {
+				futures.add(workers.submit(() -> {
+					try (InputStream in = archive.openEntry(entry.path())) {
+						check(entry.path(), in, null, entry.size(), progress);
+					} catch (IOException e) {
+						progress.problems.add(entry.path() + ": " + e.getMessage());
+					}
+				}));
+			}
+			CopyEngine.awaitAll(futures, "Verification");
+		}
+	}
+
+	// Directory backups are copied without passing through user space, so there are no file checksums to
+	// compare against; only the file count in the catalog and the region file structure are checked.
+	private void verifyDirectory(BackupCatalog.Entry backup, Progress progress) throws IOException {
+		if (!Files.isDirectory(backup.getPath())) {
+			progress.problems.add("Backup folder is missing");
+			return;
+		}
+
+		// Only region files are handed to the workers; everything else is counted as the walk passes it
+		List<Future<?>> futures = new ArrayList<>();
+		Path root = backup.getPath();
+		Files.walkFileTree(root, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (!attrs.isRegularFile()) {
+					return FileVisitResult.CONTINUE;
+				}
+				String relativePath = IncrementalBackupEngine.toManifestPath(root.relativize(file));
+				if (!relativePath.endsWith(".mca")) {
+					progress.files.incrementAndGet();
+					progress.bytes.addAndGet(attrs.size());
+					return FileVisitResult.CONTINUE;
+				}
+				futures.add(workers.submit(() -> {
+					try (InputStream in = Files.newInputStream(file)) {
+						check(relativePath, in, null, -1, progress);
+					} catch (IOException e) {
+						progress.problems.add(relativePath + ": " + e.getMessage());
+					}
+				}));
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		CopyEngine.awaitAll(futures, "Verification");
+
+		if (backup.getFiles() > 0 && progress.files.get() < backup.getFiles()) {
+			progress.problems.add("Expected " + backup.getFiles() + " files but found " + progress.files.get());
+		}
+	}
+
+	// Section: Scrub
+	// Re-hashes every object in the store, adding those whose content no longer matches their name to
+	// corruptHashes. The paths map names the file an object holds, where known, so region files can be checked
+	// too.
+	public Result scrubObjects(Map<String, String> pathsByHash, List<String> corruptHashes) throws IOException {
+		Progress progress = new Progress();
+		List<String> corrupt = Collections.synchronizedList(new ArrayList<>());
+		List<Future<?>> futures = new ArrayList<>();
+
+		for (String hash : store.listHashes()) {
+			String path = pathsByHash.getOrDefault(hash, hash);
+			futures.add(workers.submit(() -> {
+				try (InputStream in = store.open(hash)) {
+					if (!check(path, in, hash, -1, progress)) {
+						corrupt.add(hash);
+					}
+				} catch (NoSuchFileException e) {
+					// Removed by garbage collection since it was listed
+				} catch (IOException e) {
+					progress.problems.add(path + ": " + e.getMessage());
+				}
+			}));
+		}
+		CopyEngine.awaitAll(futures, "Scrub");
+		corruptHashes.addAll(corrupt);
+		return progress.toResult();
+	}
+
+	// Section: Checks
+	// Reads the stream once, comparing its SHA-256 and size when given and checking region files. Returns
+	// false if the content does not match the expected hash.
+	private boolean check(String path, InputStream in, String expectedHash, long expectedSize, Progress progress)
+			throws IOException {
+		MessageDigest digest = expectedHash == null ? null : newDigest();
+		ByteArrayOutputStream region = path.endsWith(".mca") ? new ByteArrayOutputStream() : null;
+		byte[] buffer = BUFFERS.get();
+		long size = 0;
+
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			budget.acquire(read);
+			if (digest != null) {
+				digest.update(buffer, 0, read);
+			}
+			if (region != null) {
+				region.write(buffer, 0, read);
+			}
+			size += read;
+		}
+
+		progress.files.incrementAndGet();
+		progress.bytes.addAndGet(size);
+
+		if (expectedSize >= 0 && size != expectedSize) {
+			progress.problems.add(path + ": expected " + expectedSize + " bytes but read " + size);
+		}
+		if (region != null) {
+			for (String problem : RegionFile.check(ByteBuffer.wrap(region.toByteArray()))) {
+				progress.problems.add(path + ": " + problem);
+			}
+		}
+		if (digest != null && !HexFormat.of().formatHex(digest.digest()).equals(expectedHash)) {
+			progress.problems.add(path + ": content does not match its SHA-256");
+			return false;
+		}
+		return true;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.ExcuseMeImJack;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+// Counts what changed in the world since the last automatic backup: the distinct chunks written to disk in
+// each dimension, and how many player-ticks were spent online. Backup units read and reset only the
+// dimensions they hold.
+public class ChangeTracker {
+
+	private final Map<String, Set<Long>> savedChunks = new HashMap<>();
+	private long playerTicks = 0;
+
+	public record Activity(int dirtyChunks, long playerTicks) {
+
+		public boolean changed() {
+			return dirtyChunks > 0 || playerTicks > 0;
+		}
+	}
+
+	public synchronized void onChunkSaved(String dimension, long chunkPos) {
+		savedChunks.computeIfAbsent(dimension, key -> new HashSet<>()).add(chunkPos);
+	}
+
+	public synchronized void onPlayerTick(int players) {
+		playerTicks += players;
+	}
+
+	public synchronized Activity getActivity() {
+		return getActivity(dimension -> true, true);
+	}
+
+	// The activity in the matching dimensions, with the player-ticks only if asked for
+	public synchronized Activity getActivity(Predicate<String> dimensions, boolean players) {
+		int dirtyChunks = 0;
+		for (Map.Entry<String, Set<Long>> chunks : savedChunks.entrySet()) {
+			if (dimensions.test(chunks.getKey())) {
+				dirtyChunks += chunks.getValue().size();
+			}
+		}
+		return new Activity(dirtyChunks, players ? playerTicks : 0);
+	}
+
+	public synchronized void reset() {
+		reset(dimension -> true, true);
+	}
+
+	public synchronized void reset(Predicate<String> dimensions, boolean players) {
+		savedChunks.keySet().removeIf(dimensions);
+		if (players) {
+			playerTicks = 0;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.ExcuseMeImJack;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Splices single chunks out of a backup's region files into the live chunk storage. Reading and
+// decompressing happens on the calling thread, one region at a time; only the hand-off to the chunk
+// storage runs on the server thread. Chunks that are currently loaded are skipped, since the loaded copy
+// would overwrite the restored data on its next save.
+public class ChunkRestorer {
+
+	private final MinecraftServer server;
+	private final SnapshotCoordinator coordinator;
+
+	public record Result(int restored, int missing, List<ChunkPos> loaded) {
+	}
+
+	public ChunkRestorer(MinecraftServer server, SnapshotCoordinator coordinator) {
+		this.server = server;
+		this.coordinator = coordinator;
+	}
+
+	public Result restore(ServerWorld world, BackupReader reader, int minChunkX, int minChunkZ, int maxChunkX,
+			int maxChunkZ) throws IOException, InterruptedException {
+		Path worldDir = server.getSavePath(WorldSavePath.ROOT).toAbsolutePath().normalize();
+		Path regionDir = DimensionType.getSaveDirectory(world.getRegistryKey(), worldDir).resolve("region");
+		String regionPath = IncrementalBackupEngine.toManifestPath(worldDir.relativize(regionDir));
+
+		int restored = 0;
+		int missing = 0;
+		List<ChunkPos> loaded = new ArrayList<>();
+
+		for (int regionX = minChunkX >> 5; regionX <= maxChunkX >> 5; regionX++) {
+			for (int regionZ = minChunkZ >> 5; regionZ <= maxChunkZ >> 5; regionZ++) {
+				int fromX = Math.max(minChunkX, regionX << 5);
+				int fromZ = Math.max(minChunkZ, regionZ << 5);
+				int toX = Math.min(maxChunkX, (regionX << 5) + 31);
+				int toZ = Math.min(maxChunkZ, (regionZ << 5) + 31);
+
+				Map<ChunkPos, NbtCompound> chunks = readRegion(reader, regionPath, regionX, regionZ, fromX, fromZ, toX,
+						toZ);
+				missing += (toX - fromX + 1) * (toZ - fromZ + 1) - chunks.size();
+
+				List<ChunkPos> skipped = new ArrayList<>();
+				coordinator.onServerThread(server, () -> apply(world, chunks, skipped), "write the restored chunks");
+				restored += chunks.size() - skipped.size();
+				loaded.addAll(skipped);
+			}
+		}
+
+		return new Result(restored, missing, loaded);
+	}
+
+	private Map<ChunkPos, NbtCompound> readRegion(BackupReader reader, String regionPath, int regionX, int regionZ,
+			int fromX, int fromZ, int toX, int toZ) throws IOException {
+		Map<ChunkPos, NbtCompound> chunks = new LinkedHashMap<>();
+
+		try (SeekableByteChannel channel = reader.openChannel(regionPath + "/" + RegionFile.fileName(regionX, regionZ))) {
+			if (channel == null) {
+				return chunks;
+			}
+
+			RegionFile region = RegionFile.readHeader(channel);
+			for (int chunkZ = fromZ; chunkZ <= toZ; chunkZ++) {
+				for (int chunkX = fromX; chunkX <= toX; chunkX++) {
+					byte[] payload = region.readPayload(channel, RegionFile.index(chunkX, chunkZ));
+					if (payload == null) {
+						continue;
+					}
+
+					try (InputStream in = openChunk(reader, regionPath, chunkX, chunkZ, payload)) {
+						NbtCompound nbt = NbtIo.readCompound(new DataInputStream(new BufferedInputStream(in)),
+								NbtSizeTracker.ofUnlimitedBytes());
+						chunks.put(new ChunkPos(chunkX, chunkZ), nbt);
+					}
+				}
+			}
+		}
+		return chunks;
+	}
+
+	private InputStream openChunk(BackupReader reader, String regionPath, int chunkX, int chunkZ, byte[] payload)
+			throws IOException {
+		if (!RegionFile.isExternal(payload)) {
+			return RegionFile.decompress(payload);
+		}
+
+		String externalPath = regionPath + "/" + RegionFile.externalFileName(chunkX, chunkZ);
+		InputStream external = reader.open(externalPath);
+		if (external == null) {
+			throw new IOException("Backup is missing the oversized chunk file " + externalPath);
+		}
+		return RegionFile.decompress(payload[0], external);
+	}
+
+	// Server thread
+	private void apply(ServerWorld world, Map<ChunkPos, NbtCompound> chunks, List<ChunkPos> skipped) {
+		ServerChunkManager chunkManager = world.getChunkManager();
+
+		for (Map.Entry<ChunkPos, NbtCompound> entry : chunks.entrySet()) {
+			ChunkPos pos = entry.getKey();
+			if (chunkManager.isChunkLoaded(pos.x, pos.z)) {
+				skipped.add(pos);
+				continue;
+			}
+			NbtCompound nbt = entry.getValue();
+			chunkManager.chunkLoadingManager.setNbt(pos, () -> nbt);
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package com.ExcuseMeImJack;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CopyEngine {
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+	private static final long BUDGET_SLICE = 1 << 20;
+
+	private final ExecutorService workers;
+
+	public CopyEngine(int workerCount) {
+		this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+			Thread thread = new Thread(runnable, "ServerBackup-Copy-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public ExecutorService getWorkers() {
+		return workers;
+	}
+
+	// Copies already running finish on the workers they started on
+	public void setWorkerCount(int workerCount) {
+		setPoolSize((ThreadPoolExecutor) workers, workerCount);
+	}
+
+	// The core size may never exceed the maximum, so which one changes first depends on the direction
+	static void setPoolSize(ThreadPoolExecutor executor, int size) {
+		if (size > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(size);
+			executor.setCorePoolSize(size);
+		} else {
+			executor.setCorePoolSize(size);
+			executor.setMaximumPoolSize(size);
+		}
+	}
+
+	public record CopyTask(Path source, Path target) {
+	}
+
+	public record CopyResult(long files, long bytes, long nanos) {
+
+		public double megabytesPerSecond() {
+			return nanos == 0 ? 0 : bytes / 1_048_576.0 / (nanos / 1_000_000_000.0);
+		}
+
+		public double filesPerSecond() {
+			return nanos == 0 ? 0 : files / (nanos / 1_000_000_000.0);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d files (%.1f MB) in %.2f s, %.1f MB/s, %.0f files/s", files, bytes / 1_048_576.0,
+					nanos / 1_000_000_000.0, megabytesPerSecond(), filesPerSecond());
+		}
+	}
+
+	@FunctionalInterface
+	public interface CopyListener {
+		void copied(CopyTask task) throws IOException;
+	}
+
+	public CopyResult copyTree(Path source, Path target, BackupFilter filter) throws IOException {
+		List<CopyTask> tasks = new ArrayList<>();
+
+		Files.walkFileTree(source, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if (!dir.equals(source) && !filter.includesDirectory(source.relativize(dir))) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				Files.createDirectories(target.resolve(source.relativize(dir)));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile() && filter.includesFile(source.relativize(file))) {
+					tasks.add(new CopyTask(file, target.resolve(source.relativize(file))));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		return copyAll(tasks, null);
+	}
+
+	public CopyResult copyAll(Collection<CopyTask> tasks, CopyListener listener) throws IOException {
+		return copyAll(tasks, listener, IoBudget.UNLIMITED);
+	}
+
+	public CopyResult copyAll(Collection<CopyTask> tasks, CopyListener listener, IoBudget budget)
+			throws IOException {
+		long start = System.nanoTime();
+		AtomicLong files = new AtomicLong();
+		AtomicLong bytes = new AtomicLong();
+		List<Future<?>> futures = new ArrayList<>(tasks.size());
+
+		for (CopyTask task : tasks) {
+			futures.add(workers.submit(() -> {
+				try {
+					Files.createDirectories(task.target().getParent());
+					bytes.addAndGet(copyFile(task.source(), task.target(), budget));
+					files.incrementAndGet();
+					if (listener != null) {
+						listener.copied(task);
+					}
+				} catch (NoSuchFileException e) {
+					ServerBackup.LOGGER.warn("File disappeared before it could be copied, skipping: " + task.source());
+				} catch (IOException e) {
+					throw new UncheckedIOException("Failed to copy file: " + task.source(), e);
+				}
+			}));
+		}
+
+		awaitAll(futures, "Copy");
+
+		return new CopyResult(files.get(), bytes.get(), System.nanoTime() - start);
+	}
+
+	// Waits for every task, cancelling the rest as soon as one fails
+	static void awaitAll(List<? extends Future<?>> futures, String action) throws IOException {
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			futures.forEach(future -> future.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new IOException(action + " interrupted", e);
+		} catch (ExecutionException e) {
+			futures.forEach(future -> future.cancel(true));
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException unchecked) {
+				throw unchecked.getCause();
+			}
+			throw new IOException(action + " failed", cause);
+		}
+	}
+
+	// transferTo lets the kernel copy without going through user space (copy_file_range on Linux, which
+	// CoW filesystems such as btrfs and XFS turn into a reflink)
+	public static long copyFile(Path source, Path target) throws IOException {
+		return copyFile(source, target, IoBudget.UNLIMITED);
+	}
+
+	public static long copyFile(Path source, Path target, IoBudget budget) throws IOException {
+		// With a budget the file is transferred in slices so the pacing stays smooth
+		long slice = budget.isUnlimited() ? Long.MAX_VALUE : BUDGET_SLICE;
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			long position = 0;
+			while (position < size) {
+				long length = Math.min(size - position, slice);
+				budget.acquire(length);
+				long transferred = in.transferTo(position, length, out);
+				if (transferred <= 0) {
+					break;
+				}
+				position += transferred;
+			}
+			return position;
+		}
+	}
+
+	public void shutdown() {
+		workers.shutdownNow();
+	}
+}
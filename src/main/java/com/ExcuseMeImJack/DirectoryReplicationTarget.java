@@ -0,0 +1,83 @@
+package com.ExcuseMeImJack;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Replicates into a directory, normally a network mount. Files are written as <name>.part and renamed once
+// complete and synced, so a half-copied file is never mistaken for a complete one, and a .part left by an
+// interrupted run is appended to rather than copied again.
+public class DirectoryReplicationTarget implements ReplicationTarget {
+
+	private static final String PART_SUFFIX = ".part";
+	private static final long BUDGET_SLICE = 1 << 20;
+
+	private final Path root;
+
+	public DirectoryReplicationTarget(Path root) {
+		this.root = root.toAbsolutePath().normalize();
+	}
+
+	@Override
+	public Set<String> list(String prefix) throws IOException {
+		Set<String> keys = new HashSet<>();
+		Path dir = prefix.isEmpty() ? root : root.resolve(prefix);
+		if (!Files.isDirectory(dir)) {
+			return keys;
+		}
+		try (Stream<Path> paths = Files.walk(dir)) {
+			for (Path path : (Iterable<Path>) paths::iterator) {
+				if (Files.isRegularFile(path) && !path.getFileName().toString().endsWith(PART_SUFFIX)) {
+					keys.add(root.relativize(path).toString().replace('\\', '/'));
+				}
+			}
+		}
+		return keys;
+	}
+
+	@Override
+	public long upload(Path file, String key, IoBudget budget) throws IOException {
+		Path target = root.resolve(key);
+		Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+		Files.createDirectories(target.getParent());
+
+		long sent = 0;
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			long size = in.size();
+			long position = out.size();
+			if (position > size) {
+				// Not a prefix of this file, so it cannot be continued
+				out.truncate(0);
+				position = 0;
+			}
+			long slice = budget.isUnlimited() ? Long.MAX_VALUE : BUDGET_SLICE;
+			while (position < size) {
+				long length = Math.min(size - position, slice);
+				budget.acquire(length);
+				long transferred = in.transferTo(position, length, out.position(position));
+				if (transferred <= 0) {
+					throw new IOException("Could not copy " + file + " to " + part);
+				}
+				position += transferred;
+				sent += transferred;
+			}
+			out.force(true);
+		}
+
+		Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		BackupFiles.syncDirectory(target.getParent());
+		return sent;
+	}
+
+	@Override
+	public String describe() {
+		return root.toString();
+	}
+}
@@ -0,0 +1,233 @@
+package com.ExcuseMeImJack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IncrementalBackupEngine {
+
+	// Recorded for a file written to while it was being stored. No file has it, so the next backup stores the
+	// file again.
+	private static final long MODIFIED_UNKNOWN = 0;
+
+	private final ObjectStore store;
+	private final CopyEngine copyEngine;
+	private final boolean chunkedRegions;
+
+	public IncrementalBackupEngine(ObjectStore store, CopyEngine copyEngine) {
+		this(store, copyEngine, false);
+	}
+
+	// With chunkedRegions, region files are stored chunk by chunk through RegionIndex, so a region with one
+	// changed chunk costs that chunk rather than the whole file
+	public IncrementalBackupEngine(ObjectStore store, CopyEngine copyEngine, boolean chunkedRegions) {
+		this.store = store;
+		this.copyEngine = copyEngine;
+		this.chunkedRegions = chunkedRegions;
+	}
+
+	public ObjectStore getStore() {
+		return store;
+	}
+
+	public record BackupResult(BackupManifest manifest, long storedFiles, long storedBytes, long reusedFiles,
+			long reusedBytes) {
+
+		public double dedupRatio() {
+			long total = storedBytes + reusedBytes;
+			return total == 0 ? 1.0 : reusedBytes / (double) total;
+		}
+	}
+
+	public BackupResult backup(WorldSnapshot snapshot, BackupManifest parent, String backupID, String backupType)
+			throws IOException {
+		BackupManifest manifest = new BackupManifest(backupID, backupType, parent == null ? null : parent.getId(),
+				snapshot.capturedAt());
+
+		List<Map.Entry<Path, WorldSnapshot.FileState>> files = new ArrayList<>(snapshot.files().entrySet());
+		BackupManifest.Entry[] entries = new BackupManifest.Entry[files.size()];
+		AtomicLong reusedFiles = new AtomicLong();
+		AtomicLong reusedBytes = new AtomicLong();
+		AtomicLong storedFiles = new AtomicLong();
+		AtomicLong storedBytes = new AtomicLong();
+		AtomicLong storedChunks = new AtomicLong();
+		Set<Path> objectDirs = ConcurrentHashMap.newKeySet();
+		List<Future<?>> futures = new ArrayList<>();
+
+		for (int i = 0; i < files.size(); i++) {
+			String relativePath = toManifestPath(files.get(i).getKey());
+			WorldSnapshot.FileState state = files.get(i).getValue();
+			BackupManifest.Entry previous = parent == null ? null : parent.get(relativePath);
+
+			if (previous != null && previous.getSize() == state.size() && previous.getModified() == state.modified()
+					&& store.contains(previous.getHash())) {
+				entries[i] = previous;
+				reusedFiles.incrementAndGet();
+				reusedBytes.addAndGet(state.size());
+				continue;
+			}
+
+			// Changed files are hashed while they are copied into the store, on the copy workers
+			int index = i;
+			Path file = snapshot.worldDir().resolve(files.get(i).getKey());
+			futures.add(copyEngine.getWorkers().submit(() -> {
+				try {
+					// The entry gets the size and time the file had while it was read rather than those of the
+					// snapshot, which the server may have written over since, so they always match the stored content
+					WorldSnapshot.FileState before = WorldSnapshot.FileState.of(file);
+					if (chunkedRegions && relativePath.endsWith(".mca")) {
+						RegionIndex.StoreResult region = storeChunks(file, previous);
+						if (region != null) {
+							entries[index] = new BackupManifest.Entry(relativePath, before.size(),
+									modifiedIfUnchanged(file, before), region.hash(), true);
+							for (String hash : region.newObjects()) {
+								objectDirs.add(store.resolve(hash).getParent());
+							}
+							(region.storedChunks() > 0 ? storedFiles : reusedFiles).incrementAndGet();
+							storedChunks.addAndGet(region.storedChunks());
+							storedBytes.addAndGet(region.storedBytes());
+							reusedBytes.addAndGet(region.reusedBytes());
+							return;
+						}
+					}
+					ObjectStore.Stored stored = store.store(file);
+					entries[index] = new BackupManifest.Entry(relativePath, stored.size(),
+							stored.size() == before.size() ? modifiedIfUnchanged(file, before) : MODIFIED_UNKNOWN,
+							stored.hash());
+					if (stored.added()) {
+						objectDirs.add(store.resolve(stored.hash()).getParent());
+						storedFiles.incrementAndGet();
+						storedBytes.addAndGet(stored.size());
+					} else {
+						reusedFiles.incrementAndGet();
+						reusedBytes.addAndGet(stored.size());
+					}
+				} catch (NoSuchFileException e) {
+					ServerBackup.LOGGER.warn("File removed after snapshot, skipping: " + file);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Failed to store file: " + file, e);
+				}
+			}));
+		}
+		CopyEngine.awaitAll(futures, "Incremental backup");
+		for (Path objectDir : objectDirs) {
+			BackupFiles.syncDirectory(objectDir);
+		}
+
+		for (BackupManifest.Entry entry : entries) {
+			if (entry != null) {
+				manifest.add(entry);
+			}
+		}
+
+		ServerBackup.LOGGER.info("Incremental backup stored " + storedFiles.get() + " changed files ("
+				+ storedBytes.get() / 1024 + " KiB" + (storedChunks.get() > 0 ? ", " + storedChunks.get()
+				+ " of them region chunks" : "") + ") and reused " + reusedFiles.get() + " unchanged files.");
+		return new BackupResult(manifest, storedFiles.get(), storedBytes.get(), reusedFiles.get(), reusedBytes.get());
+	}
+
+	private static long modifiedIfUnchanged(Path file, WorldSnapshot.FileState before) throws IOException {
+		return WorldSnapshot.FileState.of(file).equals(before) ? before.modified() : MODIFIED_UNKNOWN;
+	}
+
+	// Returns null for a region whose chunks cannot be read, which is then stored as a whole. A corrupt chunk
+	// would otherwise fail every backup, and a chunk the server is saving right now can look corrupt too.
+	private RegionIndex.StoreResult storeChunks(Path file, BackupManifest.Entry previous) throws IOException {
+		try {
+			return RegionIndex.store(file, previousRegion(previous), store);
+		} catch (NoSuchFileException | InterruptedIOException e) {
+			throw e;
+		} catch (IOException e) {
+			ServerBackup.LOGGER.warn("Could not read the chunks of " + file + ", storing it as a whole: "
+					+ e.getMessage());
+			return null;
+		}
+	}
+
+	// The previous backup's chunk layout of a region, or null if it has none to carry chunks over from
+	private RegionIndex previousRegion(BackupManifest.Entry previous) throws IOException {
+		if (previous == null || !previous.isChunked()) {
+			return null;
+		}
+		try {
+			return RegionIndex.load(store, previous.getHash());
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	public CopyEngine.CopyResult restore(BackupManifest manifest, Path target) throws IOException {
+		long start = System.nanoTime();
+		List<CopyEngine.CopyTask> tasks = new ArrayList<>(manifest.getEntries().size());
+		List<Future<?>> rebuilds = new ArrayList<>();
+		AtomicLong rebuiltBytes = new AtomicLong();
+		for (BackupManifest.Entry entry : manifest.getEntries()) {
+			Path file = target.resolve(entry.getPath());
+			if (!entry.isChunked()) {
+				tasks.add(new CopyEngine.CopyTask(store.resolve(entry.getHash()), file));
+				continue;
+			}
+			rebuilds.add(copyEngine.getWorkers().submit(() -> {
+				try {
+					Files.createDirectories(file.getParent());
+					rebuiltBytes.addAndGet(RegionIndex.load(store, entry.getHash()).rebuild(store, file));
+				} catch (IOException e) {
+					throw new UncheckedIOException("Failed to rebuild region file: " + file, e);
+				}
+			}));
+		}
+		CopyEngine.CopyResult copied = copyEngine.copyAll(tasks, null);
+		CopyEngine.awaitAll(rebuilds, "Region rebuild");
+		return new CopyEngine.CopyResult(copied.files() + rebuilds.size(), copied.bytes() + rebuiltBytes.get(),
+				System.nanoTime() - start);
+	}
+
+	public InputStream open(BackupManifest manifest, String relativePath) throws IOException {
+		BackupManifest.Entry entry = manifest.get(relativePath);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.isChunked()) {
+			Path tempFile = RegionIndex.load(store, entry.getHash()).rebuildToTemp(store);
+			return Files.newInputStream(tempFile, StandardOpenOption.DELETE_ON_CLOSE);
+		}
+		return store.open(entry.getHash());
+	}
+
+	// Region indexes shared by several backups are read once
+	public int collectGarbage(Collection<BackupManifest> liveManifests) throws IOException {
+		Set<String> referenced = new HashSet<>();
+		for (BackupManifest manifest : liveManifests) {
+			for (BackupManifest.Entry entry : manifest.getEntries()) {
+				if (!referenced.add(entry.getHash()) || !entry.isChunked()) {
+					continue;
+				}
+				try {
+					referenced.addAll(RegionIndex.load(store, entry.getHash()).getPackHashes());
+				} catch (NoSuchFileException e) {
+					// Quarantined; its packs cannot be found without it
+				}
+			}
+		}
+		return store.collectGarbage(referenced);
+	}
+
+	public static String toManifestPath(Path relativePath) {
+		return relativePath.toString().replace(File.separatorChar, '/');
+	}
+}
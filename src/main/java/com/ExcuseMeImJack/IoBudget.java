@@ -0,0 +1,137 @@
+package com.ExcuseMeImJack;
+
+import java.io.InterruptedIOException;
+
+// Token buckets for the bytes and read operations backups may use per second. Each bucket holds at most one
+// second's worth of tokens, so a backup can burst briefly after being idle but not sustain more than the
+// limit. A limit of 0 is unlimited.
+//
+// While the server is lagging the rates are scaled down: halved each time the tick time is over the
+// threshold, and raised again by a quarter each time it is comfortably below it.
+public class IoBudget {
+
+	public static final IoBudget UNLIMITED = new IoBudget(0, 0);
+
+	// Rate used as the starting point for backing off when no byte limit is configured
+	private static final long BACKOFF_BASE_BYTES_PER_SECOND = 256L * 1_048_576L;
+	private static final double MIN_BACKOFF_FACTOR = 1 / 64.0;
+	private static final double RECOVERY_RATIO = 0.8;
+
+	private long bytesPerSecond;
+	private long opsPerSecond;
+	private double backoffFactor = 1.0;
+	private double byteTokens;
+	private double opTokens;
+	private long lastRefillNanos = System.nanoTime();
+
+	public IoBudget(long bytesPerSecond, long opsPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+		this.opsPerSecond = opsPerSecond;
+		this.byteTokens = bytesPerSecond;
+		this.opTokens = opsPerSecond;
+	}
+
+	public synchronized long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	public synchronized void setBytesPerSecond(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+		byteTokens = Math.min(byteTokens, bytesPerSecond);
+	}
+
+	public synchronized long getOpsPerSecond() {
+		return opsPerSecond;
+	}
+
+	public synchronized void setOpsPerSecond(long opsPerSecond) {
+		this.opsPerSecond = opsPerSecond;
+		opTokens = Math.min(opTokens, opsPerSecond);
+	}
+
+	public synchronized double getBackoffFactor() {
+		return backoffFactor;
+	}
+
+	public synchronized boolean isUnlimited() {
+		return bytesPerSecond <= 0 && opsPerSecond <= 0 && backoffFactor >= 1.0;
+	}
+
+	// Called periodically from the server thread with the recent average tick time
+	public synchronized void adjustForMspt(double mspt, double thresholdMspt) {
+		double previous = backoffFactor;
+		if (mspt > thresholdMspt) {
+			backoffFactor = Math.max(MIN_BACKOFF_FACTOR, backoffFactor / 2);
+		} else if (mspt < thresholdMspt * RECOVERY_RATIO) {
+			backoffFactor = Math.min(1.0, backoffFactor * 1.25);
+		}
+
+		if (backoffFactor < 1.0 && previous >= 1.0) {
+			ServerBackup.LOGGER.info(String.format("Server tick time is %.1f ms, slowing down backup I/O.", mspt));
+		} else if (backoffFactor >= 1.0 && previous < 1.0) {
+			ServerBackup.LOGGER.info("Server tick time recovered, backup I/O back to full speed.");
+		}
+	}
+
+	// Takes one read operation and the given number of bytes, waiting until both buckets have enough tokens
+	public void acquire(long bytes) throws InterruptedIOException {
+		while (true) {
+			long waitNanos;
+			synchronized (this) {
+				if (isUnlimited()) {
+					return;
+				}
+				refill();
+
+				double byteRate = effectiveByteRate();
+				double opRate = opsPerSecond <= 0 ? 0 : opsPerSecond * backoffFactor;
+				// A read larger than the bucket may go through once the bucket is full, leaving it in debt
+				double bytesNeeded = byteRate <= 0 ? 0 : Math.min(bytes, byteRate) - byteTokens;
+				double opsNeeded = opRate <= 0 ? 0 : Math.min(1, opRate) - opTokens;
+
+				if (bytesNeeded <= 0 && opsNeeded <= 0) {
+					if (byteRate > 0) {
+						byteTokens -= bytes;
+					}
+					if (opRate > 0) {
+						opTokens -= 1;
+					}
+					return;
+				}
+
+				double waitSeconds = Math.max(bytesNeeded > 0 ? bytesNeeded / byteRate : 0,
+						opsNeeded > 0 ? opsNeeded / opRate : 0);
+				waitNanos = Math.max(1, (long) (waitSeconds * 1_000_000_000L));
+			}
+
+			try {
+				Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for backup I/O budget");
+			}
+		}
+	}
+
+	private double effectiveByteRate() {
+		if (bytesPerSecond > 0) {
+			return bytesPerSecond * backoffFactor;
+		}
+		return backoffFactor < 1.0 ? BACKOFF_BASE_BYTES_PER_SECOND * backoffFactor : 0;
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		double seconds = (now - lastRefillNanos) / 1_000_000_000.0;
+		lastRefillNanos = now;
+
+		double byteRate = effectiveByteRate();
+		if (byteRate > 0) {
+			byteTokens = Math.min(byteRate, byteTokens + seconds * byteRate);
+		}
+		double opRate = opsPerSecond * backoffFactor;
+		if (opRate > 0) {
+			opTokens = Math.min(opRate, opTokens + seconds * opRate);
+		}
+	}
+}
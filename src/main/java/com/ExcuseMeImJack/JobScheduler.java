@@ -0,0 +1,258 @@
+package com.ExcuseMeImJack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs backup and restore jobs on a small pool. Queued jobs start in priority order, restores first, then
+// manual backups, then automatic ones; jobs of equal priority start in the order they were submitted.
+//
+// Jobs that name a world hold it exclusively while they run, so a backup never reads a world that a restore
+// is rewriting and two backups never write the same world's backups at once. A job whose world is busy is
+// parked without tying up a worker and handed the world when the current holder finishes. Jobs that also
+// name a key are coalesced: submitting while a job with the same key is still waiting returns that job.
+//
+// A job can also hold just a part of a world, named with partOf. Jobs on different parts of a world run side
+// by side, while a job holding the whole world waits for every part and every part waits for it. A parked job
+// keeps the jobs queued behind it from overtaking it on anything it waits for, so a whole-world job is not
+// starved by a stream of jobs on its parts.
+public class JobScheduler {
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+	private static final String PART_SEPARATOR = "#";
+
+	public enum Priority {
+		RESTORE,
+		MANUAL,
+		AUTO
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong sequence = new AtomicLong();
+	private final Set<Job> jobs = ConcurrentHashMap.newKeySet();
+
+	// Guarded by this
+	private final Map<String, Job> worldOwners = new HashMap<>();
+	private final PriorityQueue<Job> parked = new PriorityQueue<>();
+	private final Map<String, Job> waitingByKey = new HashMap<>();
+
+	public JobScheduler(int workerCount) {
+		this.executor = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "ServerBackup-Job-" + THREAD_COUNTER.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	public void setWorkerCount(int workerCount) {
+		CopyEngine.setPoolSize(executor, workerCount);
+	}
+
+	public static String partOf(String world, String part) {
+		return world + PART_SEPARATOR + part;
+	}
+
+	public Future<?> submit(Priority priority, Runnable job) {
+		return submit(priority, null, null, job);
+	}
+
+	public Future<?> submit(Priority priority, String world, String key, Runnable job) {
+		Job task;
+		synchronized (this) {
+			if (key != null) {
+				Job waiting = waitingByKey.get(key);
+				if (waiting != null && !waiting.isDone()) {
+					return waiting;
+				}
+			}
+			task = new Job(priority, sequence.getAndIncrement(), world, key, job);
+			if (key != null) {
+				waitingByKey.put(key, task);
+			}
+		}
+		jobs.add(task);
+		executor.execute(task);
+		return task;
+	}
+
+	// Cancels every queued or running job of the given priority, interrupting the ones already running
+	public int cancel(Priority priority) {
+		int cancelled = 0;
+		for (Job job : List.copyOf(jobs)) {
+			if (job.priority == priority && job.cancel(true)) {
+				cancelled++;
+			}
+		}
+		return cancelled;
+	}
+
+	// Cancels every queued or running job whose key starts with the prefix, whatever its priority
+	public int cancel(String keyPrefix) {
+		int cancelled = 0;
+		for (Job job : List.copyOf(jobs)) {
+			if (job.key != null && job.key.startsWith(keyPrefix) && job.cancel(true)) {
+				cancelled++;
+			}
+		}
+		return cancelled;
+	}
+
+	// Whether a job holds the world, or the part, or anything overlapping it
+	public synchronized boolean isWorldBusy(String world) {
+		return isHeld(world);
+	}
+
+	// Whether a job with the key is queued and has not started, so a new submission would join it
+	public synchronized boolean isWaiting(String key) {
+		Job waiting = waitingByKey.get(key);
+		return waiting != null && !waiting.isDone();
+	}
+
+	public int getQueueDepth() {
+		int parkedCount;
+		synchronized (this) {
+			parkedCount = parked.size();
+		}
+		return executor.getQueue().size() + parkedCount;
+	}
+
+	public int getRunningCount() {
+		return executor.getActiveCount();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	// Section: World ownership
+	// A world and its parts overlap, two parts of a world do not
+	private static boolean overlaps(String world, String other) {
+		return world.equals(other) || world.startsWith(other + PART_SEPARATOR)
+				|| other.startsWith(world + PART_SEPARATOR);
+	}
+
+	private boolean isHeld(String world) {
+		for (String held : worldOwners.keySet()) {
+			if (overlaps(held, world)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized boolean claim(Job job) {
+		if (job.key != null && waitingByKey.get(job.key) == job) {
+			waitingByKey.remove(job.key);
+		}
+		if (job.world == null || worldOwners.get(job.world) == job) {
+			return true;
+		}
+		if (!isHeld(job.world) && !isBlockedByParked(job)) {
+			worldOwners.put(job.world, job);
+			return true;
+		}
+		if (job.isDone()) {
+			return false;
+		}
+		// Still coalescable while parked
+		if (job.key != null) {
+			waitingByKey.putIfAbsent(job.key, job);
+		}
+		parked.add(job);
+		return false;
+	}
+
+	private boolean isBlockedByParked(Job job) {
+		for (Job waiting : parked) {
+			if (waiting.compareTo(job) < 0 && !waiting.isDone() && overlaps(waiting.world, job.world)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void release(Job job) {
+		List<Job> next = new ArrayList<>();
+		synchronized (this) {
+			worldOwners.remove(job.world);
+
+			// Parked jobs in priority order; one that still has to wait holds back the later ones it overlaps
+			List<Job> candidates = new ArrayList<>(parked);
+			candidates.sort(null);
+			List<Job> stillWaiting = new ArrayList<>();
+			for (Job candidate : candidates) {
+				if (candidate.isDone()) {
+					parked.remove(candidate);
+					continue;
+				}
+				boolean blocked = isHeld(candidate.world);
+				for (Job waiting : stillWaiting) {
+					blocked |= overlaps(waiting.world, candidate.world);
+				}
+				if (blocked) {
+					stillWaiting.add(candidate);
+					continue;
+				}
+				// Handed over directly, so no job submitted in between can take the world first
+				parked.remove(candidate);
+				worldOwners.put(candidate.world, candidate);
+				next.add(candidate);
+			}
+		}
+		for (Job handedOver : next) {
+			executor.execute(handedOver);
+		}
+	}
+
+	private class Job extends FutureTask<Void> implements Comparable<Job> {
+		private final Priority priority;
+		private final long sequence;
+		private final String world;
+		private final String key;
+
+		private Job(Priority priority, long sequence, String world, String key, Runnable job) {
+			super(job, null);
+			this.priority = priority;
+			this.sequence = sequence;
+			this.world = world;
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			if (!claim(this)) {
+				return;
+			}
+			try {
+				super.run();
+			} finally {
+				if (world != null) {
+					release(this);
+				}
+			}
+		}
+
+		@Override
+		protected void done() {
+			jobs.remove(this);
+		}
+
+		@Override
+		public int compareTo(Job other) {
+			int byPriority = priority.compareTo(other.priority);
+			return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+		}
+	}
+}
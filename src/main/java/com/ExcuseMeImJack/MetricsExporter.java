@@ -0,0 +1,63 @@
+package com.ExcuseMeImJack;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Publishes BackupMetrics in the Prometheus text format, as a file for node_exporter's textfile collector
+// and, when a port is given, over HTTP on the loopback interface at /metrics.
+public class MetricsExporter implements Closeable {
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final BackupMetrics metrics;
+	private final Path file;
+	private HttpServer server;
+
+	public MetricsExporter(BackupMetrics metrics, Path file) {
+		this.metrics = metrics;
+		this.file = file;
+	}
+
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", exchange -> {
+			byte[] body = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		ServerBackup.LOGGER.info("Serving backup metrics on http://127.0.0.1:" + port + "/metrics");
+	}
+
+	// Backups of separate units finish at the same time, and each writes the file through the same temporary file
+	public synchronized void writeFile() {
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+			Files.writeString(tempFile, metrics.toPrometheusText(), StandardCharsets.UTF_8);
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			ServerBackup.LOGGER.warn("Could not write backup metrics to " + file, e);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+	}
+}
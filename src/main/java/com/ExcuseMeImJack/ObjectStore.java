@@ -0,0 +1,227 @@
+package com.ExcuseMeImJack;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+
+public class ObjectStore {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	// One buffer per worker thread, reused for every file rather than allocated per file, which on worlds
+	// with hundreds of thousands of small files would churn through gigabytes of short-lived arrays
+	private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+	private static final String TEMP_DIR = "tmp";
+	private static final String CORRUPT_DIR = "corrupt";
+
+	private final Path root;
+	private final IoBudget budget;
+
+	public ObjectStore(Path root) {
+		this(root, IoBudget.UNLIMITED);
+	}
+
+	// The budget paces the reads made while hashing and storing files
+	public ObjectStore(Path root, IoBudget budget) {
+		this.root = root;
+		this.budget = budget;
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	public IoBudget getBudget() {
+		return budget;
+	}
+
+	public Path resolve(String hash) {
+		return root.resolve(hash.substring(0, 2)).resolve(hash);
+	}
+
+	public boolean contains(String hash) {
+		return Files.exists(resolve(hash));
+	}
+
+	public InputStream open(String hash) throws IOException {
+		return Files.newInputStream(resolve(hash));
+	}
+
+	public String hash(Path file) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buffer = BUFFERS.get();
+		try (InputStream in = Files.newInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				budget.acquire(read);
+				digest.update(buffer, 0, read);
+			}
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	public record Stored(String hash, long size, boolean added) {
+	}
+
+	// Copies the file into the store, hashing the bytes as they are written so the file is read only once.
+	// If an object with the same content already exists the copy is dropped. New objects are synced before
+	// they are renamed into place; the caller syncs their directories once it has stored all of its files.
+	public Stored store(Path file) throws IOException {
+		Path tempDir = root.resolve(TEMP_DIR);
+		Files.createDirectories(tempDir);
+		Path tempFile = Files.createTempFile(tempDir, "object_", ".tmp");
+
+		try {
+			MessageDigest digest = newDigest();
+			byte[] buffer = BUFFERS.get();
+			long size = 0;
+			try (InputStream in = Files.newInputStream(file); OutputStream out = Files.newOutputStream(tempFile)) {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					budget.acquire(read);
+					digest.update(buffer, 0, read);
+					out.write(buffer, 0, read);
+					size += read;
+				}
+			}
+
+			String hash = HexFormat.of().formatHex(digest.digest());
+			Path objectPath = resolve(hash);
+			if (Files.exists(objectPath)) {
+				return new Stored(hash, size, false);
+			}
+			BackupFiles.sync(tempFile);
+			Files.createDirectories(objectPath.getParent());
+			try {
+				Files.move(tempFile, objectPath, StandardCopyOption.ATOMIC_MOVE);
+			} catch (FileAlreadyExistsException e) {
+				// Another writer stored the same content first
+				return new Stored(hash, size, false);
+			}
+			return new Stored(hash, size, true);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	// Stores content that is already in memory, such as the chunk packs of a region file
+	public Stored store(byte[] data) throws IOException {
+		String hash = HexFormat.of().formatHex(newDigest().digest(data));
+		Path objectPath = resolve(hash);
+		if (Files.exists(objectPath)) {
+			return new Stored(hash, data.length, false);
+		}
+
+		Path tempDir = root.resolve(TEMP_DIR);
+		Files.createDirectories(tempDir);
+		Path tempFile = Files.createTempFile(tempDir, "object_", ".tmp");
+		try {
+			BackupFiles.writeSynced(tempFile, data);
+			Files.createDirectories(objectPath.getParent());
+			try {
+				Files.move(tempFile, objectPath, StandardCopyOption.ATOMIC_MOVE);
+			} catch (FileAlreadyExistsException e) {
+				return new Stored(hash, data.length, false);
+			}
+			return new Stored(hash, data.length, true);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	public void copyOut(String hash, Path target) throws IOException {
+		Files.copy(resolve(hash), target, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public int collectGarbage(Set<String> referenced) throws IOException {
+		if (!Files.isDirectory(root)) {
+			return 0;
+		}
+
+		int deleted = 0;
+		try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(root, Files::isDirectory)) {
+			for (Path prefix : prefixes) {
+				if (!isPrefixDir(prefix)) {
+					continue;
+				}
+				try (DirectoryStream<Path> objects = Files.newDirectoryStream(prefix)) {
+					for (Path object : objects) {
+						if (!referenced.contains(object.getFileName().toString())) {
+							Files.deleteIfExists(object);
+							deleted++;
+						}
+					}
+				}
+			}
+		}
+		return deleted;
+	}
+
+	// Deletes partly copied objects left behind by an interrupted backup
+	public int deleteTempFiles() throws IOException {
+		Path tempDir = root.resolve(TEMP_DIR);
+		if (!Files.isDirectory(tempDir)) {
+			return 0;
+		}
+		int deleted = 0;
+		try (DirectoryStream<Path> tempFiles = Files.newDirectoryStream(tempDir)) {
+			for (Path tempFile : tempFiles) {
+				Files.deleteIfExists(tempFile);
+				deleted++;
+			}
+		}
+		return deleted;
+	}
+
+	public List<String> listHashes() throws IOException {
+		List<String> hashes = new ArrayList<>();
+		if (!Files.isDirectory(root)) {
+			return hashes;
+		}
+		try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(root, Files::isDirectory)) {
+			for (Path prefix : prefixes) {
+				if (!isPrefixDir(prefix)) {
+					continue;
+				}
+				try (DirectoryStream<Path> objects = Files.newDirectoryStream(prefix)) {
+					for (Path object : objects) {
+						hashes.add(object.getFileName().toString());
+					}
+				}
+			}
+		}
+		return hashes;
+	}
+
+	// Moves a damaged object aside. The next backup that finds the file unchanged will store it again.
+	public Path quarantine(String hash) throws IOException {
+		Path corruptDir = root.resolve(CORRUPT_DIR);
+		Files.createDirectories(corruptDir);
+		Path target = corruptDir.resolve(hash);
+		Files.move(resolve(hash), target, StandardCopyOption.REPLACE_EXISTING);
+		return target;
+	}
+
+	private static boolean isPrefixDir(Path dir) {
+		String name = dir.getFileName().toString();
+		return !name.equals(TEMP_DIR) && !name.equals(CORRUPT_DIR);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.ExcuseMeImJack;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Maps each player UUID to the backups that hold a changed copy of playerdata/<uuid>.dat. Stored as an
+// append-only log next to the backup catalog.
+public class PlayerHistoryIndex {
+
+	private static final Gson GSON = new Gson();
+
+	private final Path file;
+	private final Map<String, List<Version>> versionsByPlayer = new HashMap<>();
+	private int deadRecords = 0;
+
+	public record Version(String backupId, long timestamp, long size, long modified) {
+	}
+
+	private static class LogRecord {
+		private String op;
+		private String uuid;
+		private String backup;
+		private long timestamp;
+		private long size;
+		private long modified;
+
+		private LogRecord(String op, String uuid, Version version) {
+			this.op = op;
+			this.uuid = uuid;
+			this.backup = version.backupId();
+			this.timestamp = version.timestamp();
+			this.size = version.size();
+			this.modified = version.modified();
+		}
+	}
+
+	public PlayerHistoryIndex(Path file) {
+		this.file = file;
+	}
+
+	public synchronized void load() throws IOException {
+		versionsByPlayer.clear();
+		deadRecords = 0;
+
+		if (!Files.exists(file)) {
+			return;
+		}
+		if (BackupFiles.truncateTornLine(file)) {
+			ServerBackup.LOGGER.warn("Dropped a partly written last line from " + file);
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				try {
+					LogRecord record = GSON.fromJson(line, LogRecord.class);
+					Version version = new Version(record.backup, record.timestamp, record.size, record.modified);
+					if ("add".equals(record.op)) {
+						insert(record.uuid, version);
+					} else if ("drop".equals(record.op)) {
+						List<Version> versions = versionsByPlayer.get(record.uuid);
+						if (versions != null) {
+							versions.removeIf(existing -> existing.backupId().equals(record.backup));
+						}
+						deadRecords += 2;
+					}
+				} catch (JsonParseException | NullPointerException e) {
+					ServerBackup.LOGGER.warn("Skipping unreadable player history line: " + line);
+					deadRecords++;
+				}
+			}
+		}
+	}
+
+	// Records the players whose data changed since the newest version already indexed
+	public synchronized int record(String backupId, WorldSnapshot snapshot) throws IOException {
+		List<LogRecord> added = new ArrayList<>();
+
+		for (Map.Entry<Path, WorldSnapshot.FileState> entry : snapshot.files().entrySet()) {
+			String uuid = playerOf(entry.getKey());
+			if (uuid == null) {
+				continue;
+			}
+
+			WorldSnapshot.FileState state = entry.getValue();
+			List<Version> versions = versionsByPlayer.get(uuid);
+			Version latest = versions == null || versions.isEmpty() ? null : versions.get(versions.size() - 1);
+			if (latest != null && latest.size() == state.size() && latest.modified() == state.modified()) {
+				continue;
+			}
+
+			Version version = new Version(backupId, snapshot.capturedAt(), state.size(), state.modified());
+			insert(uuid, version);
+			added.add(new LogRecord("add", uuid, version));
+		}
+
+		append(added);
+		return added.size();
+	}
+
+	// Drops a deleted backup. If the next backup in time still holds the same, unchanged copy of a player's
+	// data, that version is moved to it so the copy stays listed.
+	public synchronized void removeBackup(String backupId, List<BackupCatalog.Entry> remainingByTime)
+			throws IOException {
+		List<LogRecord> records = new ArrayList<>();
+
+		for (Map.Entry<String, List<Version>> entry : versionsByPlayer.entrySet()) {
+			List<Version> versions = entry.getValue();
+			for (int i = 0; i < versions.size(); i++) {
+				Version version = versions.get(i);
+				if (!version.backupId().equals(backupId)) {
+					continue;
+				}
+
+				long nextChange = i + 1 < versions.size() ? versions.get(i + 1).timestamp() : Long.MAX_VALUE;
+				BackupCatalog.Entry successor = null;
+				for (BackupCatalog.Entry backup : remainingByTime) {
+					if (backup.getTimestamp() > version.timestamp() && backup.getTimestamp() < nextChange) {
+						successor = backup;
+						break;
+					}
+				}
+
+				records.add(new LogRecord("drop", entry.getKey(), version));
+				versions.remove(i);
+				deadRecords += 2;
+				if (successor != null) {
+					Version moved = new Version(successor.getId(), successor.getTimestamp(), version.size(),
+							version.modified());
+					versions.add(i, moved);
+					records.add(new LogRecord("add", entry.getKey(), moved));
+				}
+				break;
+			}
+		}
+
+		append(records);
+	}
+
+	// Oldest first
+	public synchronized List<Version> getVersions(String uuid) {
+		List<Version> versions = versionsByPlayer.get(uuid);
+		return versions == null ? List.of() : List.copyOf(versions);
+	}
+
+	public synchronized boolean needsCompaction() {
+		return deadRecords > 256;
+	}
+
+	public synchronized void compact() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, List<Version>> entry : versionsByPlayer.entrySet()) {
+			for (Version version : entry.getValue()) {
+				text.append(GSON.toJson(new LogRecord("add", entry.getKey(), version))).append('\n');
+			}
+		}
+		BackupFiles.replaceAtomically(file, text.toString().getBytes(StandardCharsets.UTF_8));
+		deadRecords = 0;
+	}
+
+	public static String playerOf(Path relativePath) {
+		if (relativePath.getNameCount() != 2 || !relativePath.getName(0).toString().equals("playerdata")) {
+			return null;
+		}
+		String name = relativePath.getFileName().toString();
+		return name.endsWith(".dat") ? name.substring(0, name.length() - 4) : null;
+	}
+
+	private void insert(String uuid, Version version) {
+		List<Version> versions = versionsByPlayer.computeIfAbsent(uuid, key -> new ArrayList<>());
+		int index = versions.size();
+		while (index > 0 && versions.get(index - 1).timestamp() > version.timestamp()) {
+			index--;
+		}
+		versions.add(index, version);
+	}
+
+	private void append(List<LogRecord> records) throws IOException {
+		if (records.isEmpty()) {
+			return;
+		}
+		List<String> lines = new ArrayList<>(records.size());
+		for (LogRecord record : records) {
+			lines.add(GSON.toJson(record));
+		}
+		BackupFiles.appendLines(file, lines);
+	}
+}
@@ -0,0 +1,186 @@
+package com.ExcuseMeImJack;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+// Read-only view of an Anvil .mca file: a 4 KiB location table, a 4 KiB timestamp table, then chunk payloads
+// aligned to 4 KiB sectors. Each payload starts with a 4 byte length and a 1 byte compression type.
+public class RegionFile {
+
+	public static final int SECTOR_SIZE = 4096;
+	public static final int CHUNK_COUNT = 1024;
+	public static final int HEADER_SIZE = SECTOR_SIZE * 2;
+	public static final int EXTERNAL_FLAG = 128;
+
+	private final int[] locations;
+	private final int[] timestamps;
+	private final long fileSize;
+
+	private RegionFile(int[] locations, int[] timestamps, long fileSize) {
+		this.locations = locations;
+		this.timestamps = timestamps;
+		this.fileSize = fileSize;
+	}
+
+	public static RegionFile readHeader(SeekableByteChannel channel) throws IOException {
+		int[] locations = new int[CHUNK_COUNT];
+		int[] timestamps = new int[CHUNK_COUNT];
+		long size = channel.size();
+
+		if (size >= HEADER_SIZE) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(channel, header, 0);
+			header.flip();
+			header.asIntBuffer().get(locations).get(timestamps);
+		}
+		return new RegionFile(locations, timestamps, size);
+	}
+
+	public static int index(int chunkX, int chunkZ) {
+		return (chunkX & 31) + (chunkZ & 31) * 32;
+	}
+
+	public static String fileName(int regionX, int regionZ) {
+		return "r." + regionX + "." + regionZ + ".mca";
+	}
+
+	public static String externalFileName(int chunkX, int chunkZ) {
+		return "c." + chunkX + "." + chunkZ + ".mcc";
+	}
+
+	public boolean hasChunk(int index) {
+		return locations[index] != 0;
+	}
+
+	public int getSectorOffset(int index) {
+		return locations[index] >>> 8;
+	}
+
+	public int getSectorCount(int index) {
+		return locations[index] & 0xFF;
+	}
+
+	public int getTimestamp(int index) {
+		return timestamps[index];
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	// Returns the compression type byte followed by the compressed chunk data
+	public byte[] readPayload(SeekableByteChannel channel, int index) throws IOException {
+		if (!hasChunk(index)) {
+			return null;
+		}
+
+		long offset = (long) getSectorOffset(index) * SECTOR_SIZE;
+		int maxLength = getSectorCount(index) * SECTOR_SIZE - 4;
+		if (getSectorOffset(index) < 2 || offset + 5 > fileSize) {
+			throw new IOException("Chunk " + index + " points outside the region file");
+		}
+
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		readFully(channel, lengthBuffer, offset);
+		int length = lengthBuffer.flip().getInt();
+		if (length <= 0 || length > maxLength || offset + 4 + length > fileSize) {
+			throw new IOException("Chunk " + index + " has an invalid length of " + length + " bytes");
+		}
+
+		ByteBuffer payload = ByteBuffer.allocate(length);
+		readFully(channel, payload, offset + 4);
+		return payload.array();
+	}
+
+	// Structural check of a whole region file: every chunk must lie inside the file, after the header, without
+	// overlapping another chunk, and start with a length that fits its sectors and a known compression type
+	public static List<String> check(ByteBuffer data) {
+		List<String> problems = new ArrayList<>();
+		int size = data.remaining();
+		if (size == 0) {
+			return problems;
+		}
+		if (size < HEADER_SIZE) {
+			problems.add("file is " + size + " bytes, shorter than the region header");
+			return problems;
+		}
+
+		int fileSectors = (size + SECTOR_SIZE - 1) / SECTOR_SIZE;
+		BitSet usedSectors = new BitSet(fileSectors);
+		usedSectors.set(0, HEADER_SIZE / SECTOR_SIZE);
+		int base = data.position();
+
+		for (int index = 0; index < CHUNK_COUNT; index++) {
+			int location = data.getInt(base + index * 4);
+			if (location == 0) {
+				continue;
+			}
+			int sectorOffset = location >>> 8;
+			int sectorCount = location & 0xFF;
+			if (sectorOffset < HEADER_SIZE / SECTOR_SIZE || sectorCount == 0
+					|| sectorOffset + sectorCount > fileSectors) {
+				problems.add("chunk " + index + " points to sectors " + sectorOffset + "+" + sectorCount
+						+ " outside the file");
+				continue;
+			}
+			if (usedSectors.get(sectorOffset, sectorOffset + sectorCount).cardinality() > 0) {
+				problems.add("chunk " + index + " overlaps another chunk at sector " + sectorOffset);
+			}
+			usedSectors.set(sectorOffset, sectorOffset + sectorCount);
+
+			int offset = sectorOffset * SECTOR_SIZE;
+			if (offset + 5 > size) {
+				problems.add("chunk " + index + " header is cut off");
+				continue;
+			}
+			int length = data.getInt(base + offset);
+			int compression = data.get(base + offset + 4) & 0xFF;
+			if (length <= 0 || length > sectorCount * SECTOR_SIZE - 4 || offset + 4 + length > size) {
+				problems.add("chunk " + index + " has an invalid length of " + length + " bytes");
+			} else if (!isKnownCompression(compression & ~EXTERNAL_FLAG)) {
+				problems.add("chunk " + index + " has unknown compression type " + (compression & ~EXTERNAL_FLAG));
+			}
+		}
+		return problems;
+	}
+
+	// 4 is LZ4 and 127 a custom algorithm; both are valid even though decompress does not support them
+	private static boolean isKnownCompression(int type) {
+		return (type >= 1 && type <= 4) || type == 127;
+	}
+
+	public static boolean isExternal(byte[] payload) {
+		return (payload[0] & EXTERNAL_FLAG) != 0;
+	}
+
+	public static InputStream decompress(int compressionType, InputStream in) throws IOException {
+		return switch (compressionType & ~EXTERNAL_FLAG) {
+			case 1 -> new GZIPInputStream(in);
+			case 2 -> new InflaterInputStream(in);
+			case 3 -> in;
+			default -> throw new IOException("Unsupported chunk compression type " + (compressionType & ~EXTERNAL_FLAG));
+		};
+	}
+
+	public static InputStream decompress(byte[] payload) throws IOException {
+		return decompress(payload[0], new ByteArrayInputStream(payload, 1, payload.length - 1));
+	}
+
+	private static void readFully(SeekableByteChannel channel, ByteBuffer buffer, long position) throws IOException {
+		channel.position(position);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Unexpected end of region file");
+			}
+		}
+	}
+}
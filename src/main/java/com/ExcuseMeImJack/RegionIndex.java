@@ -0,0 +1,317 @@
+package com.ExcuseMeImJack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A region file backed up chunk by chunk. The index keeps the region header, the location and timestamp of
+// each of the 1024 chunk slots, and where each chunk's payload is stored. Payloads are stored in packs, one
+// object per backup holding every chunk of the region that changed since the previous backup, so unchanged
+// chunks are carried over without being read and a busy region costs one pack rather than a whole copy.
+// The region file is rebuilt from the index and its packs on restore.
+//
+// Minecraft never rewrites a chunk in place: a saved chunk gets new sectors and the header is updated after,
+// so a slot whose location and timestamp are both unchanged still holds the same payload.
+public class RegionIndex {
+
+	private static final int MAGIC = 0x53425249;
+	private static final int VERSION = 1;
+	private static final int HASH_BYTES = 32;
+	private static final int NO_PACK = -1;
+
+	private final int[] locations;
+	private final int[] timestamps;
+	private final int[] packs;
+	private final int[] offsets;
+	private final int[] lengths;
+	private final List<String> packHashes;
+
+	private RegionIndex(int[] locations, int[] timestamps, int[] packs, int[] offsets, int[] lengths,
+			List<String> packHashes) {
+		this.locations = locations;
+		this.timestamps = timestamps;
+		this.packs = packs;
+		this.offsets = offsets;
+		this.lengths = lengths;
+		this.packHashes = packHashes;
+	}
+
+	public List<String> getPackHashes() {
+		return packHashes;
+	}
+
+	public int getChunkCount() {
+		int count = 0;
+		for (int pack : packs) {
+			if (pack != NO_PACK) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// Section: Backup
+	// newObjects holds the hashes of objects this call added to the store; the rest were already there
+	public record StoreResult(String hash, long storedChunks, long storedBytes, long reusedChunks, long reusedBytes,
+			List<String> newObjects) {
+	}
+
+	// Stores the region file's changed chunks and its index, carrying the rest over from the previous index.
+	// Returns null for a file too short to have a header, which is then stored as a whole.
+	public static StoreResult store(Path file, RegionIndex previous, ObjectStore store) throws IOException {
+		IoBudget budget = store.getBudget();
+		int[] locations = new int[RegionFile.CHUNK_COUNT];
+		int[] timestamps = new int[RegionFile.CHUNK_COUNT];
+		int[] packs = new int[RegionFile.CHUNK_COUNT];
+		int[] offsets = new int[RegionFile.CHUNK_COUNT];
+		int[] lengths = new int[RegionFile.CHUNK_COUNT];
+		List<String> packHashes = new ArrayList<>();
+		Map<String, Integer> packNumbers = new HashMap<>();
+		Map<String, Boolean> packsAvailable = new HashMap<>();
+		ByteArrayOutputStream newPack = new ByteArrayOutputStream();
+		List<Integer> newChunks = new ArrayList<>();
+		long reusedChunks = 0;
+		long reusedBytes = 0;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < RegionFile.HEADER_SIZE) {
+				return null;
+			}
+			budget.acquire(RegionFile.HEADER_SIZE);
+			RegionFile region = RegionFile.readHeader(channel);
+
+			for (int index = 0; index < RegionFile.CHUNK_COUNT; index++) {
+				packs[index] = NO_PACK;
+				if (!region.hasChunk(index)) {
+					continue;
+				}
+				int location = (region.getSectorOffset(index) << 8) | region.getSectorCount(index);
+				locations[index] = location;
+				timestamps[index] = region.getTimestamp(index);
+
+				String previousPack = previous == null || previous.packs[index] == NO_PACK ? null
+						: previous.packHashes.get(previous.packs[index]);
+				// A pack the scrub quarantined is not reused, so its chunks are stored again
+				if (previousPack != null && previous.locations[index] == location
+						&& previous.timestamps[index] == timestamps[index]
+						&& packsAvailable.computeIfAbsent(previousPack, store::contains)) {
+					packs[index] = packNumbers.computeIfAbsent(previousPack, hash -> {
+						packHashes.add(hash);
+						return packHashes.size() - 1;
+					});
+					offsets[index] = previous.offsets[index];
+					lengths[index] = previous.lengths[index];
+					reusedChunks++;
+					reusedBytes += lengths[index];
+					continue;
+				}
+
+				byte[] payload = region.readPayload(channel, index);
+				budget.acquire(payload.length);
+				offsets[index] = newPack.size();
+				lengths[index] = payload.length;
+				newPack.write(payload);
+				newChunks.add(index);
+			}
+		}
+
+		List<String> newObjects = new ArrayList<>();
+		long storedBytes = 0;
+		if (!newChunks.isEmpty()) {
+			ObjectStore.Stored pack = store.store(newPack.toByteArray());
+			packHashes.add(pack.hash());
+			for (int index : newChunks) {
+				packs[index] = packHashes.size() - 1;
+			}
+			if (pack.added()) {
+				newObjects.add(pack.hash());
+				storedBytes += pack.size();
+			}
+		}
+
+		RegionIndex regionIndex = new RegionIndex(locations, timestamps, packs, offsets, lengths, packHashes);
+		ObjectStore.Stored stored = store.store(regionIndex.toBytes());
+		if (stored.added()) {
+			newObjects.add(stored.hash());
+			storedBytes += stored.size();
+		}
+		return new StoreResult(stored.hash(), newChunks.size(), storedBytes, reusedChunks, reusedBytes, newObjects);
+	}
+
+	// Section: Restore
+	// Writes the region file back, placing the chunks one after another from the first sector after the header.
+	// The chunk payloads and timestamps are those that were backed up; only their sector positions differ.
+	public long rebuild(ObjectStore store, Path target) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(RegionFile.HEADER_SIZE);
+		Map<Integer, FileChannel> packChannels = new HashMap<>();
+		int nextSector = RegionFile.HEADER_SIZE / RegionFile.SECTOR_SIZE;
+
+		try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (int index = 0; index < RegionFile.CHUNK_COUNT; index++) {
+				if (packs[index] == NO_PACK) {
+					continue;
+				}
+				FileChannel pack = packChannels.get(packs[index]);
+				if (pack == null) {
+					pack = FileChannel.open(store.resolve(packHashes.get(packs[index])), StandardOpenOption.READ);
+					packChannels.put(packs[index], pack);
+				}
+
+				int sectorCount = (4 + lengths[index] + RegionFile.SECTOR_SIZE - 1) / RegionFile.SECTOR_SIZE;
+				ByteBuffer chunk = ByteBuffer.allocate(sectorCount * RegionFile.SECTOR_SIZE);
+				chunk.putInt(lengths[index]);
+				chunk.limit(4 + lengths[index]);
+				while (chunk.hasRemaining()) {
+					if (pack.read(chunk, offsets[index] + chunk.position() - 4L) < 0) {
+						throw new EOFException("Chunk pack " + packHashes.get(packs[index]) + " is shorter than its index");
+					}
+				}
+				chunk.clear();
+				writeFully(out, chunk, (long) nextSector * RegionFile.SECTOR_SIZE);
+
+				header.putInt(index * 4, (nextSector << 8) | sectorCount);
+				header.putInt(RegionFile.SECTOR_SIZE + index * 4, timestamps[index]);
+				nextSector += sectorCount;
+			}
+			writeFully(out, header, 0);
+			return (long) nextSector * RegionFile.SECTOR_SIZE;
+		} finally {
+			for (FileChannel pack : packChannels.values()) {
+				pack.close();
+			}
+		}
+	}
+
+	// Rebuilds the region into a temporary file, for reading single chunks or files out of a backup
+	public Path rebuildToTemp(ObjectStore store) throws IOException {
+		Path tempFile = Files.createTempFile("serverbackup_", ".mca");
+		try {
+			rebuild(store, tempFile);
+			return tempFile;
+		} catch (IOException e) {
+			Files.deleteIfExists(tempFile);
+			throw e;
+		}
+	}
+
+	// Checks that every chunk lies inside its pack, given the size of each pack
+	public List<String> check(Map<String, Long> packSizes) {
+		List<String> problems = new ArrayList<>();
+		for (int index = 0; index < RegionFile.CHUNK_COUNT; index++) {
+			if (packs[index] == NO_PACK) {
+				continue;
+			}
+			Long packSize = packSizes.get(packHashes.get(packs[index]));
+			if (packSize != null && (offsets[index] < 0 || lengths[index] <= 0
+					|| (long) offsets[index] + lengths[index] > packSize)) {
+				problems.add("chunk " + index + " lies outside its pack " + packHashes.get(packs[index]));
+			}
+		}
+		return problems;
+	}
+
+	// Section: Serialization
+	public static RegionIndex load(ObjectStore store, String hash) throws IOException {
+		try (InputStream in = store.open(hash)) {
+			return read(in);
+		}
+	}
+
+	public static RegionIndex read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a region index");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported region index version " + version);
+		}
+
+		int packCount = in.readInt();
+		if (packCount < 0 || packCount > RegionFile.CHUNK_COUNT) {
+			throw new IOException("Region index lists " + packCount + " packs");
+		}
+		List<String> packHashes = new ArrayList<>(packCount);
+		byte[] hash = new byte[HASH_BYTES];
+		for (int i = 0; i < packCount; i++) {
+			in.readFully(hash);
+			packHashes.add(HexFormat.of().formatHex(hash));
+		}
+
+		int[] locations = new int[RegionFile.CHUNK_COUNT];
+		int[] timestamps = new int[RegionFile.CHUNK_COUNT];
+		int[] packs = new int[RegionFile.CHUNK_COUNT];
+		int[] offsets = new int[RegionFile.CHUNK_COUNT];
+		int[] lengths = new int[RegionFile.CHUNK_COUNT];
+		for (int index = 0; index < RegionFile.CHUNK_COUNT; index++) {
+			locations[index] = in.readInt();
+			timestamps[index] = in.readInt();
+			packs[index] = in.readInt();
+			offsets[index] = in.readInt();
+			lengths[index] = in.readInt();
+			if (packs[index] < NO_PACK || packs[index] >= packCount) {
+				throw new IOException("Chunk " + index + " refers to pack " + packs[index] + " of " + packCount);
+			}
+		}
+		return new RegionIndex(locations, timestamps, packs, offsets, lengths, packHashes);
+	}
+
+	public byte[] toBytes() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + packHashes.size() * HASH_BYTES
+				+ RegionFile.CHUNK_COUNT * 20);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(packHashes.size());
+			for (String packHash : packHashes) {
+				out.write(HexFormat.of().parseHex(packHash));
+			}
+			for (int index = 0; index < RegionFile.CHUNK_COUNT; index++) {
+				out.writeInt(locations[index]);
+				out.writeInt(timestamps[index]);
+				out.writeInt(packs[index]);
+				out.writeInt(offsets[index]);
+				out.writeInt(lengths[index]);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Writing to memory failed", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	// The objects a manifest entry needs, each with a label naming what it holds: the file's own object, or for
+	// a region stored by chunk its packs followed by its index
+	public static Map<String, String> objectsOf(BackupManifest.Entry entry, ObjectStore store) throws IOException {
+		Map<String, String> objects = new LinkedHashMap<>();
+		if (entry.isChunked()) {
+			for (String packHash : load(store, entry.getHash()).getPackHashes()) {
+				objects.put(packHash, entry.getPath() + " (chunks)");
+			}
+			objects.put(entry.getHash(), entry.getPath() + " (chunk index)");
+		} else {
+			objects.put(entry.getHash(), entry.getPath());
+		}
+		return objects;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.ExcuseMeImJack;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+
+// A place off the host that completed backups are copied to. Files are addressed by keys, their path relative
+// to server_backups with forward slashes, so the remote copy has the same layout as the local folder.
+public interface ReplicationTarget extends Closeable {
+
+	// Keys of every complete file under the prefix. Uploads that were cut short are not listed.
+	Set<String> list(String prefix) throws IOException;
+
+	// Uploads the file under the key, paced by the budget. Backup files never change once committed, so an
+	// upload cut short is continued from where it stopped when the same key is uploaded again. Returns the
+	// bytes sent, which is less than the file's size when an earlier upload was continued.
+	long upload(Path file, String key, IoBudget budget) throws IOException;
+
+	String describe();
+
+	@Override
+	default void close() {
+	}
+
+	// "s3://bucket/prefix" for an S3-compatible store, anything else is a directory, for example an NFS mount
+	static ReplicationTarget create(String target, String endpoint, String region, int workers) throws IOException {
+		if (target.startsWith("s3://")) {
+			URI uri = URI.create(target);
+			String prefix = uri.getPath() == null ? "" : uri.getPath().replaceAll("^/+|/+$", "");
+			return new S3ReplicationTarget(endpoint == null || endpoint.isEmpty()
+					? URI.create("https://s3." + region + ".amazonaws.com") : URI.create(endpoint),
+					uri.getHost(), prefix, region, System.getenv("AWS_ACCESS_KEY_ID"),
+					System.getenv("AWS_SECRET_ACCESS_KEY"), workers);
+		}
+		if (target.contains("://") && !target.startsWith("file://")) {
+			throw new IOException("Unsupported replication target " + target
+					+ ", use s3:// or a directory (mount SFTP or NFS shares and give their path)");
+		}
+		Path dir = target.startsWith("file://") ? Paths.get(URI.create(target)) : Paths.get(target);
+		return new DirectoryReplicationTarget(dir);
+	}
+}
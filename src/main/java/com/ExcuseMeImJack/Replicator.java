@@ -0,0 +1,157 @@
+package com.ExcuseMeImJack;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Copies completed backups to a ReplicationTarget. Objects referenced by an incremental backup go up before
+// its manifest and only if the remote does not hold them yet, and each backup's commit marker goes up last,
+// so a backup the remote has a marker for is complete there. Copying the remote contents back into
+// server_backups brings the backups back into the catalog on the next start.
+public class Replicator {
+
+	private final Path backupsRoot;
+	private final ReplicationTarget target;
+	private final IoBudget budget;
+	private final ExecutorService workers;
+	// Keys known to be on the remote, listed once and kept up to date as files are uploaded
+	private Set<String> remoteKeys;
+
+	public Replicator(Path backupsRoot, ReplicationTarget target, IoBudget budget, ExecutorService workers) {
+		this.backupsRoot = backupsRoot.toAbsolutePath().normalize();
+		this.target = target;
+		this.budget = budget;
+		this.workers = workers;
+	}
+
+	public ReplicationTarget getTarget() {
+		return target;
+	}
+
+	public record Result(int backups, long files, long bytes, long nanos) {
+
+		@Override
+		public String toString() {
+			return String.format("%d backups, %d files (%.1f MB) in %.1f s", backups, files, bytes / 1_048_576.0,
+					nanos / 1_000_000_000.0);
+		}
+	}
+
+	// Uploads every given backup that is not yet complete on the remote, oldest first. A backup that was
+	// pruned while it was being uploaded, or that lost a file locally, is skipped.
+	public synchronized Result replicate(List<BackupCatalog.Entry> entries, ObjectStore store) throws IOException {
+		long start = System.nanoTime();
+		if (remoteKeys == null) {
+			remoteKeys = ConcurrentHashMap.newKeySet();
+			remoteKeys.addAll(target.list(""));
+		}
+
+		List<BackupCatalog.Entry> pending = new ArrayList<>(entries);
+		pending.sort(Comparator.comparingLong(BackupCatalog.Entry::getTimestamp));
+		int backups = 0;
+		AtomicLong files = new AtomicLong();
+		AtomicLong bytes = new AtomicLong();
+
+		for (BackupCatalog.Entry entry : pending) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new IOException("Replication interrupted");
+			}
+			String backupKey = keyOf(entry.getPath()) + "/";
+			if (remoteKeys.contains(backupKey + BackupCommit.FILE_NAME)) {
+				continue;
+			}
+			try {
+				replicateBackup(entry, backupKey, store, files, bytes);
+				backups++;
+			} catch (NoSuchFileException e) {
+				if (Files.exists(entry.getPath())) {
+					// For example an object the scrub quarantined; the backups after it can still go up
+					ServerBackup.LOGGER.error("Backup " + entry.getId() + " cannot be replicated, it is missing "
+							+ e.getFile());
+				} else {
+					ServerBackup.LOGGER.info("Backup " + entry.getId() + " was deleted before it was replicated.");
+				}
+			}
+		}
+		return new Result(backups, files.get(), bytes.get(), System.nanoTime() - start);
+	}
+
+	private void replicateBackup(BackupCatalog.Entry entry, String backupKey, ObjectStore store, AtomicLong files,
+			AtomicLong bytes) throws IOException {
+		Path backupDir = entry.getPath();
+
+		if (entry.getFormat() == BackupFormat.INCREMENTAL) {
+			// Chunk packs go up before the region indexes that reference them
+			Set<String> objects = new LinkedHashSet<>();
+			Set<String> indexes = new LinkedHashSet<>();
+			for (BackupManifest.Entry file : BackupManifest.read(backupDir).getEntries()) {
+				if (!file.isChunked()) {
+					objects.add(file.getHash());
+				} else if (!remoteKeys.contains(keyOf(store.resolve(file.getHash()))) && indexes.add(file.getHash())) {
+					objects.addAll(RegionIndex.load(store, file.getHash()).getPackHashes());
+				}
+			}
+			uploadAll(uploadsOf(objects, store), files, bytes);
+			uploadAll(uploadsOf(indexes, store), files, bytes);
+		}
+
+		List<Upload> backupFiles = new ArrayList<>();
+		try (Stream<Path> paths = Files.walk(backupDir)) {
+			for (Path path : (Iterable<Path>) paths::iterator) {
+				if (Files.isRegularFile(path) && !path.getFileName().toString().equals(BackupCommit.FILE_NAME)) {
+					backupFiles.add(new Upload(path, keyOf(path)));
+				}
+			}
+		}
+		uploadAll(backupFiles, files, bytes);
+
+		uploadAll(List.of(new Upload(backupDir.resolve(BackupCommit.FILE_NAME), backupKey + BackupCommit.FILE_NAME)),
+				files, bytes);
+	}
+
+	private record Upload(Path file, String key) {
+	}
+
+	private List<Upload> uploadsOf(Set<String> hashes, ObjectStore store) {
+		List<Upload> uploads = new ArrayList<>(hashes.size());
+		for (String hash : hashes) {
+			uploads.add(new Upload(store.resolve(hash), keyOf(store.resolve(hash))));
+		}
+		return uploads;
+	}
+
+	private void uploadAll(List<Upload> uploads, AtomicLong files, AtomicLong bytes) throws IOException {
+		List<Future<?>> futures = new ArrayList<>();
+		for (Upload upload : uploads) {
+			if (remoteKeys.contains(upload.key())) {
+				continue;
+			}
+			futures.add(workers.submit(() -> {
+				try {
+					bytes.addAndGet(target.upload(upload.file(), upload.key(), budget));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				files.incrementAndGet();
+				remoteKeys.add(upload.key());
+			}));
+		}
+		CopyEngine.awaitAll(futures, "Replication");
+	}
+
+	private String keyOf(Path path) {
+		return backupsRoot.relativize(path.toAbsolutePath().normalize()).toString().replace('\\', '/');
+	}
+}
@@ -0,0 +1,175 @@
+package com.ExcuseMeImJack;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+// A world restore that has been prepared next to the live world and waits to be swapped in while the server
+// is stopped. The swap is two renames on the same volume, so it takes moments however large the world is, and
+// the replaced world is kept beside it for rollback. The pending swap is recorded in a file so a swap cut
+// short by a crash is finished on the next start.
+//
+// A restore of a single backup unit swaps only that unit's folder. A restore of the root unit swaps the world
+// folder but first moves the other units' folders over from the live world, so they stay as they are.
+public class RestoreSwap {
+
+	public static final String FILE_NAME = "pending_restore.json";
+	private static final Gson GSON = new Gson();
+
+	private String world;
+	private String staging;
+	private String backupId;
+	private long preparedAt;
+	// The unit folder to swap, relative to the world; null to swap the whole world
+	private String directory;
+	// Folders moved from the live world into the prepared one before a whole-world swap
+	private List<String> carryOver;
+
+	public RestoreSwap(Path world, Path staging, String backupId, long preparedAt) {
+		this(world, staging, backupId, preparedAt, null, List.of());
+	}
+
+	public RestoreSwap(Path world, Path staging, String backupId, long preparedAt, String directory,
+			List<String> carryOver) {
+		this.world = world.toAbsolutePath().toString();
+		this.staging = staging.toAbsolutePath().toString();
+		this.backupId = backupId;
+		this.preparedAt = preparedAt;
+		this.directory = directory;
+		this.carryOver = carryOver;
+	}
+
+	public static Path stagingDirFor(Path worldDir) {
+		return worldDir.resolveSibling(worldDir.getFileName() + ".restore");
+	}
+
+	public Path getWorld() {
+		return Paths.get(world);
+	}
+
+	public Path getStaging() {
+		return Paths.get(staging);
+	}
+
+	public String getBackupId() {
+		return backupId;
+	}
+
+	public long getPreparedAt() {
+		return preparedAt;
+	}
+
+	public String getDirectory() {
+		return directory;
+	}
+
+	// Section: Persistence
+	public void save(Path file) throws IOException {
+		BackupFiles.replaceAtomically(file, GSON.toJson(this).getBytes(StandardCharsets.UTF_8));
+	}
+
+	// Returns null if no swap is pending
+	public static RestoreSwap load(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try {
+			RestoreSwap swap = GSON.fromJson(Files.readString(file, StandardCharsets.UTF_8), RestoreSwap.class);
+			if (swap == null || swap.world == null || swap.staging == null) {
+				throw new IOException("Pending restore file is incomplete: " + file);
+			}
+			return swap;
+		} catch (JsonParseException e) {
+			throw new IOException("Pending restore file is unreadable: " + file, e);
+		}
+	}
+
+	// Section: Swap
+	// Moves the live world aside and the prepared one into its place. Each step checks what is already done, so
+	// running it again after a crash picks up where it stopped. Returns the folder holding the replaced world,
+	// or null if there was no world to replace.
+	public Path apply(Path file) throws IOException {
+		if (directory != null && !directory.isEmpty()) {
+			return applyToUnit(file);
+		}
+		Path worldDir = getWorld();
+		Path stagingDir = getStaging();
+		Path rollbackDir = null;
+
+		if (Files.isDirectory(stagingDir)) {
+			if (carryOver != null) {
+				for (String kept : carryOver) {
+					Path live = worldDir.resolve(kept);
+					Path prepared = stagingDir.resolve(kept);
+					if (Files.exists(live) && !Files.exists(prepared)) {
+						Files.createDirectories(prepared.getParent());
+						Files.move(live, prepared, StandardCopyOption.ATOMIC_MOVE);
+					}
+				}
+			}
+			if (Files.exists(worldDir)) {
+				rollbackDir = rollbackDirFor(worldDir);
+				Files.move(worldDir, rollbackDir, StandardCopyOption.ATOMIC_MOVE);
+			}
+			Files.move(stagingDir, worldDir, StandardCopyOption.ATOMIC_MOVE);
+			BackupFiles.syncDirectory(worldDir.toAbsolutePath().getParent());
+		} else if (!Files.isDirectory(worldDir)) {
+			throw new IOException("Prepared restore is missing and there is no world: " + stagingDir);
+		}
+
+		Files.deleteIfExists(file);
+		return rollbackDir;
+	}
+
+	// Swaps the unit's folder only; the replaced folder is kept at the same place in a rollback folder
+	private Path applyToUnit(Path file) throws IOException {
+		Path worldDir = getWorld();
+		Path stagingDir = getStaging();
+		Path liveDir = worldDir.resolve(directory);
+		Path preparedDir = stagingDir.resolve(directory);
+		Path rollbackDir = null;
+
+		if (Files.isDirectory(preparedDir)) {
+			if (Files.exists(liveDir)) {
+				rollbackDir = rollbackDirFor(worldDir);
+				Path replacedDir = rollbackDir.resolve(directory);
+				Files.createDirectories(replacedDir.getParent());
+				Files.move(liveDir, replacedDir, StandardCopyOption.ATOMIC_MOVE);
+			}
+			Files.createDirectories(liveDir.getParent());
+			Files.move(preparedDir, liveDir, StandardCopyOption.ATOMIC_MOVE);
+			BackupFiles.syncDirectory(liveDir.getParent());
+		} else if (!Files.isDirectory(liveDir)) {
+			throw new IOException("Prepared restore is missing and there is no " + directory + " folder: "
+					+ preparedDir);
+		}
+
+		if (Files.isDirectory(stagingDir)) {
+			BackupFiles.deleteDirectory(stagingDir);
+		}
+		Files.deleteIfExists(file);
+		return rollbackDir;
+	}
+
+	private static Path rollbackDirFor(Path worldDir) {
+		return worldDir.resolveSibling(worldDir.getFileName() + ".before-restore-"
+				+ new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()));
+	}
+
+	// Drops a prepared restore that has not been swapped in yet
+	public void discard(Path file) throws IOException {
+		Files.deleteIfExists(file);
+		if (Files.isDirectory(getStaging())) {
+			BackupFiles.deleteDirectory(getStaging());
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.ExcuseMeImJack;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+// Grandfather-father-son retention. A backup is kept if it is one of the newest keepLast backups, or the
+// newest backup of one of the latest N hours, days, weeks or months for the matching tier. The age and
+// total size caps are applied afterwards and may drop backups any tier would keep. The newest backup is
+// always kept.
+public class RetentionPolicy {
+
+	private final int keepLast;
+	private final int hourly;
+	private final int daily;
+	private final int weekly;
+	private final int monthly;
+	private final long maxTotalBytes;
+	private final long maxAgeMillis;
+
+	public RetentionPolicy(int keepLast, int hourly, int daily, int weekly, int monthly, long maxTotalBytes,
+			long maxAgeMillis) {
+		this.keepLast = keepLast;
+		this.hourly = hourly;
+		this.daily = daily;
+		this.weekly = weekly;
+		this.monthly = monthly;
+		this.maxTotalBytes = maxTotalBytes;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	public static RetentionPolicy keepLast(int count) {
+		return new RetentionPolicy(count, 0, 0, 0, 0, 0, 0);
+	}
+
+	// Backups are given oldest first, as the catalog lists them. Returns the backups to delete, oldest first.
+	public List<BackupCatalog.Entry> select(List<BackupCatalog.Entry> backups, long now, ZoneId zone) {
+		if (backups.isEmpty()) {
+			return List.of();
+		}
+
+		List<BackupCatalog.Entry> newestFirst = new ArrayList<>(backups);
+		Collections.reverse(newestFirst);
+
+		Set<BackupCatalog.Entry> kept = new HashSet<>(newestFirst.subList(0, Math.min(keepLast, newestFirst.size())));
+		keepTier(newestFirst, kept, zone, hourly, time -> time.truncatedTo(ChronoUnit.HOURS));
+		keepTier(newestFirst, kept, zone, daily, time -> time.toLocalDate());
+		keepTier(newestFirst, kept, zone, weekly,
+				time -> time.get(IsoFields.WEEK_BASED_YEAR) * 100 + time.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+		keepTier(newestFirst, kept, zone, monthly, time -> time.getYear() * 100 + time.getMonthValue());
+
+		BackupCatalog.Entry newest = newestFirst.get(0);
+		if (maxAgeMillis > 0) {
+			kept.removeIf(entry -> entry != newest && now - entry.getTimestamp() > maxAgeMillis);
+		}
+		if (maxTotalBytes > 0) {
+			long total = 0;
+			for (BackupCatalog.Entry entry : newestFirst) {
+				if (!kept.contains(entry)) {
+					continue;
+				}
+				total += entry.getSize();
+				if (total > maxTotalBytes && entry != newest) {
+					kept.remove(entry);
+				}
+			}
+		}
+		kept.add(newest);
+
+		List<BackupCatalog.Entry> expired = new ArrayList<>();
+		for (BackupCatalog.Entry entry : backups) {
+			if (!kept.contains(entry)) {
+				expired.add(entry);
+			}
+		}
+		return expired;
+	}
+
+	private static void keepTier(List<BackupCatalog.Entry> newestFirst, Set<BackupCatalog.Entry> kept, ZoneId zone,
+			int buckets, Function<ZonedDateTime, Object> bucketOf) {
+		if (buckets <= 0) {
+			return;
+		}
+		Set<Object> seen = new HashSet<>();
+		for (BackupCatalog.Entry entry : newestFirst) {
+			Object bucket = bucketOf.apply(ZonedDateTime.ofInstant(Instant.ofEpochMilli(entry.getTimestamp()), zone));
+			if (seen.add(bucket)) {
+				kept.add(entry);
+				if (seen.size() >= buckets) {
+					return;
+				}
+			}
+		}
+	}
+}
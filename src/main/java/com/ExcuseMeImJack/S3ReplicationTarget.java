@@ -0,0 +1,381 @@
+package com.ExcuseMeImJack;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Replicates to an S3-compatible object store (AWS S3, MinIO, Ceph, ...) over its REST API, signed with
+// Signature Version 4 and using path-style addresses so local stand-ins work without DNS setup. Credentials
+// come from AWS_ACCESS_KEY_ID and AWS_SECRET_ACCESS_KEY.
+//
+// Files above the part size go up as multipart uploads with their parts sent in parallel. An interrupted
+// multipart upload stays open on the store, so uploading the same key again finds it, asks which parts
+// arrived and sends only the rest.
+public class S3ReplicationTarget implements ReplicationTarget {
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+	// S3 needs parts of at least 5 MiB, except the last one
+	private static final int PART_SIZE = 8 * 1_048_576;
+	private static final int MAX_ATTEMPTS = 3;
+	private static final String EMPTY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+	private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+	private final URI endpoint;
+	private final String bucket;
+	private final String prefix;
+	private final String region;
+	private final String accessKey;
+	private final String secretKey;
+	private final HttpClient client;
+	private final ExecutorService partWorkers;
+
+	public S3ReplicationTarget(URI endpoint, String bucket, String prefix, String region, String accessKey,
+			String secretKey, int workers) throws IOException {
+		if (bucket == null || bucket.isEmpty()) {
+			throw new IOException("S3 replication target has no bucket");
+		}
+		if (accessKey == null || secretKey == null) {
+			throw new IOException("S3 replication needs AWS_ACCESS_KEY_ID and AWS_SECRET_ACCESS_KEY to be set");
+		}
+		this.endpoint = endpoint;
+		this.bucket = bucket;
+		this.prefix = prefix.isEmpty() ? "" : prefix + "/";
+		this.region = region;
+		this.accessKey = accessKey;
+		this.secretKey = secretKey;
+		this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+		this.partWorkers = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "ServerBackup-Upload-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public Set<String> list(String keyPrefix) throws IOException {
+		Set<String> keys = new HashSet<>();
+		String continuation = null;
+		do {
+			Map<String, String> query = new TreeMap<>();
+			query.put("list-type", "2");
+			query.put("prefix", prefix + keyPrefix);
+			if (continuation != null) {
+				query.put("continuation-token", continuation);
+			}
+			Document page = parse(send("GET", "", query, null));
+			for (String key : texts(page.getDocumentElement(), "Key")) {
+				keys.add(key.substring(prefix.length()));
+			}
+			continuation = "true".equals(text(page.getDocumentElement(), "IsTruncated"))
+					? text(page.getDocumentElement(), "NextContinuationToken") : null;
+		} while (continuation != null);
+		return keys;
+	}
+
+	@Override
+	public long upload(Path file, String key, IoBudget budget) throws IOException {
+		long size = Files.size(file);
+		if (size <= PART_SIZE) {
+			byte[] data = Files.readAllBytes(file);
+			budget.acquire(data.length);
+			send("PUT", prefix + key, Map.of(), data);
+			return data.length;
+		}
+
+		String uploadId = findUpload(prefix + key);
+		Map<Integer, String> etags = new HashMap<>();
+		if (uploadId == null) {
+			uploadId = text(parse(send("POST", prefix + key, Map.of("uploads", ""), null)).getDocumentElement(),
+					"UploadId");
+		} else {
+			etags.putAll(listParts(prefix + key, uploadId, size));
+		}
+
+		int partCount = (int) ((size + PART_SIZE - 1) / PART_SIZE);
+		String id = uploadId;
+		AtomicLong sent = new AtomicLong();
+		Map<Integer, Future<String>> pending = new HashMap<>();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			for (int part = 1; part <= partCount; part++) {
+				if (etags.containsKey(part)) {
+					continue;
+				}
+				int number = part;
+				pending.put(part, partWorkers.submit(() -> {
+					long offset = (long) (number - 1) * PART_SIZE;
+					ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(PART_SIZE, size - offset));
+					while (buffer.hasRemaining()) {
+						if (channel.read(buffer, offset + buffer.position()) < 0) {
+							throw new IOException("File changed during upload: " + file);
+						}
+					}
+					budget.acquire(buffer.capacity());
+					HttpResponse<byte[]> response = send("PUT", prefix + key,
+							Map.of("partNumber", String.valueOf(number), "uploadId", id), buffer.array());
+					sent.addAndGet(buffer.capacity());
+					return response.headers().firstValue("ETag")
+							.orElseThrow(() -> new IOException("No ETag for part " + number + " of " + key));
+				}));
+			}
+			CopyEngine.awaitAll(new ArrayList<>(pending.values()), "Upload of " + key);
+		}
+		for (Map.Entry<Integer, Future<String>> part : pending.entrySet()) {
+			try {
+				etags.put(part.getKey(), part.getValue().get());
+			} catch (Exception e) {
+				throw new IOException("Upload of " + key + " failed", e);
+			}
+		}
+
+		StringBuilder complete = new StringBuilder("<CompleteMultipartUpload>");
+		for (int part = 1; part <= partCount; part++) {
+			complete.append("<Part><PartNumber>").append(part).append("</PartNumber><ETag>")
+					.append(escapeXml(etags.get(part))).append("</ETag></Part>");
+		}
+		complete.append("</CompleteMultipartUpload>");
+		HttpResponse<byte[]> response = send("POST", prefix + key, Map.of("uploadId", uploadId),
+				complete.toString().getBytes(StandardCharsets.UTF_8));
+		// The store may report a failed completion with status 200 and an error document
+		if (parse(response).getDocumentElement().getTagName().equals("Error")) {
+			throw new IOException("Completing the upload of " + key + " failed: "
+					+ new String(response.body(), StandardCharsets.UTF_8));
+		}
+		return sent.get();
+	}
+
+	@Override
+	public String describe() {
+		return "s3://" + bucket + "/" + prefix + " at " + endpoint;
+	}
+
+	@Override
+	public void close() {
+		partWorkers.shutdownNow();
+	}
+
+	// Section: Multipart resume
+	// Returns the newest unfinished multipart upload of the key, or null if there is none
+	private String findUpload(String fullKey) throws IOException {
+		Document uploads = parse(send("GET", "", new TreeMap<>(Map.of("uploads", "", "prefix", fullKey)), null));
+		String uploadId = null;
+		String initiated = "";
+		NodeList nodes = uploads.getDocumentElement().getElementsByTagName("Upload");
+		for (int i = 0; i < nodes.getLength(); i++) {
+			Element upload = (Element) nodes.item(i);
+			String started = text(upload, "Initiated");
+			if (fullKey.equals(text(upload, "Key")) && (started == null || started.compareTo(initiated) >= 0)) {
+				uploadId = text(upload, "UploadId");
+				initiated = started == null ? "" : started;
+			}
+		}
+		return uploadId;
+	}
+
+	// Parts that arrived complete, by part number
+	private Map<Integer, String> listParts(String fullKey, String uploadId, long size) throws IOException {
+		Map<Integer, String> etags = new HashMap<>();
+		String marker = null;
+		do {
+			Map<String, String> query = new TreeMap<>();
+			query.put("uploadId", uploadId);
+			if (marker != null) {
+				query.put("part-number-marker", marker);
+			}
+			Document page = parse(send("GET", fullKey, query, null));
+			NodeList parts = page.getDocumentElement().getElementsByTagName("Part");
+			for (int i = 0; i < parts.getLength(); i++) {
+				Element part = (Element) parts.item(i);
+				int number = Integer.parseInt(text(part, "PartNumber"));
+				long expected = Math.min(PART_SIZE, size - (long) (number - 1) * PART_SIZE);
+				if (Long.parseLong(text(part, "Size")) == expected) {
+					etags.put(number, text(part, "ETag"));
+				}
+			}
+			marker = "true".equals(text(page.getDocumentElement(), "IsTruncated"))
+					? text(page.getDocumentElement(), "NextPartNumberMarker") : null;
+		} while (marker != null);
+		return etags;
+	}
+
+	// Section: Requests
+	private HttpResponse<byte[]> send(String method, String key, Map<String, String> query, byte[] body)
+			throws IOException {
+		String path = "/" + encode(bucket, false) + (key.isEmpty() ? "" : "/" + encode(key, true));
+		StringBuilder queryString = new StringBuilder();
+		for (Map.Entry<String, String> parameter : new TreeMap<>(query).entrySet()) {
+			if (!queryString.isEmpty()) {
+				queryString.append('&');
+			}
+			queryString.append(encode(parameter.getKey(), false)).append('=')
+					.append(encode(parameter.getValue(), false));
+		}
+		String basePath = endpoint.getRawPath() == null ? "" : endpoint.getRawPath().replaceAll("/+$", "");
+		URI uri = URI.create(endpoint.getScheme() + "://" + endpoint.getRawAuthority() + basePath + path
+				+ (queryString.isEmpty() ? "" : "?" + queryString));
+
+		IOException failure = null;
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+			try {
+				HttpResponse<byte[]> response = client.send(sign(method, uri, basePath + path,
+						queryString.toString(), body), HttpResponse.BodyHandlers.ofByteArray());
+				if (response.statusCode() / 100 == 2) {
+					return response;
+				}
+				failure = new IOException(method + " " + uri + " returned " + response.statusCode() + ": "
+						+ new String(response.body(), StandardCharsets.UTF_8));
+				if (response.statusCode() < 500) {
+					throw failure;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted during " + method + " " + uri);
+			} catch (IOException e) {
+				if (e == failure) {
+					throw e;
+				}
+				failure = e;
+			}
+			try {
+				Thread.sleep(1000L << attempt);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted during " + method + " " + uri);
+			}
+		}
+		throw failure;
+	}
+
+	private HttpRequest sign(String method, URI uri, String canonicalPath, String canonicalQuery, byte[] body)
+			throws IOException {
+		String amzDate = AMZ_DATE.format(ZonedDateTime.now(ZoneOffset.UTC));
+		String date = amzDate.substring(0, 8);
+		String payloadHash = body == null ? EMPTY_SHA256 : sha256Hex(body);
+		String host = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+
+		String signedHeaders = "host;x-amz-content-sha256;x-amz-date";
+		String canonicalRequest = method + "\n" + canonicalPath + "\n" + canonicalQuery + "\n"
+				+ "host:" + host + "\n" + "x-amz-content-sha256:" + payloadHash + "\n" + "x-amz-date:" + amzDate + "\n"
+				+ "\n" + signedHeaders + "\n" + payloadHash;
+		String scope = date + "/" + region + "/s3/aws4_request";
+		String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+				+ sha256Hex(canonicalRequest.getBytes(StandardCharsets.UTF_8));
+
+		byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+		key = hmac(key, region);
+		key = hmac(key, "s3");
+		key = hmac(key, "aws4_request");
+		String signature = HexFormat.of().formatHex(hmac(key, stringToSign));
+
+		return HttpRequest.newBuilder(uri)
+				.timeout(Duration.ofMinutes(5))
+				.header("x-amz-date", amzDate)
+				.header("x-amz-content-sha256", payloadHash)
+				.header("Authorization", "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+						+ ", SignedHeaders=" + signedHeaders + ", Signature=" + signature)
+				.method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+						: HttpRequest.BodyPublishers.ofByteArray(body))
+				.build();
+	}
+
+	// Section: Utility Methods
+	// Percent-encodes everything but the unreserved characters, as Signature Version 4 expects
+	private static String encode(String value, boolean keepSlashes) {
+		StringBuilder encoded = new StringBuilder();
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			char c = (char) (b & 0xff);
+			if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_'
+					|| c == '.' || c == '~' || (keepSlashes && c == '/')) {
+				encoded.append(c);
+			} else {
+				encoded.append('%').append(String.format("%02X", b & 0xff));
+			}
+		}
+		return encoded.toString();
+	}
+
+	private static String sha256Hex(byte[] data) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private static byte[] hmac(byte[] key, String data) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+			return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 is not available", e);
+		}
+	}
+
+	private static Document parse(HttpResponse<byte[]> response) throws IOException {
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			DocumentBuilder builder = factory.newDocumentBuilder();
+			return builder.parse(new ByteArrayInputStream(response.body()));
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("Unreadable response from " + response.uri(), e);
+		}
+	}
+
+	private static String text(Element parent, String tag) {
+		NodeList nodes = parent.getElementsByTagName(tag);
+		return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent();
+	}
+
+	private static List<String> texts(Element parent, String tag) {
+		List<String> values = new ArrayList<>();
+		NodeList nodes = parent.getElementsByTagName(tag);
+		for (int i = 0; i < nodes.getLength(); i++) {
+			values.add(nodes.item(i).getTextContent());
+		}
+		return values;
+	}
+
+	private static String escapeXml(String value) {
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
@@ -1,6 +1,9 @@
 package com.ExcuseMeImJack;
 
 import net.fabricmc.api.*;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.command.argument.ColumnPosArgumentType;
+import net.minecraft.command.argument.DimensionArgumentType;
 import net.fabricmc.fabric.api.command.v2.*;
 import net.fabricmc.fabric.api.event.lifecycle.v1.*;
 import net.minecraft.entity.*;
@@ -10,8 +13,10 @@ import net.minecraft.network.packet.s2c.play.*;
 import net.minecraft.server.*;
 import net.minecraft.server.command.*;
 import net.minecraft.server.network.*;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.*;
 import net.minecraft.util.*;
+import net.minecraft.util.math.ColumnPos;
 import org.slf4j.*;
 
 import com.google.common.reflect.*;
@@ -19,6 +24,7 @@ import com.google.gson.*;
 import com.mojang.brigadier.*;
 import com.mojang.brigadier.arguments.*;
 import com.mojang.brigadier.context.*;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.suggestion.Suggestions;
 import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 import com.mojang.datafixers.util.Pair;
@@ -28,34 +34,116 @@ import java.lang.reflect.*;
 import java.nio.file.*;
 import java.nio.file.attribute.FileTime;
 import java.text.*;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 
 public class ServerBackup implements ModInitializer {
 
 	// Constants
 	private static final int TICKS_PER_MINUTE = 1200;
 	private static final String BACKUP_HISTORY_FILE = "backup_history.json";
+	private static final String CATALOG_FILE = "catalog.jsonl";
+	private static final String PLAYER_INDEX_FILE = "player_index.jsonl";
+	private static final String METRICS_FILE = "metrics.prom";
 	public static final String MOD_ID = "ServerBackup";
 	public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
-	private static final int MAX_BACKUPS = 5;
-	private static final String MANUAL_PREFIX = "manual_";
-	private static final String AUTO_PREFIX = "auto_";
+	public static final ChangeTracker CHANGE_TRACKER = new ChangeTracker();
+	private static final String OBJECTS_DIR = "objects";
+	private static final String STAGING_DIR = "staging";
+	private static final String TRASH_DIR = "trash";
+	private static final List<String> BACKUP_DIRS = List.of("manual_backups", "auto_backups", "safety_backups");
+	private static final int POST_BACKUP_SAMPLE_TICKS = 100;
+	private static final int BACKOFF_CHECK_TICKS = 20;
+	private static final long CONFIG_CHECK_SECONDS = 5;
+	private static final long SCRUB_INITIAL_DELAY_HOURS = 1;
+	private static final long SCRUB_INTERVAL_HOURS = 24;
+	private static final long SHUTDOWN_SNAPSHOT_TIMEOUT_MINUTES = 10;
+	private static final int VERIFY_PROBLEMS_SHOWN = 5;
+	private static final int LIST_PAGE_SIZE = 20;
+	private static final int DIFF_PLAYERS_SHOWN = 10;
+	// Keys of backup jobs start with this, so cancel leaves verify, info and diff jobs alone
+	private static final String BACKUP_JOBS = "backup:";
+	private static final String MANUAL_BACKUP_JOB = BACKUP_JOBS + "manual";
+	private static final String AUTO_BACKUP_JOB = BACKUP_JOBS + "auto";
 
 	// Fields
-	private int ticksSinceLastBackup = 0;
-	private long lastBackupHistoryModified = 0;
-	private int backupDelayMinutes = 10;
-	private Map<String, Path> backupHistory = new HashMap<>();
+	private final Path configFile = FabricLoader.getInstance().getConfigDir().resolve(BackupConfig.FILE_NAME);
+	private final BackupConfig startupConfig = loadStartupConfig(configFile);
+	// Read anew by every backup, so a reloaded config applies from the next one on
+	private volatile BackupConfig config = startupConfig;
+	// Guarded by this
+	private FileTime configModified;
+	private final Path backupsRoot = Paths.get(startupConfig.getBackupRoot());
+	// Automatic backups are split into units with their own interval and retention
+	private final List<BackupUnit> backupUnits = BackupUnit.split(CHANGE_TRACKER, unitSettings(startupConfig));
+	private final IoBudget backupIoBudget = new IoBudget(
+			startupConfig.getIo().getBackupMegabytesPerSecond() * 1_048_576L,
+			startupConfig.getIo().getBackupReadsPerSecond());
+	private final IoBudget scrubIoBudget = new IoBudget(
+			startupConfig.getIo().getScrubMegabytesPerSecond() * 1_048_576L, 0);
+	private final BackupCatalog catalog = new BackupCatalog(backupsRoot.resolve(CATALOG_FILE));
+	private final PlayerHistoryIndex playerIndex = new PlayerHistoryIndex(backupsRoot.resolve(PLAYER_INDEX_FILE));
+	private final TickMonitor tickMonitor = new TickMonitor();
+	private final BackupMetrics metrics = new BackupMetrics();
+	private final MetricsExporter metricsExporter = new MetricsExporter(metrics, backupsRoot.resolve(METRICS_FILE));
+	private final SnapshotCoordinator snapshotCoordinator = new SnapshotCoordinator(metrics);
+	// The newest incremental manifest of each unit, and under "" of the whole world
+	private final Map<String, BackupManifest> latestManifests = new ConcurrentHashMap<>();
+	private volatile boolean latestManifestsLoaded = false;
+	private final CopyEngine copyEngine = new CopyEngine(startupConfig.getCopyWorkers());
+	private final ReadWriteLock objectStoreLock = new ReentrantReadWriteLock();
+	private final AtomicBoolean pruneScheduled = new AtomicBoolean(false);
+	private final ExecutorService pruneExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ServerBackup-Prune");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+	private final IoBudget replicationIoBudget = new IoBudget(
+			startupConfig.getReplication().getMegabytesPerSecond() * 1_048_576L, 0);
+	private Replicator replicator;
+	private final AtomicBoolean replicationScheduled = new AtomicBoolean(false);
+	private final ExecutorService replicationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ServerBackup-Replication");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+	private final ScheduledExecutorService scrubExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ServerBackup-Scrub");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+	private final ScheduledExecutorService configExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "ServerBackup-Config");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	// Initialization
 	@Override
 	public void onInitialize() {
-		loadBackupHistory();
+		watchConfig();
+		loadCatalog();
+		startMetrics();
+		startReplication();
 		registerCommands();
 		registerTickEvent();
+		registerLifecycleEvents();
 	}
 
 	// Section: Command Registration
@@ -63,9 +151,19 @@ public class ServerBackup implements ModInitializer {
 		CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
 			registerBackupCommand(dispatcher);
 			registerAutoDelayCommand(dispatcher);
+			registerIoBudgetCommand(dispatcher);
 			registerRestoreCommand(dispatcher);
 			registerRestorePlayerCommand(dispatcher);
+			registerRestoreChunksCommand(dispatcher);
+			registerPlayerHistoryCommand(dispatcher);
 			registerListBackupsCommand(dispatcher);
+			registerStatsCommand(dispatcher);
+			registerVerifyCommand(dispatcher);
+			registerCancelCommand(dispatcher);
+			registerUndoCommand(dispatcher);
+			registerInfoCommand(dispatcher);
+			registerDiffCommand(dispatcher);
+			registerReloadCommand(dispatcher);
 		});
 	}
 
@@ -78,8 +176,28 @@ public class ServerBackup implements ModInitializer {
 	private void registerAutoDelayCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
 		dispatcher.register(CommandManager.literal("serverbackup")
 				.then(CommandManager.literal("autodelay")
-						.then(CommandManager.argument("time", IntegerArgumentType.integer())
-								.executes(this::setBackupDelay))));
+						.then(CommandManager.argument("time", IntegerArgumentType.integer(1, 7 * 24 * 60))
+								.executes(context -> setBackupDelay(context, null))
+								.then(CommandManager.argument("unit", StringArgumentType.greedyString())
+										.suggests(this::suggestBackupUnits)
+										.executes(context -> setBackupDelay(context,
+												StringArgumentType.getString(context, "unit")))))));
+	}
+
+	private void registerIoBudgetCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("iobudget")
+						.then(CommandManager.argument("megabytesPerSecond", IntegerArgumentType.integer(0))
+								.executes(context -> setIoBudget(context, 0))
+								.then(CommandManager.argument("readsPerSecond", IntegerArgumentType.integer(0))
+										.executes(context -> setIoBudget(context,
+												IntegerArgumentType.getInteger(context, "readsPerSecond")))))));
+	}
+
+	private void registerReloadCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("reload")
+						.executes(this::reloadConfigCommand)));
 	}
 
 	private void registerRestoreCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
@@ -100,34 +218,102 @@ public class ServerBackup implements ModInitializer {
 										.executes(this::restorePlayerInventory)))));
 	}
 
+	private void registerRestoreChunksCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("restorechunks")
+						.then(CommandManager.argument("backupID", StringArgumentType.string())
+								.suggests(this::suggestBackupIDs)
+								.then(CommandManager.argument("dimension", DimensionArgumentType.dimension())
+										.then(CommandManager.argument("from", ColumnPosArgumentType.columnPos())
+												.then(CommandManager.argument("to", ColumnPosArgumentType.columnPos())
+														.executes(context -> restorePartial(context, false))))))));
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("restoreregion")
+						.then(CommandManager.argument("backupID", StringArgumentType.string())
+								.suggests(this::suggestBackupIDs)
+								.then(CommandManager.argument("dimension", DimensionArgumentType.dimension())
+										.then(CommandManager.argument("from", ColumnPosArgumentType.columnPos())
+												.then(CommandManager.argument("to", ColumnPosArgumentType.columnPos())
+														.executes(context -> restorePartial(context, true))))))));
+	}
+
+	private void registerPlayerHistoryCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("playerhistory")
+						.then(CommandManager.argument("player", StringArgumentType.string())
+								.suggests(this::suggestOnlinePlayers)
+								.executes(this::listPlayerHistory))));
+	}
+
 	private void registerListBackupsCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
 		dispatcher.register(CommandManager.literal("serverbackup")
 				.then(CommandManager.literal("list")
-						.executes(this::listBackups)));
+						.executes(context -> listBackups(context, 0))
+						.then(CommandManager.argument("page", IntegerArgumentType.integer(1))
+								.executes(context -> listBackups(context,
+										IntegerArgumentType.getInteger(context, "page"))))));
+	}
+
+	private void registerStatsCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("stats")
+						.executes(this::showStats)));
+	}
+
+	private void registerVerifyCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("verify")
+						.then(CommandManager.argument("backupID", StringArgumentType.string())
+								.suggests(this::suggestBackupIDs)
+								.executes(this::verifyBackup))));
+	}
+
+	private void registerCancelCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("cancel")
+						.executes(this::cancelBackups)));
+	}
+
+	private void registerUndoCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("undo")
+						.executes(this::undoRestore)));
+	}
+
+	private void registerInfoCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("info")
+						.then(CommandManager.argument("backupID", StringArgumentType.string())
+								.suggests(this::suggestBackupIDs)
+								.executes(this::showBackupInfo))));
+	}
+
+	private void registerDiffCommand(CommandDispatcher<ServerCommandSource> dispatcher) {
+		dispatcher.register(CommandManager.literal("serverbackup")
+				.then(CommandManager.literal("diff")
+						.then(CommandManager.argument("fromBackupID", StringArgumentType.string())
+								.suggests(this::suggestBackupIDs)
+								.then(CommandManager.argument("toBackupID", StringArgumentType.string())
+										.suggests(this::suggestBackupIDs)
+										.executes(this::diffBackups)))));
 	}
 
 	// Section: Command Suggestions
 	private CompletableFuture<Suggestions> suggestBackupIDs(CommandContext<ServerCommandSource> context,
 			SuggestionsBuilder builder) {
 
-		loadBackupHistory();
+		for (BackupCatalog.Entry entry : catalog.getEntries()) {
+			builder.suggest(entry.getId());
+		}
 
-		List<Map.Entry<String, Path>> sortedBackups = new ArrayList<>(backupHistory.entrySet());
+		return builder.buildFuture();
+	}
 
-		sortedBackups.sort(Comparator.comparing(entry -> {
-			try {
-				return Files.getLastModifiedTime(entry.getValue());
-			} catch (IOException e) {
-				LOGGER.error("Failed to get last modified time for: " + entry.getValue(), e);
-				return FileTime.fromMillis(0);
-			}
-		}));
+	private CompletableFuture<Suggestions> suggestBackupUnits(CommandContext<ServerCommandSource> context,
+			SuggestionsBuilder builder) {
 
-		for (Map.Entry<String, Path> entry : sortedBackups) {
-			String backupName = entry.getKey();
-			if (!backupName.startsWith(MANUAL_PREFIX) && !backupName.startsWith(AUTO_PREFIX)) {
-				builder.suggest(backupName);
-			}
+		for (BackupUnit unit : backupUnits) {
+			builder.suggest(unit.getName());
 		}
 
 		return builder.buildFuture();
@@ -142,177 +328,866 @@ public class ServerBackup implements ModInitializer {
 		return builder.buildFuture();
 	}
 
+	// Section: Configuration
+	// A config that cannot be read stops the server, see BackupConfig
+	private static BackupConfig loadStartupConfig(Path file) {
+		try {
+			BackupConfig loaded = BackupConfig.load(file);
+			LOGGER.info("Loaded backup config from " + file);
+			return loaded;
+		} catch (IOException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	private static Map<String, BackupUnit.Settings> unitSettings(BackupConfig settings) {
+		Map<String, BackupUnit.Settings> units = new LinkedHashMap<>();
+		settings.getUnits().forEach((name, unit) -> units.put(name, new BackupUnit.Settings(
+				(long) unit.getIntervalMinutes() * TICKS_PER_MINUTE, unit.getRetention().toPolicy())));
+		return units;
+	}
+
+	// The file is checked for changes every few seconds rather than watched, which works the same on every file
+	// system, network mounts included
+	private synchronized void watchConfig() {
+		configModified = modifiedTimeOf(configFile);
+		configExecutor.scheduleWithFixedDelay(this::reloadConfigIfChanged, CONFIG_CHECK_SECONDS, CONFIG_CHECK_SECONDS,
+				TimeUnit.SECONDS);
+	}
+
+	private synchronized void reloadConfigIfChanged() {
+		FileTime modified = modifiedTimeOf(configFile);
+		if (modified == null || modified.equals(configModified)) {
+			return;
+		}
+		configModified = modified;
+		reloadConfig();
+	}
+
+	// Returns why the file was not applied, or null if it was. The running settings stay as they are unless the
+	// whole file is valid.
+	private synchronized String reloadConfig() {
+		if (!Files.exists(configFile)) {
+			LOGGER.error("The backup config " + configFile + " is missing, keeping the current settings.");
+			return "The backup config " + configFile + " is missing.";
+		}
+		try {
+			BackupConfig loaded = BackupConfig.load(configFile);
+			applyConfig(loaded);
+			LOGGER.info("Reloaded backup config from " + configFile);
+			for (String setting : loaded.changesNeedingRestart(startupConfig)) {
+				LOGGER.warn("The backup config setting " + setting + " changed and takes effect after a restart.");
+			}
+			return null;
+		} catch (IOException | RuntimeException e) {
+			LOGGER.error("Could not reload the backup config, keeping the current settings: " + e.getMessage());
+			return e.getMessage();
+		}
+	}
+
+	private int reloadConfigCommand(CommandContext<ServerCommandSource> context) {
+		String problem = reloadConfig();
+		if (problem != null) {
+			context.getSource().sendError(Text.literal("Backup config not reloaded: " + problem)
+					.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+			return 0;
+		}
+		context.getSource().sendMessage(Text.literal("Backup config reloaded from " + configFile + ".")
+				.setStyle(Style.EMPTY.withColor(Formatting.GREEN)));
+		return 1;
+	}
+
+	// Applies a setting changed by command and saves it, so it is kept across restarts
+	private synchronized boolean updateConfig(ServerCommandSource source, BackupConfig changed) {
+		applyConfig(changed);
+		try {
+			changed.save(configFile);
+			configModified = modifiedTimeOf(configFile);
+			return true;
+		} catch (IOException e) {
+			LOGGER.error("Could not save the backup config", e);
+			source.sendError(Text.literal("The setting applies until the server stops, but could not be saved: "
+					+ e.getMessage()).setStyle(Style.EMPTY.withColor(Formatting.RED)));
+			return false;
+		}
+	}
+
+	// Backups already running finish with the settings they started with
+	private void applyConfig(BackupConfig applied) {
+		config = applied;
+		copyEngine.setWorkerCount(applied.getCopyWorkers());
+		jobScheduler.setWorkerCount(applied.getJobWorkers());
+		BackupConfig.Io io = applied.getIo();
+		backupIoBudget.setBytesPerSecond(io.getBackupMegabytesPerSecond() * 1_048_576L);
+		backupIoBudget.setOpsPerSecond(io.getBackupReadsPerSecond());
+		scrubIoBudget.setBytesPerSecond(io.getScrubMegabytesPerSecond() * 1_048_576L);
+		replicationIoBudget.setBytesPerSecond(applied.getReplication().getMegabytesPerSecond() * 1_048_576L);
+		unitSettings(applied).forEach((name, settings) -> {
+			BackupUnit unit = BackupUnit.find(backupUnits, name);
+			if (unit != null) {
+				unit.getScheduler().setIntervalTicks(settings.intervalTicks());
+				unit.setRetention(settings.retention());
+			}
+		});
+	}
+
+	private static FileTime modifiedTimeOf(Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
 	// Section: Backup Management
-	private void backupWorld(MinecraftServer server, String backupType) throws IOException {
+	// Returns the new backup's ID
+	private String backupWorld(MinecraftServer server, String backupType, WorldSnapshot snapshot) throws IOException {
+		return backupWorld(server, backupType, snapshot, null);
+	}
+
+	// A backup of a single unit when one is given, otherwise of the whole world
+	private String backupWorld(MinecraftServer server, String backupType, WorldSnapshot snapshot, BackupUnit unit)
+			throws IOException {
 		Path serverDir = server.getRunDirectory().toAbsolutePath();
 
-		Path backupsDir = serverDir.resolve("server_backups")
-				.resolve(backupType.equals("manual") ? "manual_backups" : "auto_backups");
+		Path backupsRoot = serverDir.resolve(this.backupsRoot);
+		BackupConfig settings = config;
+		Path backupsDir = backupsRoot.resolve(backupType + "_backups");
+		BackupFormat format = settings.getType(backupType).getFormat();
 
 		Files.createDirectories(backupsDir);
 
 		String timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
-		String backupID = generateRandomSaveId();
+		String backupID = catalog.newId();
 
-		Path backupDest = backupsDir.resolve(timestamp + "_" + backupID);
-		Path worldDir = server.getSavePath(WorldSavePath.ROOT);
-		Path tempBackupDir = Files.createTempDirectory("world_backup_");
+		String backupName = timestamp + "_" + backupID;
+		Path backupDest = backupsDir.resolve(backupName);
+		// Staged on the same volume as the backups, so moving it into place is a rename rather than a copy
+		Path stagingDir = backupsRoot.resolve(STAGING_DIR).resolve(backupName);
+		Files.createDirectories(stagingDir);
 
-		LOGGER.info("Starting world backup to: " + backupDest);
+		LOGGER.info((unit == null ? "Starting world backup to: " : "Starting backup of " + unit.getName() + " to: ")
+				+ backupDest);
+		long start = System.nanoTime();
+		boolean success = false;
 
 		try {
-			copyDirectory(worldDir, tempBackupDir);
-			Files.move(tempBackupDir, backupDest, StandardCopyOption.REPLACE_EXISTING);
-			backupHistory.put(backupID, backupDest);
+			String checksum = null;
+			// Objects reused from the previous backup must not be collected before this backup is cataloged
+			BackupManifest manifest = null;
+			objectStoreLock.readLock().lock();
+			try {
+				switch (format) {
+					case INCREMENTAL -> {
+						long phaseStart = System.nanoTime();
+						IncrementalBackupEngine.BackupResult result = incrementalEngine(server).backup(snapshot,
+								findLatestManifest(), backupID, backupType);
+						metrics.observePhase("copy", System.nanoTime() - phaseStart);
+						metrics.addWritten(backupType, result.storedBytes());
+						metrics.setDedupRatio(result.dedupRatio());
+						manifest = result.manifest();
+						checksum = manifest.write(stagingDir);
+					}
+					case ARCHIVE -> {
+						BackupArchive.WriteResult result = BackupArchive.write(
+								stagingDir.resolve(BackupArchive.FILE_NAME), snapshot.worldDir(),
+								snapshot.files().keySet(), settings.getCompressionLevel(), copyEngine.getWorkers(),
+								settings.getCopyWorkers() * 4, backupIoBudget);
+						LOGGER.info("Archived " + result);
+						metrics.observePhase("compress", result.nanos());
+						metrics.addWritten(backupType, result.compressedBytes());
+						metrics.setCompressionRatio(result.bytes() == 0 ? 1.0
+								: result.compressedBytes() / (double) result.bytes());
+						checksum = result.checksum();
+					}
+					default -> {
+						CopyEngine.CopyResult result = copySnapshot(snapshot, stagingDir);
+						BackupFiles.syncTree(stagingDir);
+						metrics.observePhase("copy", result.nanos());
+						metrics.addWritten(backupType, result.bytes());
+					}
+				}
 
-			if (backupType.equals("manual")) {
-				limitBackups(backupsDir, 5);
+				// The commit marker is written only once the data is on disk, and the backup is moved into
+				// place only once the marker is, so a crash at any point leaves no half-written backup behind
+				BackupCatalog.Entry entry = new BackupCatalog.Entry(backupID, backupType, snapshot.capturedAt(),
+						backupDest, snapshot.totalSize(), snapshot.files().size(), checksum, format,
+						unit == null ? null : unit.getName());
+				BackupCommit.write(stagingDir, entry);
+				Files.move(stagingDir, backupDest, StandardCopyOption.ATOMIC_MOVE);
+				BackupFiles.syncDirectory(backupsDir);
+				catalog.add(entry);
+				// Only a cataloged backup can be the parent of the next one
+				if (manifest != null) {
+					latestManifests.put(unit == null ? "" : unit.getName(), manifest);
+				}
+			} finally {
+				objectStoreLock.readLock().unlock();
+			}
+			if (unit == null || unit.isRoot()) {
+				playerIndex.record(backupID, snapshot);
 			}
+			metrics.addProcessed(backupType, snapshot.files().size(), snapshot.totalSize());
+			success = true;
 		} catch (IOException e) {
 			LOGGER.error("Backup failed", e);
 			throw e;
 		} finally {
-			if (Files.exists(tempBackupDir)) {
-				deleteDirectory(tempBackupDir);
+			if (Files.exists(stagingDir)) {
+				BackupFiles.deleteDirectory(stagingDir);
 			}
+			if (!success) {
+				catalog.releaseId(backupID);
+			}
+			metrics.observeBackup(backupType, success, System.nanoTime() - start);
+			metricsExporter.writeFile();
 		}
 
-		saveBackupHistory();
+		schedulePrune(server);
+		scheduleReplication(server);
+		LOGGER.info("World backup completed.");
+		return backupID;
+	}
+
+	// Section: Safety Snapshots
+	// Taken before a restore overwrites anything in the world and whenever the server stops, so a restore from
+	// the wrong backup can be undone. Run from a job holding the world.
+	private String takeSafetySnapshot(MinecraftServer server, String reason) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		String backupID = backupWorld(server, "safety", takeSnapshot(server, "safety"));
+		LOGGER.info(String.format("Safety snapshot %s taken %s in %.1f s.", backupID, reason,
+				(System.nanoTime() - start) / 1_000_000_000.0));
+		return backupID;
+	}
 
-		if (backupType.equals("auto")) {
-			limitBackups(backupsDir, MAX_BACKUPS);
+	// Returns false, after telling the source, if the snapshot failed and the restore must not go ahead
+	private boolean takeSafetySnapshotBeforeRestore(ServerCommandSource source, MinecraftServer server, String reason) {
+		try {
+			String backupID = takeSafetySnapshot(server, "before " + reason);
+			source.sendMessage(Text.literal("Safety snapshot " + backupID + " taken, /serverbackup undo goes back to it.")
+					.setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
+			return true;
+		} catch (Exception e) {
+			LOGGER.error("Failed to take a safety snapshot", e);
+			source.sendError(Text.literal("Restore aborted, the safety snapshot failed: " + e.getMessage())
+					.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+			return false;
 		}
+	}
 
-		LOGGER.info("World backup completed.");
+	// Runs once the world is saved and closed, so the files can be scanned as they are. It waits for the world
+	// like any other job, so a restore still running is not snapshotted halfway, but not forever.
+	private void takeShutdownSnapshot(MinecraftServer server) {
+		Path worldDir = server.getSavePath(WorldSavePath.ROOT).toAbsolutePath().normalize();
+		Future<?> snapshot = null;
+		try {
+			snapshot = jobScheduler.submit(JobScheduler.Priority.RESTORE, worldKey(server), null, () -> {
+				try {
+					long start = System.nanoTime();
+					WorldSnapshot snapshot = new WorldSnapshot(worldDir,
+							WorldSnapshot.scan(worldDir, config.getType("safety").getFilter()), System.currentTimeMillis(), 0);
+					String backupID = backupWorld(server, "safety", snapshot);
+					LOGGER.info(String.format("Safety snapshot %s taken at shutdown in %.1f s.", backupID,
+							(System.nanoTime() - start) / 1_000_000_000.0));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			snapshot.get(SHUTDOWN_SNAPSHOT_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+		} catch (TimeoutException e) {
+			LOGGER.error("Gave up on the shutdown safety snapshot after " + SHUTDOWN_SNAPSHOT_TIMEOUT_MINUTES
+					+ " minutes, a backup or restore still holds the world.");
+			snapshot.cancel(true);
+		} catch (Exception e) {
+			LOGGER.error("Could not take the shutdown safety snapshot", e);
+		}
+	}
+
+	private void loadCatalog() {
+		try {
+			catalog.load();
+			playerIndex.load();
+			if (catalog.size() == 0 && Files.exists(Paths.get(BACKUP_HISTORY_FILE))) {
+				migrateBackupHistory();
+			}
+			recoverBackups(backupsRoot);
+
+			for (BackupCatalog.Entry entry : new ArrayList<>(catalog.getEntries())) {
+				if (!Files.isDirectory(entry.getPath())) {
+					LOGGER.warn("Backup directory no longer exists: " + entry.getPath());
+					forgetBackup(entry.getId());
+				}
+			}
+
+			if (catalog.needsCompaction()) {
+				catalog.compact();
+			}
+			if (playerIndex.needsCompaction()) {
+				playerIndex.compact();
+			}
+		} catch (IOException e) {
+			LOGGER.error("Error reading the backup catalog.", e);
+		}
+	}
+
+	// Section: Recovery
+	// A crash can leave a backup half-written in the staging folder, or moved into place but not yet in the
+	// catalog. The first kind is deleted along with any objects only it referenced; the second is cataloged
+	// from its commit marker.
+	private void recoverBackups(Path backupsRoot) throws IOException {
+		boolean rolledBack = false;
+
+		Path stagingRoot = backupsRoot.resolve(STAGING_DIR);
+		if (Files.isDirectory(stagingRoot)) {
+			try (DirectoryStream<Path> staged = Files.newDirectoryStream(stagingRoot)) {
+				for (Path stagedBackup : staged) {
+					LOGGER.warn("Removing incomplete backup left by an interrupted run: " + stagedBackup.getFileName());
+					BackupFiles.deleteDirectory(stagedBackup);
+					rolledBack = true;
+				}
+			}
+		}
+
+		// Backups whose deletion was cut short; they are already out of the catalog
+		Path trashRoot = backupsRoot.resolve(TRASH_DIR);
+		if (Files.isDirectory(trashRoot)) {
+			try (DirectoryStream<Path> trashed = Files.newDirectoryStream(trashRoot)) {
+				for (Path trashedBackup : trashed) {
+					LOGGER.info("Finishing the deletion of old backup " + trashedBackup.getFileName());
+					BackupFiles.deleteDirectory(trashedBackup);
+				}
+			}
+		}
+
+		for (String backupDirName : BACKUP_DIRS) {
+			Path backupsDir = backupsRoot.resolve(backupDirName);
+			if (!Files.isDirectory(backupsDir)) {
+				continue;
+			}
+			try (DirectoryStream<Path> backups = Files.newDirectoryStream(backupsDir, Files::isDirectory)) {
+				for (Path backupDir : backups) {
+					BackupCatalog.Entry committed = BackupCommit.read(backupDir);
+					if (committed == null) {
+						continue;
+					}
+					BackupCatalog.Entry cataloged = catalog.get(committed.getId());
+					if (cataloged != null) {
+						// Older versions could give two backups the same ID; only one of them can be cataloged
+						if (!cataloged.getPath().toAbsolutePath().equals(backupDir.toAbsolutePath())) {
+							LOGGER.warn("Backup " + backupDir + " has the same ID as " + cataloged.getPath()
+									+ " and is not cataloged.");
+						}
+						continue;
+					}
+					catalog.add(new BackupCatalog.Entry(committed.getId(), committed.getType(),
+							committed.getTimestamp(), backupDir.toAbsolutePath(), committed.getSize(),
+							committed.getFiles(), committed.getChecksum(), committed.getFormat(), committed.getUnit()));
+					LOGGER.info("Recovered backup " + committed.getId() + " that was missing from the catalog.");
+				}
+			}
+		}
+
+		ObjectStore store = new ObjectStore(backupsRoot.resolve(OBJECTS_DIR));
+		store.deleteTempFiles();
+		if (rolledBack) {
+			collectObjectGarbage(store);
+		}
+	}
+
+	private void startMetrics() {
+		metrics.registerGauge("job_queue_depth", "Backup and restore jobs waiting for a worker.",
+				jobScheduler::getQueueDepth);
+		metrics.registerGauge("jobs_running", "Backup and restore jobs currently running.", jobScheduler::getRunningCount);
+		metrics.registerGauge("io_backoff_factor", "Share of the backup I/O budget allowed at the current tick time.",
+				backupIoBudget::getBackoffFactor);
+		metrics.registerGauge("catalog_backups", "Backups recorded in the catalog.", catalog::size);
+
+		int port = startupConfig.getMetricsPort();
+		if (port > 0) {
+			try {
+				metricsExporter.start(port);
+			} catch (IOException e) {
+				LOGGER.error("Could not start the metrics endpoint on port " + port, e);
+			}
+		}
+	}
+
+	private void forgetBackup(String backupID) throws IOException {
+		if (catalog.remove(backupID) != null) {
+			// Only backups that hold the player data can take over a player's version
+			playerIndex.removeBackup(backupID, catalog.getEntries().stream()
+					.filter(BackupCatalog.Entry::holdsPlayerData)
+					.toList());
+		}
+	}
+
+	private void migrateBackupHistory() throws IOException {
+		Path backupHistoryFile = Paths.get(BACKUP_HISTORY_FILE);
+		Map<String, String> backupHistoryAsStrings;
+
+		try (Reader reader = Files.newBufferedReader(backupHistoryFile)) {
+			Type type = new TypeToken<Map<String, String>>() {
+			}.getType();
+			backupHistoryAsStrings = new Gson().fromJson(reader, type);
+		} catch (JsonSyntaxException e) {
+			LOGGER.error("Invalid JSON format in backup history file, nothing to migrate.", e);
+			return;
+		}
+
+		if (backupHistoryAsStrings != null) {
+			for (Map.Entry<String, String> entry : backupHistoryAsStrings.entrySet()) {
+				Path backupPath = Paths.get(entry.getValue());
+				if (!Files.isDirectory(backupPath)) {
+					LOGGER.warn("Backup directory no longer exists: " + backupPath);
+					continue;
+				}
+
+				String backupType = backupPath.getParent().getFileName().toString().startsWith("manual") ? "manual"
+						: "auto";
+				long[] totals = new long[2];
+				try (Stream<Path> files = Files.walk(backupPath)) {
+					files.filter(Files::isRegularFile).forEach(file -> {
+						totals[0]++;
+						totals[1] += file.toFile().length();
+					});
+				}
+
+				catalog.add(new BackupCatalog.Entry(entry.getKey(), backupType,
+						Files.getLastModifiedTime(backupPath).toMillis(), backupPath, totals[1], totals[0], null,
+						BackupFormat.of(backupPath)));
+			}
+		}
+
+		Files.move(backupHistoryFile, backupHistoryFile.resolveSibling(BACKUP_HISTORY_FILE + ".migrated"),
+				StandardCopyOption.REPLACE_EXISTING);
+		LOGGER.info("Migrated " + catalog.size() + " backups from " + BACKUP_HISTORY_FILE + " to the backup catalog.");
 	}
 
-	private void saveBackupHistory() {
-		Gson gson = new Gson();
-		Map<String, String> backupHistoryAsStrings = new HashMap<>();
+	// The newest manifests of every unit and of the whole world merged, newer entries replacing older ones, so
+	// a backup finds the hash of any file that is unchanged since it was last backed up, whichever backup that was
+	private BackupManifest findLatestManifest() {
+		if (!latestManifestsLoaded) {
+			loadLatestManifests();
+		}
+
+		List<BackupManifest> manifests = new ArrayList<>(latestManifests.values());
+		if (manifests.size() <= 1) {
+			return manifests.isEmpty() ? null : manifests.get(0);
+		}
+		manifests.sort(Comparator.comparingLong(BackupManifest::getCreatedAt));
 
-		for (Map.Entry<String, Path> entry : backupHistory.entrySet()) {
-			backupHistoryAsStrings.put(entry.getKey(), entry.getValue().toString());
+		Map<String, BackupManifest.Entry> entries = new HashMap<>();
+		for (BackupManifest manifest : manifests) {
+			for (BackupManifest.Entry entry : manifest.getEntries()) {
+				entries.put(entry.getPath(), entry);
+			}
 		}
+		BackupManifest newest = manifests.get(manifests.size() - 1);
+		BackupManifest merged = new BackupManifest(newest.getId(), newest.getType(), newest.getParent(),
+				newest.getCreatedAt());
+		entries.values().forEach(merged::add);
+		return merged;
+	}
 
-		try (FileWriter writer = new FileWriter(BACKUP_HISTORY_FILE)) {
-			gson.toJson(backupHistoryAsStrings, writer);
+	private synchronized void loadLatestManifests() {
+		if (latestManifestsLoaded) {
+			return;
+		}
+		List<BackupCatalog.Entry> entries = catalog.getEntries();
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			BackupCatalog.Entry entry = entries.get(i);
+			String unit = entry.getUnit() == null ? "" : entry.getUnit();
+			if (entry.getFormat() != BackupFormat.INCREMENTAL || latestManifests.containsKey(unit)) {
+				continue;
+			}
+			try {
+				latestManifests.putIfAbsent(unit, BackupManifest.read(entry.getPath()));
+			} catch (IOException | JsonParseException e) {
+				LOGGER.warn("Could not read the manifest of backup " + entry.getId() + ", its files are hashed again.",
+						e);
+			}
+		}
+		latestManifestsLoaded = true;
+	}
+
+	private void collectObjectGarbage(ObjectStore store) throws IOException {
+		List<BackupManifest> manifests = new ArrayList<>();
+		for (BackupCatalog.Entry entry : catalog.getEntries()) {
+			if (entry.getFormat() == BackupFormat.INCREMENTAL) {
+				manifests.add(BackupManifest.read(entry.getPath()));
+			}
+		}
+
+		int deleted = new IncrementalBackupEngine(store, copyEngine).collectGarbage(manifests);
+		if (deleted > 0) {
+			LOGGER.info("Removed " + deleted + " unreferenced backup objects.");
+		}
+	}
+
+	private ObjectStore objectStore(MinecraftServer server) {
+		return new ObjectStore(server.getRunDirectory().toAbsolutePath().resolve(backupsRoot).resolve(OBJECTS_DIR),
+				backupIoBudget);
+	}
+
+	private IncrementalBackupEngine incrementalEngine(MinecraftServer server) {
+		return new IncrementalBackupEngine(objectStore(server), copyEngine, config.isChunkedRegions());
+	}
+
+	// Section: Replication
+	// Completed backups are copied off the host on their own low-priority thread, so a slow or unreachable
+	// remote never holds up backups. Requests made while a run is queued are folded into it, and a run picks up
+	// every backup the remote is still missing, including ones an earlier failed run left behind.
+	private void startReplication() {
+		BackupConfig.Replication replication = startupConfig.getReplication();
+		if (replication.getTarget() == null || replication.getTarget().isEmpty()) {
+			return;
+		}
+		try {
+			ReplicationTarget target = ReplicationTarget.create(replication.getTarget(), replication.getEndpoint(),
+					replication.getRegion(), replication.getWorkers());
+			ExecutorService uploadWorkers = Executors.newFixedThreadPool(replication.getWorkers(), runnable -> {
+				Thread thread = new Thread(runnable, "ServerBackup-Replication-Worker");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			});
+			replicator = new Replicator(backupsRoot, target, replicationIoBudget, uploadWorkers);
+			LOGGER.info("Replicating backups to " + target.describe());
+		} catch (IOException | IllegalArgumentException e) {
+			LOGGER.error("Could not set up backup replication to " + replication.getTarget(), e);
+		}
+	}
+
+	private void scheduleReplication(MinecraftServer server) {
+		if (replicator != null && replicationScheduled.compareAndSet(false, true)) {
+			replicationExecutor.execute(() -> {
+				replicationScheduled.set(false);
+				replicateBackups(server);
+			});
+		}
+	}
+
+	private void replicateBackups(MinecraftServer server) {
+		try {
+			Replicator.Result result = replicator.replicate(catalog.getEntries(), objectStore(server));
+			metrics.observePhase("replicate", result.nanos());
+			metrics.addReplicated(result.files(), result.bytes());
+			metrics.setReplicationFailing(false);
+			if (result.backups() > 0) {
+				LOGGER.info("Replicated " + result + " to " + replicator.getTarget().describe());
+			}
 		} catch (IOException e) {
-			LOGGER.error("Failed to save backup history", e);
+			metrics.setReplicationFailing(true);
+			LOGGER.error("Replication to " + replicator.getTarget().describe()
+					+ " failed, it is retried after the next backup", e);
 		}
+		metricsExporter.writeFile();
 	}
 
-	private void loadBackupHistory() {
-		File backupHistoryFile = new File(BACKUP_HISTORY_FILE);
+	// Section: Retention
+	// Pruning runs on its own low-priority thread so deleting old backups never delays a new one. Requests made
+	// while a prune is already queued are folded into it.
+	private void schedulePrune(MinecraftServer server) {
+		if (pruneScheduled.compareAndSet(false, true)) {
+			pruneExecutor.execute(() -> {
+				pruneScheduled.set(false);
+				try {
+					pruneBackups(server);
+				} catch (IOException e) {
+					LOGGER.error("Error pruning old backups", e);
+				}
+			});
+		}
+	}
+
+	private void pruneBackups(MinecraftServer server) throws IOException {
+		long start = System.nanoTime();
+		long now = System.currentTimeMillis();
+		boolean incrementalRemoved = false;
+		int pruned = 0;
+
+		// Each unit's backups are thinned out on their own, so a busy unit never pushes out a quiet one's backups
+		Map<String, List<BackupCatalog.Entry>> groups = new LinkedHashMap<>();
+		for (BackupCatalog.Entry entry : catalog.getEntries()) {
+			groups.computeIfAbsent(entry.getType() + (entry.getUnit() == null ? "" : "/" + entry.getUnit()),
+					group -> new ArrayList<>()).add(entry);
+		}
 
-		if (backupHistoryFile.exists() && backupHistoryFile.lastModified() == lastBackupHistoryModified) {
+		for (List<BackupCatalog.Entry> backups : groups.values()) {
+			RetentionPolicy policy = retentionOf(backups.get(0));
+			if (policy == null) {
+				continue;
+			}
+
+			for (BackupCatalog.Entry expired : policy.select(backups, now, ZoneId.systemDefault())) {
+				// Forget the backup first so it can no longer be listed or restored while it is being deleted
+				forgetBackup(expired.getId());
+				try {
+					if (Files.exists(expired.getPath())) {
+						deleteBackupFolder(expired.getPath(),
+								server.getRunDirectory().toAbsolutePath().resolve(backupsRoot).resolve(TRASH_DIR));
+					}
+					LOGGER.info("Deleted old backup: " + expired.getPath().getFileName());
+				} catch (IOException e) {
+					LOGGER.error("Failed to delete old backup folder: " + expired.getPath(), e);
+				}
+				incrementalRemoved |= expired.getFormat() == BackupFormat.INCREMENTAL;
+				pruned++;
+			}
+		}
+
+		if (incrementalRemoved) {
+			objectStoreLock.writeLock().lock();
+			try {
+				collectObjectGarbage(objectStore(server));
+			} finally {
+				objectStoreLock.writeLock().unlock();
+			}
+		}
+		if (catalog.needsCompaction()) {
+			catalog.compact();
+		}
+
+		if (pruned > 0) {
+			metrics.observePhase("prune", System.nanoTime() - start);
+			metrics.addPruned(pruned);
+			metricsExporter.writeFile();
+		}
+	}
+
+	// The backup is moved out of the backup folders before it is deleted, so a crash halfway through the delete
+	// never leaves a folder with a commit marker that recovery would catalog again. The trash is emptied on the
+	// next start.
+	private void deleteBackupFolder(Path backupDir, Path trashRoot) throws IOException {
+		Files.createDirectories(trashRoot);
+		Path trashed = trashRoot.resolve(backupDir.getFileName());
+		if (Files.exists(trashed)) {
+			BackupFiles.deleteDirectory(trashed);
+		}
+		try {
+			Files.move(backupDir, trashed, StandardCopyOption.ATOMIC_MOVE);
+			BackupFiles.syncDirectory(backupDir.getParent());
+		} catch (AtomicMoveNotSupportedException e) {
+			// On another volume; without its marker the folder is no longer taken for a complete backup
+			Files.deleteIfExists(backupDir.resolve(BackupCommit.FILE_NAME));
+			BackupFiles.syncDirectory(backupDir);
+			trashed = backupDir;
+		}
+		BackupFiles.deleteDirectory(trashed);
+	}
+
+	// Null if backups like this one are never pruned
+	private RetentionPolicy retentionOf(BackupCatalog.Entry backup) {
+		BackupUnit unit = backup.getUnit() == null ? null : BackupUnit.find(backupUnits, backup.getUnit());
+		if (unit != null && backup.getType().equals("auto")) {
+			return unit.getRetention();
+		}
+		// Also covers automatic backups of the whole world made before the world was split into units
+		BackupConfig.BackupType type = config.getType(backup.getType());
+		return type == null ? null : type.getRetention().toPolicy();
+	}
+
+	// Section: Integrity
+	private int verifyBackup(CommandContext<ServerCommandSource> context) {
+		String backupID = StringArgumentType.getString(context, "backupID");
+		BackupCatalog.Entry backup = catalog.get(backupID);
+		if (backup == null) {
+			context.getSource().sendError(
+					Text.literal("No backup found with ID " + backupID).setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
+			return 0;
+		}
+
+		MinecraftServer server = context.getSource().getServer();
+		context.getSource().sendMessage(
+				Text.literal("Verifying backup " + backupID + "...").setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
+
+		jobScheduler.submit(JobScheduler.Priority.MANUAL, () -> {
+			long start = System.nanoTime();
+			try {
+				BackupVerifier.Result result = new BackupVerifier(objectStore(server), copyEngine.getWorkers(),
+						backupIoBudget).verify(backup);
+				metrics.observePhase("verify", System.nanoTime() - start);
+				metrics.addIntegrityProblems("verify", result.problems().size());
+
+				if (result.ok()) {
+					context.getSource().sendMessage(Text.literal("Backup " + backupID + " is intact: " + result)
+							.setStyle(Style.EMPTY.withColor(Formatting.GREEN)));
+					return;
+				}
+				MutableText message = Text.literal("Backup " + backupID + " is damaged: " + result)
+						.setStyle(Style.EMPTY.withColor(Formatting.RED));
+				for (String problem : result.problems().subList(0,
+						Math.min(VERIFY_PROBLEMS_SHOWN, result.problems().size()))) {
+					message.append(Text.literal("\n  " + problem).setStyle(Style.EMPTY.withColor(Formatting.WHITE)));
+				}
+				context.getSource().sendError(message);
+			} catch (IOException | JsonParseException e) {
+				LOGGER.error("Error verifying backup " + backupID, e);
+				context.getSource().sendError(Text.literal("Error verifying backup: " + e.getMessage())
+						.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+			}
+		});
+		return 1;
+	}
+
+	// The scrub re-reads every backup at a low, fixed rate so bit-rot is found before a restore needs the data.
+	// Backups still running at shutdown are cancelled, since the snapshot they wait for would never be taken.
+	// Once the world is closed a safety snapshot is taken, then a prepared world restore is swapped in.
+	private void registerLifecycleEvents() {
+		ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+			scrubExecutor.scheduleWithFixedDelay(() -> scrubBackups(server), SCRUB_INITIAL_DELAY_HOURS,
+					SCRUB_INTERVAL_HOURS, TimeUnit.HOURS);
+			// Catches up on backups made while the remote was unreachable or the server was down
+			scheduleReplication(server);
+		});
+		ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+			// Restores still running are left to finish, but nothing they ask of the server thread is run anymore
+			snapshotCoordinator.stop();
+			scrubExecutor.shutdownNow();
+			configExecutor.shutdownNow();
+			jobScheduler.cancel(JobScheduler.Priority.MANUAL);
+			jobScheduler.cancel(JobScheduler.Priority.AUTO);
+		});
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+			takeShutdownSnapshot(server);
+			swapPendingRestore(server);
+		});
+	}
+
+	private void scrubBackups(MinecraftServer server) {
+		long start = System.nanoTime();
+		int problems = 0;
+		LOGGER.info("Starting backup scrub...");
+
+		try {
+			ObjectStore store = objectStore(server);
+			BackupVerifier verifier = new BackupVerifier(store, copyEngine.getWorkers(), scrubIoBudget);
+
+			Map<String, String> pathsByHash = new HashMap<>();
+			for (BackupCatalog.Entry entry : catalog.getEntries()) {
+				if (entry.getFormat() == BackupFormat.INCREMENTAL && BackupManifest.exists(entry.getPath())) {
+					for (BackupManifest.Entry file : BackupManifest.read(entry.getPath()).getEntries()) {
+						if (!pathsByHash.containsKey(file.getHash())) {
+							labelObjects(file, store, pathsByHash);
+						}
+					}
+				}
+			}
+
+			List<String> corruptHashes = new ArrayList<>();
+			BackupVerifier.Result objects = verifier.scrubObjects(pathsByHash, corruptHashes);
+			for (String problem : objects.problems()) {
+				LOGGER.error("Scrub: " + problem);
+			}
+			problems += objects.problems().size();
+			quarantineObjects(store, corruptHashes);
+
+			for (BackupCatalog.Entry entry : catalog.getEntries()) {
+				// Skip backups pruned since the scrub started
+				if (entry.getFormat() == BackupFormat.INCREMENTAL || catalog.get(entry.getId()) == null) {
+					continue;
+				}
+				try {
+					problems += verifier.verify(entry).problems().size();
+				} catch (IOException e) {
+					LOGGER.error("Scrub could not read backup " + entry.getId(), e);
+					problems++;
+				}
+			}
+
+			LOGGER.info("Backup scrub finished: " + objects + " in the object store, " + problems + " problems in total.");
+		} catch (IOException | JsonParseException e) {
+			LOGGER.error("Error during backup scrub", e);
+		} finally {
+			metrics.observePhase("scrub", System.nanoTime() - start);
+			metrics.addIntegrityProblems("scrub", problems);
+			metricsExporter.writeFile();
+		}
+	}
+
+	// Damaged objects are moved aside so the next backup stores the file again if it is unchanged. Backups
+	// that already reference them are reported, as they can no longer be fully restored.
+	private void quarantineObjects(ObjectStore store, List<String> corruptHashes) throws IOException {
+		if (corruptHashes.isEmpty()) {
 			return;
 		}
 
-		Gson gson = new Gson();
+		objectStoreLock.writeLock().lock();
+		try {
+			for (String hash : corruptHashes) {
+				try {
+					LOGGER.error("Object " + hash + " is damaged and was moved to " + store.quarantine(hash));
+				} catch (NoSuchFileException e) {
+					// Collected since the scrub read it
+				}
+			}
+		} finally {
+			objectStoreLock.writeLock().unlock();
+		}
 
-		if (!backupHistoryFile.exists()) {
-			try {
-				if (backupHistoryFile.createNewFile()) {
-					LOGGER.info("Backup history file created.");
-				} else {
-					LOGGER.error("Failed to create backup history file.");
+		Set<String> corrupt = new HashSet<>(corruptHashes);
+		Map<String, String> labels = new HashMap<>();
+		for (BackupCatalog.Entry entry : catalog.getEntries()) {
+			if (entry.getFormat() != BackupFormat.INCREMENTAL || !BackupManifest.exists(entry.getPath())) {
+				continue;
+			}
+			List<String> damaged = new ArrayList<>();
+			for (BackupManifest.Entry file : BackupManifest.read(entry.getPath()).getEntries()) {
+				labels.clear();
+				labelObjects(file, store, labels);
+				if (file.isChunked() && !labels.containsKey(file.getHash())) {
+					// The index itself was quarantined
+					damaged.add(file.getPath());
+					continue;
 				}
-			} catch (IOException e) {
-				LOGGER.error("Error creating backup history file.", e);
-			}
-		}
-
-		try (FileReader reader = new FileReader(backupHistoryFile)) {
-			if (reader.ready()) {
-				Type type = new TypeToken<Map<String, String>>() {
-				}.getType();
-				Map<String, String> backupHistoryAsStrings = gson.fromJson(reader, type);
-				backupHistory.clear();
-				for (Map.Entry<String, String> entry : backupHistoryAsStrings.entrySet()) {
-					Path backupPath = Paths.get(entry.getValue());
-					if (Files.exists(backupPath) && Files.isDirectory(backupPath)) {
-						backupHistory.put(entry.getKey(), backupPath);
-					} else {
-						LOGGER.warn("Backup directory no longer exists: " + backupPath);
+				for (Map.Entry<String, String> object : labels.entrySet()) {
+					if (corrupt.contains(object.getKey())) {
+						damaged.add(object.getValue());
 					}
 				}
-			} else {
-				LOGGER.info("Backup history file is empty. Initializing with an empty history.");
-				backupHistory.clear();
 			}
-		} catch (JsonSyntaxException e) {
-			LOGGER.error("Invalid JSON format in backup history file. Reinitializing with an empty history.", e);
-			backupHistory.clear();
-			resetBackupHistoryFile();
-		} catch (IOException e) {
-			LOGGER.error("Error reading the backup history file.", e);
-			backupHistory.clear();
+			if (!damaged.isEmpty()) {
+				LOGGER.error("Backup " + entry.getId() + " holds damaged copies of: " + String.join(", ", damaged));
+			}
 		}
-
-		lastBackupHistoryModified = backupHistoryFile.lastModified();
 	}
 
-	private void resetBackupHistoryFile() {
-		Gson gson = new Gson();
-		try (FileWriter writer = new FileWriter(BACKUP_HISTORY_FILE)) {
-			Map<String, String> emptyHistory = new HashMap<>();
-			gson.toJson(emptyHistory, writer);
-			LOGGER.info("Backup history file has been reset with an empty history.");
+	// Names what each object of a manifest entry holds. An index that cannot be read adds nothing.
+	private void labelObjects(BackupManifest.Entry file, ObjectStore store, Map<String, String> labels) {
+		try {
+			labels.putAll(RegionIndex.objectsOf(file, store));
 		} catch (IOException e) {
-			LOGGER.error("Failed to reset the backup history file.", e);
-		}
-	}
-
-	private void limitBackups(Path backupsDir, int maxBackups) throws IOException {
-		List<Path> backups = Files.list(backupsDir)
-				.filter(Files::isDirectory)
-				.sorted(Comparator.comparing(path -> {
-					try {
-						return Files.getLastModifiedTime(path);
-					} catch (IOException e) {
-						LOGGER.error("Failed to get last modified time for: " + path, e);
-						return FileTime.fromMillis(0);
-					}
-				}))
-				.toList();
-
-		int excessBackups = backups.size() - maxBackups;
-		if (excessBackups > 0) {
-			for (int i = 0; i < excessBackups; i++) {
-				Path oldestBackup = backups.get(i);
-				deleteDirectory(oldestBackup);
-				LOGGER.info("Deleted old backup: " + oldestBackup.getFileName());
+			if (!file.isChunked()) {
+				labels.put(file.getHash(), file.getPath());
 			}
 		}
 	}
 
-	private final ExecutorService backupExecutor = Executors.newFixedThreadPool(2);
+	private final JobScheduler jobScheduler = new JobScheduler(startupConfig.getJobWorkers());
 
 	private int runBackupCommand(CommandContext<ServerCommandSource> context) {
 		MinecraftServer server = context.getSource().getServer();
-		context.getSource()
-				.sendMessage(Text.literal("Starting manual backup...").setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
-
-		server.execute(() -> {
-			try {
-				LOGGER.info("Executing save-all command...");
-				String command = "save-all";
-				ParseResults<ServerCommandSource> parseResults = server.getCommandManager().getDispatcher().parse(command,
-						server.getCommandSource());
-				server.getCommandManager().getDispatcher().execute(parseResults);
-				LOGGER.info("World and player data saved successfully.");
-			} catch (Exception e) {
-				LOGGER.error("Failed to execute save-all command", e);
-			}
-		});
+		if (jobScheduler.isWaiting(MANUAL_BACKUP_JOB)) {
+			context.getSource().sendMessage(Text.literal("A manual backup is already queued, it will include your changes.")
+					.setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
+			return 1;
+		}
+		context.getSource().sendMessage(Text.literal(jobScheduler.isWorldBusy(worldKey(server))
+				? "Manual backup queued, it will start when the running job finishes."
+				: "Starting manual backup...").setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
 
-		backupExecutor.submit(() -> {
+		jobScheduler.submit(JobScheduler.Priority.MANUAL, worldKey(server), MANUAL_BACKUP_JOB, () -> {
 			try {
-				backupWorld(server, "manual");
+				backupWorld(server, "manual", takeSnapshot(server, "manual"));
 				context.getSource().sendMessage(
 						Text.literal("Manual backup completed successfully.")
 								.setStyle(Style.EMPTY.withColor(Formatting.GREEN)));
 			} catch (Exception e) {
+				if (e instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+					context.getSource().sendError(
+							Text.literal("Manual backup cancelled.").setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
+					return;
+				}
 				LOGGER.error("Error during backup process", e);
 				context.getSource().sendError(
 						Text.literal("Error during backup process: " + e.getMessage())
@@ -323,133 +1198,488 @@ public class ServerBackup implements ModInitializer {
 		return 1;
 	}
 
-	private int setBackupDelay(CommandContext<ServerCommandSource> context) {
-		int delay = IntegerArgumentType.getInteger(context, "time");
-		this.backupDelayMinutes = delay;
-		context.getSource().sendMessage(Text.literal("Automatic backup delay set to " + delay + " minutes.")
+	private int cancelBackups(CommandContext<ServerCommandSource> context) {
+		int cancelled = jobScheduler.cancel(BACKUP_JOBS);
+		context.getSource().sendMessage(Text.literal(cancelled == 0 ? "No backups are queued or running."
+				: "Cancelled " + cancelled + " backups. Partly written backups are removed.")
 				.setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
-		return 1;
+		return cancelled;
 	}
 
-	private int listBackups(CommandContext<ServerCommandSource> context) {
-		File manualBackupsFolder = new File("server_backups/manual_backups");
-		File autoBackupsFolder = new File("server_backups/auto_backups");
+	// Flushes the world on the server thread while the job waits, so the snapshot is only taken once the job
+	// holds the world
+	private WorldSnapshot takeSnapshot(MinecraftServer server, String backupType)
+			throws IOException, InterruptedException {
+		return takeSnapshot(server, backupType, null);
+	}
 
-		Map<String, Path> backupHistory = new HashMap<>();
+	// Only the unit's part of the world is walked when a unit is given
+	private WorldSnapshot takeSnapshot(MinecraftServer server, String backupType, BackupUnit unit)
+			throws IOException, InterruptedException {
+		BackupFilter filter = config.getType(backupType).getFilter();
+		if (unit != null) {
+			filter = unit.filter(filter, backupUnits);
+		}
+		return snapshotCoordinator.take(server, filter);
+	}
 
-		if (manualBackupsFolder.exists() && manualBackupsFolder.isDirectory()) {
-			for (File backupDir : manualBackupsFolder.listFiles(File::isDirectory)) {
-				backupHistory.put(MANUAL_PREFIX + backupDir.getName(), backupDir.toPath());
-			}
+	private String worldKey(MinecraftServer server) {
+		return server.getSavePath(WorldSavePath.ROOT).toAbsolutePath().normalize().toString();
+	}
+
+	// Sets the delay of one unit, or of every unit when none is named
+	private int setBackupDelay(CommandContext<ServerCommandSource> context, String unitName) {
+		int delay = IntegerArgumentType.getInteger(context, "time");
+		BackupUnit named = unitName == null ? null : BackupUnit.find(backupUnits, unitName);
+		if (unitName != null && named == null) {
+			context.getSource().sendError(Text.literal("No backup unit named " + unitName)
+					.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+			return 0;
 		}
 
-		if (autoBackupsFolder.exists() && autoBackupsFolder.isDirectory()) {
-			for (File backupDir : autoBackupsFolder.listFiles(File::isDirectory)) {
-				backupHistory.put(AUTO_PREFIX + backupDir.getName(), backupDir.toPath());
-			}
+		BackupConfig changed = config.withIntervalMinutes(named == null ? null : named.getName(), delay);
+		if (!updateConfig(context.getSource(), changed)) {
+			return 0;
+		}
+		context.getSource().sendMessage(Text.literal("Automatic backup delay"
+				+ (named == null ? "" : " of " + named.getName()) + " set to " + delay + " minutes.")
+				.setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
+		return 1;
+	}
+
+	private int setIoBudget(CommandContext<ServerCommandSource> context, int readsPerSecond) {
+		int megabytesPerSecond = IntegerArgumentType.getInteger(context, "megabytesPerSecond");
+		if (!updateConfig(context.getSource(), config.withBackupIo(megabytesPerSecond, readsPerSecond))) {
+			return 0;
 		}
 
-		if (backupHistory.isEmpty()) {
+		String message = "Backup disk reads limited to "
+				+ (megabytesPerSecond == 0 ? "unlimited MB/s" : megabytesPerSecond + " MB/s") + " and "
+				+ (readsPerSecond == 0 ? "unlimited reads/s." : readsPerSecond + " reads/s.");
+		context.getSource().sendMessage(Text.literal(message).setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
+		return 1;
+	}
+
+	// Lists one page of backups, oldest first within the page. Page 0 stands for the last page, which holds the
+	// newest backups.
+	private int listBackups(CommandContext<ServerCommandSource> context, int page) {
+		int total = catalog.size();
+
+		if (total == 0) {
 			context.getSource().sendMessage(Text.literal("No backups found.")
 					.setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
 			return 1;
 		}
 
-		List<Map.Entry<String, Path>> sortedBackups = new ArrayList<>(backupHistory.entrySet());
-		sortedBackups.sort(Comparator.comparing(entry -> {
-			try {
-				return Files.getLastModifiedTime(entry.getValue());
-			} catch (IOException e) {
-				LOGGER.error("Failed to get last modified time for: " + entry.getValue(), e);
-				return FileTime.fromMillis(0);
-			}
-		}));
+		int pages = (total + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE;
+		if (page > pages) {
+			context.getSource().sendMessage(Text.literal("There are only " + pages + " pages of backups.")
+					.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+			return 0;
+		}
+		if (page == 0) {
+			page = pages;
+		}
+		List<BackupCatalog.Entry> pageBackups = catalog.getEntries((page - 1) * LIST_PAGE_SIZE, LIST_PAGE_SIZE);
 
-		Text listBuilder = Text.literal("T | ID       | Date           | Time\n")
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd");
+		SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+
+		// Appended to in place; copying the text for every entry made long lists quadratic
+		MutableText listBuilder = Text.literal("T | ID       | Date           | Time\n")
 				.setStyle(Style.EMPTY.withColor(Formatting.GOLD))
 				.append(Text.literal("-------------------------------\n")
 						.setStyle(Style.EMPTY.withColor(Formatting.GRAY)));
 
-		for (Map.Entry<String, Path> entry : sortedBackups) {
-			String backupType = entry.getKey().startsWith("manual") ? "M" : "A";
-			String backupName = entry.getKey().substring(backupType.equals("M") ? 7 : 5);
-
-			String[] parts = backupName.split("_");
-			if (parts.length < 3) {
-				continue;
-			}
-
-			String backupDate = parts[0].replace("-", "/");
-			String backupTime = parts[1].replace("-", ":");
-			String backupID = parts[2];
+		for (BackupCatalog.Entry entry : pageBackups) {
+			String backupType = switch (entry.getType()) {
+				case "manual" -> "M";
+				case "safety" -> "S";
+				default -> "A";
+			};
+			Formatting typeColor = switch (backupType) {
+				case "M" -> Formatting.RED;
+				case "S" -> Formatting.AQUA;
+				default -> Formatting.GREEN;
+			};
+			Date backupTimestamp = new Date(entry.getTimestamp());
+			String backupDate = dateFormat.format(backupTimestamp);
+			String backupTime = timeFormat.format(backupTimestamp);
+			String backupID = entry.getId();
 
 			Text backupEntry = Text.literal("")
 					.append(Text.literal(backupType)
-							.setStyle(Style.EMPTY.withColor(backupType.equals("M") ? Formatting.RED : Formatting.GREEN)))
+							.setStyle(Style.EMPTY.withColor(typeColor)))
 					.append(Text.literal(" | ").setStyle(Style.EMPTY.withColor(Formatting.WHITE)))
 					.append(Text.literal(backupID)
 							.setStyle(Style.EMPTY.withColor(Formatting.YELLOW)))
-					.append(Text.literal(" | " + backupDate + " | " + backupTime + "\n")
+					.append(Text.literal(" | " + backupDate + " | " + backupTime
+							+ (entry.getUnit() == null ? "" : " | " + entry.getUnit()) + "\n")
 							.setStyle(Style.EMPTY.withColor(Formatting.WHITE)));
 
-			listBuilder = listBuilder.copy().append(backupEntry);
+			listBuilder.append(backupEntry);
 		}
 
+		listBuilder.append(Text.literal("Page " + page + " of " + pages + " (" + total + " backups)"
+				+ (pages > 1 ? ", /serverbackup list <page> for more" : ""))
+				.setStyle(Style.EMPTY.withColor(Formatting.GRAY)));
 		context.getSource().sendMessage(listBuilder);
 		return 1;
 	}
 
-	// Section: Restore Management
-	private int restoreWorld(CommandContext<ServerCommandSource> context) {
+	// Section: Browse
+	// Both commands read only the backups' manifests or archive indexes, never the backed up files, and
+	// compare files by the checksums recorded in them
+	private int showBackupInfo(CommandContext<ServerCommandSource> context) {
 		String backupID = StringArgumentType.getString(context, "backupID");
-		MinecraftServer server = context.getSource().getServer();
-
-		Path backupPath = backupHistory.get(backupID);
-		if (backupPath == null) {
+		BackupCatalog.Entry backup = catalog.get(backupID);
+		if (backup == null) {
 			context.getSource().sendError(
 					Text.literal("No backup found with ID " + backupID).setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
 			return 0;
 		}
 
-		context.getSource().sendMessage(
-				Text.literal("Restoring world from backup " + backupID).setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
+		// Compared with the last backup of the same kind, since a unit's backup holds only part of the world
+		BackupCatalog.Entry previousBackup = catalog.getPrevious(backup);
+		MinecraftServer server = context.getSource().getServer();
 
-		for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-			player.networkHandler.disconnect(Text.literal("The world is being restored. Please reconnect shortly.")
+		jobScheduler.submit(JobScheduler.Priority.MANUAL, () -> {
+			try {
+				BackupContents contents = BackupContents.read(backup.getPath());
+				SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd | HH:mm:ss");
+
+				MutableText info = Text.literal("Backup " + backupID + "\n")
+						.setStyle(Style.EMPTY.withColor(Formatting.GOLD))
+						.append(Text.literal(backup.getType() + (backup.getUnit() == null ? "" : " of " + backup.getUnit())
+								+ ", " + backup.getFormat().name().toLowerCase() + ", "
+								+ dateFormat.format(new Date(backup.getTimestamp())) + ", "
+								+ contents.getFiles().size() + " files, " + formatMegabytes(contents.totalSize()) + "\n")
+								.setStyle(Style.EMPTY.withColor(Formatting.WHITE)));
+				for (Map.Entry<String, BackupContents.Group> group : contents.summarize().entrySet()) {
+					info.append(Text.literal("  " + group.getKey() + ": " + group.getValue().files() + " files, "
+							+ formatMegabytes(group.getValue().bytes()) + "\n")
+							.setStyle(Style.EMPTY.withColor(Formatting.WHITE)));
+				}
+
+				if (previousBackup != null && Files.exists(previousBackup.getPath())) {
+					info.append(Text.literal("Changes since " + previousBackup.getId() + "\n")
+							.setStyle(Style.EMPTY.withColor(Formatting.GOLD)));
+					appendDiff(info, BackupContents.read(previousBackup.getPath()).diff(contents), server);
+				}
+				context.getSource().sendMessage(info);
+			} catch (IOException | JsonParseException e) {
+				LOGGER.error("Error reading backup " + backupID, e);
+				context.getSource().sendError(Text.literal("Error reading backup: " + e.getMessage())
+						.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+			}
+		});
+		return 1;
+	}
+
+	private int diffBackups(CommandContext<ServerCommandSource> context) {
+		String fromID = StringArgumentType.getString(context, "fromBackupID");
+		String toID = StringArgumentType.getString(context, "toBackupID");
+		BackupCatalog.Entry from = catalog.get(fromID);
+		BackupCatalog.Entry to = catalog.get(toID);
+		if (from == null || to == null) {
+			context.getSource().sendError(Text.literal("No backup found with ID " + (from == null ? fromID : toID))
 					.setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
+			return 0;
 		}
+		MinecraftServer server = context.getSource().getServer();
+
+		jobScheduler.submit(JobScheduler.Priority.MANUAL, () -> {
+			try {
+				Map<String, BackupContents.Delta> deltas = BackupContents.read(from.getPath())
+						.diff(BackupContents.read(to.getPath()));
+				SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd | HH:mm:ss");
+
+				MutableText diff = Text.literal("Changes from " + fromID + " ("
+						+ dateFormat.format(new Date(from.getTimestamp())) + ") to " + toID + " ("
+						+ dateFormat.format(new Date(to.getTimestamp())) + ")\n")
+						.setStyle(Style.EMPTY.withColor(Formatting.GOLD));
+				appendDiff(diff, deltas, server);
+				context.getSource().sendMessage(diff);
+			} catch (IOException | JsonParseException e) {
+				LOGGER.error("Error comparing backups " + fromID + " and " + toID, e);
+				context.getSource().sendError(Text.literal("Error comparing backups: " + e.getMessage())
+						.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+			}
+		});
+		return 1;
+	}
+
+	// One line per dimension, players and other files, followed by the names of the players whose data changed
+	private void appendDiff(MutableText text, Map<String, BackupContents.Delta> deltas, MinecraftServer server) {
+		boolean any = false;
+		for (Map.Entry<String, BackupContents.Delta> group : deltas.entrySet()) {
+			BackupContents.Delta delta = group.getValue();
+			if (delta.isEmpty()) {
+				continue;
+			}
+			any = true;
+			String unit = group.getKey().equals(BackupContents.PLAYERS) ? "players"
+					: group.getKey().equals(BackupContents.OTHER) ? "files" : "regions";
+			text.append(Text.literal("  " + group.getKey() + ": ").setStyle(Style.EMPTY.withColor(Formatting.YELLOW)))
+					.append(Text.literal(delta.getChanged().size() + " " + unit + " changed, "
+							+ delta.getAdded().size() + " added, " + delta.getRemoved().size() + " removed, "
+							+ String.format("%+.1f MB", (delta.getBytesAfter() - delta.getBytesBefore()) / 1_048_576.0)
+							+ "\n").setStyle(Style.EMPTY.withColor(Formatting.WHITE)));
+
+			if (group.getKey().equals(BackupContents.PLAYERS)) {
+				List<String> players = new ArrayList<>();
+				delta.getChanged().forEach(path -> players.add(playerNameOf(path, server)));
+				delta.getAdded().forEach(path -> players.add(playerNameOf(path, server) + " (added)"));
+				delta.getRemoved().forEach(path -> players.add(playerNameOf(path, server) + " (removed)"));
+				String shown = String.join(", ", players.subList(0, Math.min(DIFF_PLAYERS_SHOWN, players.size())));
+				if (players.size() > DIFF_PLAYERS_SHOWN) {
+					shown += " and " + (players.size() - DIFF_PLAYERS_SHOWN) + " more";
+				}
+				text.append(Text.literal("    " + shown + "\n").setStyle(Style.EMPTY.withColor(Formatting.GRAY)));
+			}
+		}
+		if (!any) {
+			text.append(Text.literal("  No differences\n").setStyle(Style.EMPTY.withColor(Formatting.WHITE)));
+		}
+	}
 
+	// playerdata/<uuid>.dat to the player's name where the server knows it, otherwise the UUID
+	private String playerNameOf(String path, MinecraftServer server) {
+		String uuid = path.substring("playerdata/".length(), path.length() - ".dat".length());
 		try {
-			restoreBackup(server, backupPath);
-			context.getSource()
-					.sendMessage(Text.literal("World restored successfully.").setStyle(Style.EMPTY.withColor(Formatting.GREEN)));
-		} catch (IOException e) {
-			LOGGER.error("Failed to restore world", e);
+			return server.getUserCache().getByUuid(UUID.fromString(uuid)).map(profile -> profile.getName())
+					.orElse(uuid);
+		} catch (IllegalArgumentException e) {
+			return uuid;
+		}
+	}
+
+	private String formatMegabytes(long bytes) {
+		return String.format("%.1f MB", bytes / 1_048_576.0);
+	}
+
+	private int showStats(CommandContext<ServerCommandSource> context) {
+		StringBuilder stats = new StringBuilder();
+
+		for (String type : List.of("manual", "auto", "safety")) {
+			BackupMetrics.Histogram durations = metrics.findHistogram("backup_duration_seconds",
+					"type=\"" + type + "\"");
+			stats.append(String.format("%s backups: %.0f ok, %.0f failed", type,
+					metrics.value("backups_total", "type=\"" + type + "\",result=\"success\""),
+					metrics.value("backups_total", "type=\"" + type + "\",result=\"failure\"")));
+			if (durations != null) {
+				stats.append(String.format(", p50 %s, p95 %s", formatSeconds(durations.quantile(0.5)),
+						formatSeconds(durations.quantile(0.95))));
+			}
+			stats.append(String.format(", %.1f MB read, %.1f MB written\n",
+					metrics.value("bytes_processed_total", "type=\"" + type + "\"") / 1_048_576.0,
+					metrics.value("bytes_written_total", "type=\"" + type + "\"") / 1_048_576.0));
+		}
+
+		for (String phase : List.of("flush", "walk", "copy", "compress", "prune", "verify", "scrub", "restore",
+				"replicate")) {
+			BackupMetrics.Histogram durations = metrics.findHistogram("phase_duration_seconds",
+					"phase=\"" + phase + "\"");
+			if (durations != null) {
+				stats.append(String.format("  %s: %d runs, p50 %s, p95 %s\n", phase, durations.getCount(),
+						formatSeconds(durations.quantile(0.5)), formatSeconds(durations.quantile(0.95))));
+			}
+		}
+
+		stats.append(String.format("Dedup %.1f%%, compression %.1f%%, %.0f backups pruned\n",
+				metrics.value("dedup_ratio", "") * 100, metrics.value("compression_ratio", "") * 100,
+				metrics.value("backups_pruned_total", "")));
+		if (replicator != null) {
+			stats.append(String.format("Replicated %.0f files (%.1f MB)%s\n", metrics.value("replicated_files_total", ""),
+					metrics.value("replicated_bytes_total", "") / 1_048_576.0,
+					metrics.value("replication_failing", "") > 0 ? ", last run failed" : ""));
+		}
+		stats.append(String.format("Jobs: %d running, %d queued, I/O at %.0f%% of budget\n",
+				jobScheduler.getRunningCount(), jobScheduler.getQueueDepth(), backupIoBudget.getBackoffFactor() * 100));
+
+		for (String jobs : List.of("idle", "running")) {
+			BackupMetrics.Histogram ticks = metrics.findHistogram("tick_duration_seconds", "jobs=\"" + jobs + "\"");
+			if (ticks != null && ticks.getCount() > 0) {
+				stats.append(String.format("Tick time with jobs %s: p50 %s, p95 %s, p99 %s\n", jobs,
+						formatSeconds(ticks.quantile(0.5)), formatSeconds(ticks.quantile(0.95)),
+						formatSeconds(ticks.quantile(0.99))));
+			}
+		}
+
+		context.getSource().sendMessage(Text.literal("Backup stats\n").setStyle(Style.EMPTY.withColor(Formatting.GOLD))
+				.append(Text.literal(stats.toString().stripTrailing()).setStyle(Style.EMPTY.withColor(Formatting.WHITE))));
+		return 1;
+	}
+
+	// Histogram quantiles are bucket upper bounds, so they read as "at most"
+	private String formatSeconds(double seconds) {
+		if (Double.isInfinite(seconds)) {
+			return "above the largest bucket";
+		}
+		if (seconds < 1) {
+			return "<= " + Math.round(seconds * 1000) + " ms";
+		}
+		return "<= " + (seconds == Math.rint(seconds) ? String.valueOf((long) seconds) : String.valueOf(seconds)) + " s";
+	}
+
+	// Section: Restore Management
+	private int restoreWorld(CommandContext<ServerCommandSource> context) {
+		String backupID = StringArgumentType.getString(context, "backupID");
+
+		BackupCatalog.Entry backup = catalog.get(backupID);
+		if (backup == null) {
+			context.getSource().sendError(
+					Text.literal("No backup found with ID " + backupID).setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
+			return 0;
+		}
+
+		return startWorldRestore(context.getSource(), backup);
+	}
+
+	// Restores the world from the newest safety snapshot, taken before the last restore or at the last shutdown
+	private int undoRestore(CommandContext<ServerCommandSource> context) {
+		BackupCatalog.Entry latest = null;
+		for (BackupCatalog.Entry entry : catalog.getEntries()) {
+			if (entry.getType().equals("safety") && (latest == null || entry.getTimestamp() > latest.getTimestamp())) {
+				latest = entry;
+			}
+		}
+		if (latest == null) {
 			context.getSource().sendError(
-					Text.literal("Failed to restore world: " + e.getMessage()).setStyle(Style.EMPTY.withColor(Formatting.RED)));
+					Text.literal("No safety snapshot to go back to.").setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
 			return 0;
 		}
 
-		server.execute(() -> {
-			server.getPlayerManager().broadcast(Text.literal("Server is restarting to load the restored world..."), false);
-			server.stop(false);
+		context.getSource().sendMessage(Text.literal("Going back to safety snapshot " + latest.getId() + " from "
+				+ new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(latest.getTimestamp())))
+				.setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
+		return startWorldRestore(context.getSource(), latest);
+	}
+
+	// The world as it is now is kept by the safety snapshot taken at shutdown, right before the swap. A backup
+	// of a unit restores only that unit's part of the world.
+	private int startWorldRestore(ServerCommandSource source, BackupCatalog.Entry backup) {
+		String backupID = backup.getId();
+		MinecraftServer server = source.getServer();
+		String restored = backup.getUnit() == null ? "world" : backup.getUnit();
+
+		source.sendMessage(Text.literal(jobScheduler.isWorldBusy(worldKey(server))
+				? "Preparing " + restored + " restore from backup " + backupID + " once the running job finishes."
+				: "Preparing " + restored + " restore from backup " + backupID
+						+ ", the server keeps running until it is ready.")
+				.setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
+
+		// Holds the world, so only one restore is prepared at a time and no backup competes with it for the disk
+		jobScheduler.submit(JobScheduler.Priority.RESTORE, worldKey(server), null, () -> {
+			long start = System.nanoTime();
+			try {
+				prepareRestore(server, backup);
+			} catch (Exception e) {
+				LOGGER.error("Failed to restore world", e);
+				source.sendError(Text.literal("Failed to restore world: " + e.getMessage())
+						.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+				return;
+			}
+			metrics.observePhase("restore", System.nanoTime() - start);
+			source.sendMessage(Text.literal(String.format(
+					"Restored %s prepared in %.1f s. The server will stop and swap it in; start it again to play.",
+					restored, (System.nanoTime() - start) / 1_000_000_000.0))
+					.setStyle(Style.EMPTY.withColor(Formatting.GREEN)));
+
+			server.execute(() -> {
+				server.getPlayerManager().broadcast(Text.literal("Server is restarting to load the restored world..."), false);
+				server.stop(false);
+			});
 		});
 
 		return 1;
 	}
 
-	private void restoreBackup(MinecraftServer server, Path backupPath) throws IOException {
-		Path worldDir = server.getSavePath(WorldSavePath.ROOT);
-		deleteDirectory(worldDir);
-		copyDirectory(backupPath, worldDir);
+	// Builds the restored world in a folder next to the live one while the server keeps running, then records
+	// it so the swap happens once the server has stopped. Files are copied with transferTo, which CoW
+	// filesystems turn into reflinks.
+	private void prepareRestore(MinecraftServer server, BackupCatalog.Entry backup) throws IOException {
+		Path worldDir = server.getSavePath(WorldSavePath.ROOT).toAbsolutePath().normalize();
+		Path stagingDir = RestoreSwap.stagingDirFor(worldDir);
+		Path swapFile = pendingRestoreFile(server);
+
+		RestoreSwap previous = RestoreSwap.load(swapFile);
+		if (previous != null) {
+			LOGGER.info("Replacing the pending restore of backup " + previous.getBackupId());
+			previous.discard(swapFile);
+		}
+		if (Files.exists(stagingDir)) {
+			BackupFiles.deleteDirectory(stagingDir);
+		}
+
+		try {
+			Path backupPath = backup.getPath();
+			switch (BackupFormat.of(backupPath)) {
+				case INCREMENTAL -> LOGGER.info("Restored "
+						+ incrementalEngine(server).restore(BackupManifest.read(backupPath), stagingDir));
+				case ARCHIVE -> {
+					try (BackupArchive archive = BackupArchive.open(backupPath.resolve(BackupArchive.FILE_NAME))) {
+						LOGGER.info("Restored " + archive.extractAll(stagingDir, copyEngine.getWorkers()));
+					}
+				}
+				default -> {
+					copyDirectory(backupPath, stagingDir);
+					Files.deleteIfExists(stagingDir.resolve(BackupCommit.FILE_NAME));
+				}
+			}
+			Files.createDirectories(stagingDir);
+			BackupFiles.syncTree(stagingDir);
+
+			RestoreSwap swap;
+			if (backup.getUnit() == null) {
+				swap = new RestoreSwap(worldDir, stagingDir, backup.getId(), System.currentTimeMillis());
+			} else if (backup.getUnit().equals(BackupUnit.ROOT)) {
+				// The other units' folders are not in the backup and are kept from the live world
+				swap = new RestoreSwap(worldDir, stagingDir, backup.getId(), System.currentTimeMillis(), null,
+						BackupUnit.directoriesBesideRoot(backupUnits));
+			} else {
+				String directory = BackupUnit.directoryOf(backup.getUnit());
+				Files.createDirectories(stagingDir.resolve(directory));
+				swap = new RestoreSwap(worldDir, stagingDir, backup.getId(), System.currentTimeMillis(), directory,
+						List.of());
+			}
+			swap.save(swapFile);
+		} catch (IOException | RuntimeException e) {
+			if (Files.exists(stagingDir)) {
+				BackupFiles.deleteDirectory(stagingDir);
+			}
+			throw e;
+		}
+	}
+
+	// Runs once the server has saved and closed the world
+	private void swapPendingRestore(MinecraftServer server) {
+		Path swapFile = pendingRestoreFile(server);
+		try {
+			RestoreSwap swap = RestoreSwap.load(swapFile);
+			if (swap == null) {
+				return;
+			}
+			Path rollbackDir = swap.apply(swapFile);
+			String swapped = swap.getDirectory() == null || swap.getDirectory().isEmpty() ? "the world"
+					: "the folder " + swap.getDirectory();
+			LOGGER.info("Swapped in " + swapped + " restored from backup " + swap.getBackupId()
+					+ (rollbackDir == null ? "." : ", the previous one was kept in " + rollbackDir));
+		} catch (IOException e) {
+			LOGGER.error("Could not swap in the restored world, it will be retried on the next start.", e);
+		}
+	}
+
+	private Path pendingRestoreFile(MinecraftServer server) {
+		return server.getRunDirectory().toAbsolutePath().resolve(backupsRoot).resolve(RestoreSwap.FILE_NAME);
 	}
 
 	private int restorePlayerInventory(CommandContext<ServerCommandSource> context) {
 		String backupID = StringArgumentType.getString(context, "backupID");
 		String playerName = StringArgumentType.getString(context, "player");
 
-		Path backupPath = backupHistory.get(backupID);
-		if (backupPath == null) {
+		BackupCatalog.Entry backup = catalog.get(backupID);
+		if (backup == null) {
 			context.getSource().sendError(
 					Text.literal("No backup found with ID " + backupID).setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
 			return 0;
@@ -466,27 +1696,68 @@ public class ServerBackup implements ModInitializer {
 			return 0;
 		}
 
-		Path playerFile = backupPath.resolve("playerdata").resolve(playerUUID.toString() + ".dat");
-		if (!Files.exists(playerFile)) {
-			context.getSource().sendError(Text.literal("No inventory data found for player " + playerName)
-					.setStyle(Style.EMPTY.withColor(Formatting.RED)));
-			return 0;
-		}
+		MinecraftServer server = context.getSource().getServer();
+		String playerFile = "playerdata/" + playerUUID + ".dat";
+		Path playerDataDir = server.getSavePath(WorldSavePath.PLAYERDATA);
+
+		jobScheduler.submit(JobScheduler.Priority.RESTORE, worldKey(server), null, () -> {
+			if (!takeSafetySnapshotBeforeRestore(context.getSource(), server, "restoring player " + playerName)) {
+				return;
+			}
+			Path stagedFile = null;
+			try {
+				byte[] data;
+				try (BackupReader reader = BackupReader.open(backup.getPath(), objectStore(server));
+						InputStream in = reader.open(playerFile)) {
+					if (in == null) {
+						context.getSource().sendError(Text.literal("No inventory data found for player " + playerName)
+								.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+						return;
+					}
+					data = in.readAllBytes();
+				}
+
+				NbtCompound playerNBT = NbtIo.readCompressed(new ByteArrayInputStream(data),
+						NbtSizeTracker.ofUnlimitedBytes());
 
+				Files.createDirectories(playerDataDir);
+				stagedFile = Files.createTempFile(playerDataDir, playerUUID + "-", ".dat.restore");
+				Files.write(stagedFile, data);
+
+				Path staged = stagedFile;
+				server.execute(() -> applyPlayerData(context.getSource(), server, playerUUID, playerNBT, staged,
+						playerDataDir.resolve(playerUUID + ".dat")));
+			} catch (Exception e) {
+				LOGGER.error("Failed to restore player inventory", e);
+				context.getSource().sendError(Text.literal("Failed to restore player inventory: " + e.getMessage())
+						.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+				if (stagedFile != null) {
+					try {
+						Files.deleteIfExists(stagedFile);
+					} catch (IOException ignored) {
+					}
+				}
+			}
+		});
+
+		return 1;
+	}
+
+	// Runs on the server thread, so the player cannot join or leave halfway through
+	private void applyPlayerData(ServerCommandSource source, MinecraftServer server, UUID playerUUID,
+			NbtCompound playerNBT, Path stagedFile, Path playerDataFile) {
 		try {
-			MinecraftServer server = context.getSource().getServer();
 			ServerPlayerEntity player = server.getPlayerManager().getPlayer(playerUUID);
 
 			if (player == null) {
-				context.getSource().sendError(Text.literal("Player must be online to restore inventory.")
-						.setStyle(Style.EMPTY.withColor(Formatting.RED)));
-				return 0;
+				Files.move(stagedFile, playerDataFile, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				source.sendMessage(Text.literal("Player is offline, their saved data was replaced and will load on their next join.")
+						.setStyle(Style.EMPTY.withColor(Formatting.GREEN)));
+				return;
 			}
 
-			NbtCompound playerNBT;
-			try (InputStream in = Files.newInputStream(playerFile)) {
-				playerNBT = NbtIo.readCompressed(in, NbtSizeTracker.ofUnlimitedBytes());
-			}
+			Files.deleteIfExists(stagedFile);
 
 			double x = player.getX();
 			double y = player.getY();
@@ -498,59 +1769,130 @@ public class ServerBackup implements ModInitializer {
 
 			syncPlayerData(player);
 
-			context.getSource().sendMessage(
+			source.sendMessage(
 					Text.literal("Player inventory restored successfully.").setStyle(Style.EMPTY.withColor(Formatting.GREEN)));
-			return 1;
-
 		} catch (IOException e) {
 			LOGGER.error("Failed to restore player inventory", e);
-			context.getSource().sendError(Text.literal("Failed to restore player inventory: " + e.getMessage())
+			source.sendError(Text.literal("Failed to restore player inventory: " + e.getMessage())
 					.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+		}
+	}
+
+	private int listPlayerHistory(CommandContext<ServerCommandSource> context) {
+		String playerName = StringArgumentType.getString(context, "player");
+		UUID playerUUID = getPlayerUUID(playerName, context.getSource());
+		if (playerUUID == null) {
+			context.getSource()
+					.sendError(Text.literal("Player not found: " + playerName).setStyle(Style.EMPTY.withColor(Formatting.RED)));
 			return 0;
 		}
+
+		List<PlayerHistoryIndex.Version> versions = playerIndex.getVersions(playerUUID.toString());
+		if (versions.isEmpty()) {
+			context.getSource().sendMessage(Text.literal("No backups hold data for player " + playerName)
+					.setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
+			return 1;
+		}
+
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd | HH:mm:ss");
+		MutableText history = Text.literal("Inventory versions for " + playerName + "\n")
+				.setStyle(Style.EMPTY.withColor(Formatting.GOLD));
+
+		for (int i = versions.size() - 1; i >= 0; i--) {
+			PlayerHistoryIndex.Version version = versions.get(i);
+			history.append(Text.literal(version.backupId()).setStyle(Style.EMPTY.withColor(Formatting.YELLOW)))
+					.append(Text.literal(" | " + dateFormat.format(new Date(version.timestamp())) + " | "
+							+ version.size() / 1024 + " KiB\n").setStyle(Style.EMPTY.withColor(Formatting.WHITE)));
+		}
+
+		context.getSource().sendMessage(history);
+		return 1;
 	}
 
-	// Section: Utility Methods
-	private void copyDirectory(Path source, Path target) throws IOException {
-		Files.walk(source)
-				.filter(path -> {
-					return !path.toString().contains("logs") &&
-							!path.toString().contains("tmp") &&
-							!path.getFileName().toString().equals("session.lock");
-				})
-				.filter(path -> {
-					int maxDepth = 3;
-					int maxLength = 200;
-					return source.relativize(path).getNameCount() <= maxDepth && path.toString().length() <= maxLength;
-				})
-				.forEach(path -> {
-					try {
-						Path targetPath = target.resolve(source.relativize(path));
-						if (Files.isDirectory(path)) {
-							Files.createDirectories(targetPath);
-						} else {
-							Files.copy(path, targetPath, StandardCopyOption.REPLACE_EXISTING);
-						}
-					} catch (IOException e) {
-						throw new RuntimeException("Failed to copy file: " + path, e);
-					}
-				});
+	private int restorePartial(CommandContext<ServerCommandSource> context, boolean wholeRegions)
+			throws CommandSyntaxException {
+		String backupID = StringArgumentType.getString(context, "backupID");
+		ServerWorld world = DimensionArgumentType.getDimensionArgument(context, "dimension");
+		ColumnPos from = ColumnPosArgumentType.getColumnPos(context, "from");
+		ColumnPos to = ColumnPosArgumentType.getColumnPos(context, "to");
+		MinecraftServer server = context.getSource().getServer();
+
+		BackupCatalog.Entry backup = catalog.get(backupID);
+		if (backup == null) {
+			context.getSource().sendError(
+					Text.literal("No backup found with ID " + backupID).setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
+			return 0;
+		}
+
+		int minChunkX = Math.min(from.x(), to.x()) >> 4;
+		int minChunkZ = Math.min(from.z(), to.z()) >> 4;
+		int maxChunkX = Math.max(from.x(), to.x()) >> 4;
+		int maxChunkZ = Math.max(from.z(), to.z()) >> 4;
+		if (wholeRegions) {
+			minChunkX = minChunkX >> 5 << 5;
+			minChunkZ = minChunkZ >> 5 << 5;
+			maxChunkX = (maxChunkX >> 5 << 5) + 31;
+			maxChunkZ = (maxChunkZ >> 5 << 5) + 31;
+		}
+
+		int chunkCount = (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+		context.getSource().sendMessage(Text.literal("Restoring " + chunkCount + " chunks in "
+				+ world.getRegistryKey().getValue() + " from backup " + backupID)
+				.setStyle(Style.EMPTY.withColor(Formatting.AQUA)));
+
+		int fromX = minChunkX;
+		int fromZ = minChunkZ;
+		int toX = maxChunkX;
+		int toZ = maxChunkZ;
+		jobScheduler.submit(JobScheduler.Priority.RESTORE, worldKey(server), null, () -> {
+			if (!takeSafetySnapshotBeforeRestore(context.getSource(), server, "restoring chunks from backup " + backupID)) {
+				return;
+			}
+			try (BackupReader reader = BackupReader.open(backup.getPath(), objectStore(server))) {
+				ChunkRestorer.Result result = new ChunkRestorer(server, snapshotCoordinator).restore(world, reader, fromX, fromZ, toX, toZ);
+				context.getSource().sendMessage(Text.literal("Restored " + result.restored() + " chunks, "
+						+ result.missing() + " were not in the backup.")
+						.setStyle(Style.EMPTY.withColor(Formatting.GREEN)));
+				if (!result.loaded().isEmpty()) {
+					context.getSource().sendError(Text.literal(result.loaded().size()
+							+ " chunks are loaded and were skipped. Move players away and run the command again.")
+							.setStyle(Style.EMPTY.withColor(Formatting.YELLOW)));
+				}
+			} catch (Exception e) {
+				LOGGER.error("Failed to restore chunks", e);
+				context.getSource().sendError(Text.literal("Failed to restore chunks: " + e.getMessage())
+						.setStyle(Style.EMPTY.withColor(Formatting.RED)));
+			}
+		});
+
+		return 1;
 	}
 
-	private void deleteDirectory(Path path) throws IOException {
-		List<Path> pathsToDelete = Files.walk(path)
-				.sorted(Comparator.reverseOrder())
-				.toList();
+	// Section: Utility Methods
+	private CopyEngine.CopyResult copySnapshot(WorldSnapshot snapshot, Path target) throws IOException {
+		AtomicInteger changedFiles = new AtomicInteger();
+		List<CopyEngine.CopyTask> tasks = new ArrayList<>(snapshot.files().size());
+
+		for (Path relativePath : snapshot.files().keySet()) {
+			tasks.add(new CopyEngine.CopyTask(snapshot.worldDir().resolve(relativePath), target.resolve(relativePath)));
+		}
+
+		CopyEngine.CopyResult result = copyEngine.copyAll(tasks, task -> {
+			WorldSnapshot.FileState state = snapshot.files().get(snapshot.worldDir().relativize(task.source()));
+			if (!state.equals(WorldSnapshot.FileState.of(task.source()))) {
+				changedFiles.incrementAndGet();
+			}
+		}, backupIoBudget);
+		LOGGER.info("Copied " + result);
 
-		for (Path p : pathsToDelete) {
-			Files.delete(p);
+		if (changedFiles.get() > 0) {
+			LOGGER.warn(changedFiles.get() + " files changed after the snapshot was taken and were copied in their newer state.");
 		}
+		return result;
 	}
 
-	private String generateRandomSaveId() {
-		Random rand = new Random();
-		int saveId = rand.nextInt(90000) + 10000;
-		return Integer.toString(saveId);
+	private void copyDirectory(Path source, Path target) throws IOException {
+		LOGGER.info("Copied " + copyEngine.copyTree(source, target, BackupFilter.DEFAULT));
 	}
 
 	private UUID getPlayerUUID(String playerName, ServerCommandSource source) {
@@ -578,17 +1920,61 @@ public class ServerBackup implements ModInitializer {
 	// Section: Tick Event
 	private void registerTickEvent() {
 		ServerTickEvents.START_SERVER_TICK.register(server -> {
-			ticksSinceLastBackup++;
-			if (ticksSinceLastBackup >= backupDelayMinutes * TICKS_PER_MINUTE) {
-				LOGGER.info("Backup interval has passed. Starting automated world backup...");
-				try {
-					backupWorld(server, "auto");
-					LOGGER.info("Automatic backup completed successfully.");
-				} catch (IOException e) {
+			tickMonitor.onTickStart();
+			CHANGE_TRACKER.onPlayerTick(server.getCurrentPlayerCount());
+			// A backup that falls due while the previous one of its unit is still running is queued behind it
+			for (BackupUnit unit : backupUnits) {
+				if (unit.getScheduler().tick()) {
+					startAutoBackup(server, unit);
+				}
+			}
+		});
+		ServerTickEvents.END_SERVER_TICK.register(server -> {
+			long tickNanos = tickMonitor.onTickEnd();
+			if (tickNanos > 0) {
+				metrics.observeTick(tickNanos, jobScheduler.getRunningCount() > 0);
+			}
+			if (server.getTicks() % BACKOFF_CHECK_TICKS == 0) {
+				double backoffMspt = config.getIo().getBackoffMspt();
+				backupIoBudget.adjustForMspt(tickMonitor.averageMspt(), backoffMspt);
+				scrubIoBudget.adjustForMspt(tickMonitor.averageMspt(), backoffMspt);
+			}
+		});
+	}
+
+	// Units hold separate parts of the world, so backups of different units run side by side
+	private void startAutoBackup(MinecraftServer server, BackupUnit unit) {
+		ChangeTracker.Activity activity = unit.getScheduler().getActivity();
+		String jobKey = AUTO_BACKUP_JOB + ":" + unit.getName();
+		if (jobScheduler.isWaiting(jobKey)) {
+			return;
+		}
+		LOGGER.info("Queueing automated backup of " + unit.getName() + " after " + activity.dirtyChunks()
+				+ " chunk saves and " + activity.playerTicks() / 20 + " player-seconds of activity...");
+
+		String worldPart = JobScheduler.partOf(worldKey(server), unit.getName());
+		Future<?> job = jobScheduler.submit(JobScheduler.Priority.AUTO, worldPart, jobKey, () -> {
+			LOGGER.info(String.format("Tick time before backup: avg %.2f mspt", tickMonitor.averageMspt()));
+			TickMonitor.Sample during = tickMonitor.startSample("Tick time during backup");
+			try {
+				WorldSnapshot snapshot = takeSnapshot(server, "auto", unit);
+				unit.getScheduler().backupStarted();
+				backupWorld(server, "auto", snapshot, unit);
+				LOGGER.info("Automatic backup of " + unit.getName() + " completed successfully.");
+			} catch (Exception e) {
+				if (e instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+					LOGGER.info("Automatic backup of " + unit.getName() + " cancelled.");
+				} else {
 					LOGGER.error("Automatic backup failed", e);
 				}
-				ticksSinceLastBackup = 0;
+			} finally {
+				during.stop();
+				LOGGER.info(during.toString());
+				tickMonitor.startSample("Tick time after backup", POST_BACKUP_SAMPLE_TICKS,
+						sample -> LOGGER.info(sample.toString()));
 			}
 		});
+		// The job's snapshot waits for the server thread, so this always comes before its backupStarted
+		unit.getScheduler().backupQueued(job);
 	}
 }
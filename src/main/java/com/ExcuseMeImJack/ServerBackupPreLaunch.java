@@ -0,0 +1,36 @@
+package com.ExcuseMeImJack;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.loader.api.entrypoint.PreLaunchEntrypoint;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Finishes a world restore whose swap did not run at shutdown, for example because the server was killed.
+// This runs before Minecraft opens the world folder and reads level.dat, which a hook on loadWorld would
+// already be too late for.
+public class ServerBackupPreLaunch implements PreLaunchEntrypoint {
+
+	@Override
+	public void onPreLaunch() {
+		BackupConfig config;
+		try {
+			config = BackupConfig.load(FabricLoader.getInstance().getConfigDir().resolve(BackupConfig.FILE_NAME));
+		} catch (IOException e) {
+			// Reported, and the server stopped, when the mod initializes
+			return;
+		}
+		Path file = FabricLoader.getInstance().getGameDir().resolve(config.getBackupRoot()).resolve(RestoreSwap.FILE_NAME);
+		try {
+			RestoreSwap swap = RestoreSwap.load(file);
+			if (swap == null) {
+				return;
+			}
+			Path rollbackDir = swap.apply(file);
+			ServerBackup.LOGGER.info("Swapped in the world restored from backup " + swap.getBackupId()
+					+ (rollbackDir == null ? "." : ", the previous world was kept in " + rollbackDir));
+		} catch (IOException e) {
+			ServerBackup.LOGGER.error("Could not finish the pending world restore, starting with the current world.", e);
+		}
+	}
+}
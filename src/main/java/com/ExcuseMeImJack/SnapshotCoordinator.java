@@ -0,0 +1,113 @@
+package com.ExcuseMeImJack;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.WorldSavePath;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+// Takes the snapshot a backup copies from. Only the flush runs on the server thread, with autosave held off;
+// the world folder is scanned afterwards on the calling thread, so the pause lasts as long as the flush
+// however large the world is. Files the server writes between the flush and the scan are picked up in their
+// newer state.
+//
+// Jobs hand all their work for the server thread through here. Once the server starts stopping, that work is
+// failed instead of waited for, since the server thread stops running it and the shutdown waits for the jobs.
+public class SnapshotCoordinator {
+
+	private final BackupMetrics metrics;
+	private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+	private volatile boolean stopping = false;
+
+	public SnapshotCoordinator(BackupMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private record Flushed(Path worldDir, long pauseNanos) {
+	}
+
+	// Must not run on the server thread, which it waits for
+	public WorldSnapshot take(MinecraftServer server, BackupFilter filter) throws IOException, InterruptedException {
+		Flushed flushed = onServerThread(server, () -> flush(server), "flush the world");
+		long capturedAt = System.currentTimeMillis();
+		long walkStart = System.nanoTime();
+
+		Map<Path, WorldSnapshot.FileState> files = WorldSnapshot.scan(flushed.worldDir(), filter);
+		metrics.observePhase("flush", flushed.pauseNanos());
+		metrics.observePhase("walk", System.nanoTime() - walkStart);
+		ServerBackup.LOGGER.info(String.format("Snapshot of %d files taken, saving paused for %.1f ms.", files.size(),
+				flushed.pauseNanos() / 1_000_000.0));
+		return new WorldSnapshot(flushed.worldDir(), files, capturedAt, flushed.pauseNanos());
+	}
+
+	// Runs the task on the server thread and waits for it. Must not run on the server thread.
+	public <T> T onServerThread(MinecraftServer server, Supplier<T> task, String what)
+			throws IOException, InterruptedException {
+		CompletableFuture<T> future = server.submit(() -> {
+			if (stopping) {
+				throw new UncheckedIOException(new IOException("The server is stopping"));
+			}
+			return task.get();
+		});
+		pending.add(future);
+		// Checked after registering, so stop cannot miss a request made while it runs
+		if (stopping) {
+			future.completeExceptionally(new IOException("The server is stopping"));
+		}
+
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : e.getCause();
+			throw cause instanceof IOException io ? io : new IOException("Failed to " + what, cause);
+		} catch (CancellationException e) {
+			throw new IOException("Cancelled before being able to " + what, e);
+		} finally {
+			pending.remove(future);
+		}
+	}
+
+	public void onServerThread(MinecraftServer server, Runnable task, String what)
+			throws IOException, InterruptedException {
+		onServerThread(server, () -> {
+			task.run();
+			return null;
+		}, what);
+	}
+
+	// Fails every request still waiting for the server thread and any made later
+	public void stop() {
+		stopping = true;
+		for (CompletableFuture<?> future : pending) {
+			future.completeExceptionally(new IOException("The server is stopping"));
+		}
+	}
+
+	private static Flushed flush(MinecraftServer server) {
+		long start = System.nanoTime();
+		Map<ServerWorld, Boolean> savingDisabled = new HashMap<>();
+		for (ServerWorld world : server.getWorlds()) {
+			savingDisabled.put(world, world.savingDisabled);
+			world.savingDisabled = true;
+		}
+
+		try {
+			server.getPlayerManager().saveAllPlayerData();
+			server.saveAll(true, true, true);
+		} finally {
+			savingDisabled.forEach((world, disabled) -> world.savingDisabled = disabled);
+		}
+		return new Flushed(server.getSavePath(WorldSavePath.ROOT).toAbsolutePath().normalize(),
+				System.nanoTime() - start);
+	}
+}
@@ -0,0 +1,112 @@
+package com.ExcuseMeImJack;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+public class TickMonitor {
+
+	private static final int WINDOW_SIZE = 100;
+
+	private final long[] window = new long[WINDOW_SIZE];
+	private final List<Sample> activeSamples = new CopyOnWriteArrayList<>();
+	private int windowIndex = 0;
+	private int windowCount = 0;
+	private long tickStart = 0;
+
+	// Called from the server thread only
+	public void onTickStart() {
+		tickStart = System.nanoTime();
+	}
+
+	// Returns the tick's duration in nanoseconds, or 0 if its start was not seen
+	public long onTickEnd() {
+		if (tickStart == 0) {
+			return 0;
+		}
+		long duration = System.nanoTime() - tickStart;
+
+		synchronized (window) {
+			window[windowIndex] = duration;
+			windowIndex = (windowIndex + 1) % WINDOW_SIZE;
+			windowCount = Math.min(windowCount + 1, WINDOW_SIZE);
+		}
+
+		for (Sample sample : activeSamples) {
+			sample.record(duration);
+		}
+		return duration;
+	}
+
+	public double averageMspt() {
+		synchronized (window) {
+			if (windowCount == 0) {
+				return 0;
+			}
+			long total = 0;
+			for (int i = 0; i < windowCount; i++) {
+				total += window[i];
+			}
+			return total / (double) windowCount / 1_000_000.0;
+		}
+	}
+
+	public Sample startSample(String label) {
+		return startSample(label, 0, null);
+	}
+
+	public Sample startSample(String label, int tickLimit, Consumer<Sample> onComplete) {
+		Sample sample = new Sample(label, tickLimit, onComplete);
+		activeSamples.add(sample);
+		return sample;
+	}
+
+	public class Sample {
+		private final String label;
+		private final int tickLimit;
+		private final Consumer<Sample> onComplete;
+		private long ticks = 0;
+		private long totalNanos = 0;
+		private long maxNanos = 0;
+
+		private Sample(String label, int tickLimit, Consumer<Sample> onComplete) {
+			this.label = label;
+			this.tickLimit = tickLimit;
+			this.onComplete = onComplete;
+		}
+
+		private synchronized void record(long nanos) {
+			ticks++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+			if (tickLimit > 0 && ticks >= tickLimit) {
+				stop();
+				if (onComplete != null) {
+					onComplete.accept(this);
+				}
+			}
+		}
+
+		public void stop() {
+			activeSamples.remove(this);
+		}
+
+		public synchronized long getTicks() {
+			return ticks;
+		}
+
+		public synchronized double getAverageMspt() {
+			return ticks == 0 ? 0 : totalNanos / (double) ticks / 1_000_000.0;
+		}
+
+		public synchronized double getMaxMspt() {
+			return maxNanos / 1_000_000.0;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return String.format("%s: %d ticks, avg %.2f mspt, max %.2f mspt", label, ticks, getAverageMspt(),
+					getMaxMspt());
+		}
+	}
+}
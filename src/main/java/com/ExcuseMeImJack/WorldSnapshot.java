@@ -0,0 +1,54 @@
+package com.ExcuseMeImJack;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public record WorldSnapshot(Path worldDir, Map<Path, WorldSnapshot.FileState> files, long capturedAt,
+		long pauseNanos) {
+
+	public record FileState(long size, long modified) {
+
+		public static FileState of(Path path) throws IOException {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return new FileState(attributes.size(), attributes.lastModifiedTime().toMillis());
+		}
+	}
+
+	public static Map<Path, FileState> scan(Path worldDir, BackupFilter filter) throws IOException {
+		Map<Path, FileState> files = new LinkedHashMap<>();
+
+		Files.walkFileTree(worldDir, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				if (!dir.equals(worldDir) && !filter.includesDirectory(worldDir.relativize(dir))) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				Path relativePath = worldDir.relativize(file);
+				if (attrs.isRegularFile() && filter.includesFile(relativePath)) {
+					files.put(relativePath, new FileState(attrs.size(), attrs.lastModifiedTime().toMillis()));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return files;
+	}
+
+	public long totalSize() {
+		long total = 0;
+		for (FileState state : files.values()) {
+			total += state.size();
+		}
+		return total;
+	}
+}
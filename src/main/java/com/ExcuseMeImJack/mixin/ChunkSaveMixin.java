@@ -0,0 +1,28 @@
+package com.ExcuseMeImJack.mixin;
+
+import com.ExcuseMeImJack.ServerBackup;
+import net.minecraft.server.world.ServerChunkLoadingManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.chunk.Chunk;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ServerChunkLoadingManager.class)
+public class ChunkSaveMixin {
+	@Shadow
+	@Final
+	ServerWorld world;
+
+	// save(Chunk) returns true when the chunk was dirty and has been written
+	@Inject(at = @At("RETURN"), method = "save(Lnet/minecraft/world/chunk/Chunk;)Z")
+	private void onChunkSaved(Chunk chunk, CallbackInfoReturnable<Boolean> info) {
+		if (info.getReturnValueZ()) {
+			ServerBackup.CHANGE_TRACKER.onChunkSaved(world.getRegistryKey().getValue().toString(),
+					chunk.getPos().toLong());
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupArchiveTest {
+
+	private static byte[] randomBytes(int length, long seed) {
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	private static BackupArchive.WriteResult write(Path archive, Path sourceRoot, List<Path> files) throws IOException {
+		ExecutorService workers = Executors.newFixedThreadPool(2);
+		try {
+			return BackupArchive.write(archive, sourceRoot, files, 6, workers, 2, IoBudget.UNLIMITED);
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	@Test
+	void filesReadBackAsTheyWereWritten(@TempDir Path dir) throws IOException {
+		Path world = dir.resolve("world");
+		Files.createDirectories(world.resolve("region"));
+		// Larger than a block, so the entry is split across two
+		byte[] region = randomBytes((1 << 20) + 12_345, 1);
+		Files.write(world.resolve("region/r.0.0.mca"), region);
+		Files.writeString(world.resolve("level.dat"), "level");
+		Files.write(world.resolve("empty.dat"), new byte[0]);
+		Path archive = dir.resolve(BackupArchive.FILE_NAME);
+
+		BackupArchive.WriteResult result = write(archive, world,
+				List.of(Paths.get("region", "r.0.0.mca"), Paths.get("level.dat"), Paths.get("empty.dat")));
+		assertEquals(3, result.files());
+		assertEquals(region.length + 5, result.bytes());
+
+		ExecutorService workers = Executors.newFixedThreadPool(2);
+		try (BackupArchive opened = BackupArchive.open(archive)) {
+			assertEquals(3, opened.getEntries().size());
+			assertEquals(2, opened.get("region/r.0.0.mca").blocks().size());
+			assertEquals(result.checksum(), opened.computeChecksum());
+			try (InputStream in = opened.openEntry("region/r.0.0.mca")) {
+				assertTrue(Arrays.equals(region, in.readAllBytes()));
+			}
+
+			Path target = dir.resolve("restored");
+			opened.extractAll(target, workers);
+			assertTrue(Arrays.equals(region, Files.readAllBytes(target.resolve("region/r.0.0.mca"))));
+			assertEquals("level", Files.readString(target.resolve("level.dat")));
+			assertEquals(0, Files.size(target.resolve("empty.dat")));
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	private static void overwriteInt(Path file, long position, int value) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(4).putInt(0, value), position);
+		}
+	}
+
+	private static BackupVerifier.Result verify(Path dir, Path backupDir) throws IOException {
+		BackupCatalog.Entry backup = new BackupCatalog.Entry("1", "manual", 1, backupDir, 0, 1, null,
+				BackupFormat.ARCHIVE);
+		ExecutorService workers = Executors.newFixedThreadPool(2);
+		try {
+			return new BackupVerifier(new ObjectStore(dir.resolve("objects")), workers, IoBudget.UNLIMITED)
+					.verify(backup);
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	@Test
+	void aBlockThatDoesNotMatchItsChecksumFailsToRead(@TempDir Path dir) throws IOException {
+		Path world = dir.resolve("world");
+		Files.createDirectories(world);
+		Files.write(world.resolve("level.dat"), randomBytes(4096, 2));
+		Path backupDir = Files.createDirectories(dir.resolve("backup"));
+		Path archive = backupDir.resolve(BackupArchive.FILE_NAME);
+		write(archive, world, List.of(Paths.get("level.dat")));
+		assertTrue(verify(dir, backupDir).ok());
+
+		// The block's CRC32C is the last field of the index, just before the trailer
+		long checksumOffset = Files.size(archive) - 12 - 4;
+		int checksum;
+		try (BackupArchive opened = BackupArchive.open(archive)) {
+			checksum = opened.get("level.dat").blocks().get(0).checksum();
+		}
+		overwriteInt(archive, checksumOffset, ~checksum);
+
+		try (BackupArchive opened = BackupArchive.open(archive); InputStream in = opened.openEntry("level.dat")) {
+			IOException e = assertThrows(IOException.class, in::readAllBytes);
+			assertTrue(e.getMessage().startsWith("Checksum mismatch"), e.getMessage());
+		}
+		BackupVerifier.Result result = verify(dir, backupDir);
+		assertFalse(result.ok());
+		assertTrue(result.problems().get(0).startsWith("level.dat: Checksum mismatch"), result.problems().toString());
+	}
+}
@@ -0,0 +1,125 @@
+package com.ExcuseMeImJack;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupCatalogTest {
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static BackupCatalog.Entry entry(String id, long timestamp, Path dir) {
+		return new BackupCatalog.Entry(id, "auto", timestamp, dir.resolve(id), 100, 1, "sha256:" + id,
+				BackupFormat.INCREMENTAL);
+	}
+
+	@Test
+	void addingADuplicateIdKeepsTheCatalogedBackup(@TempDir Path dir) throws IOException {
+		BackupCatalog catalog = new BackupCatalog(dir.resolve("catalog.jsonl"));
+		catalog.add(entry("12345", 1, dir));
+
+		assertThrows(IOException.class, () -> catalog.add(entry("12345", 2, dir)));
+		assertEquals(1, catalog.size());
+		assertEquals(1L, catalog.get("12345").getTimestamp());
+
+		BackupCatalog reloaded = new BackupCatalog(dir.resolve("catalog.jsonl"));
+		reloaded.load();
+		assertEquals(1, reloaded.size());
+		assertEquals(1L, reloaded.get("12345").getTimestamp());
+	}
+
+	private static BackupCatalog.Entry entry(String id, String type, long timestamp, String unit, Path dir) {
+		return new BackupCatalog.Entry(id, type, timestamp, dir.resolve(id), 100, 1, "sha256:" + id,
+				BackupFormat.INCREMENTAL, unit);
+	}
+
+	@Test
+	void previousBackupHasTheSameTypeAndUnit(@TempDir Path dir) throws IOException {
+		BackupCatalog catalog = new BackupCatalog(dir.resolve("catalog.jsonl"));
+		catalog.add(entry("10001", "auto", 1, "minecraft:the_nether", dir));
+		catalog.add(entry("10002", "auto", 2, null, dir));
+		catalog.add(entry("10003", "auto", 3, BackupUnit.ROOT, dir));
+		catalog.add(entry("10004", "manual", 4, "minecraft:the_nether", dir));
+		catalog.add(entry("10005", "auto", 5, "minecraft:the_nether", dir));
+		catalog.add(entry("10006", "auto", 6, null, dir));
+
+		assertEquals("10001", catalog.getPrevious(catalog.get("10005")).getId());
+		assertEquals("10002", catalog.getPrevious(catalog.get("10006")).getId());
+		assertNull(catalog.getPrevious(catalog.get("10001")));
+		assertNull(catalog.getPrevious(catalog.get("10003")));
+		assertNull(catalog.getPrevious(catalog.get("10004")));
+	}
+
+	@Test
+	void newIdsAreUniqueUntilCataloged(@TempDir Path dir) throws IOException {
+		BackupCatalog catalog = new BackupCatalog(dir.resolve("catalog.jsonl"));
+		Set<String> ids = new HashSet<>();
+		for (int i = 0; i < 5_000; i++) {
+			String id = catalog.newId();
+			assertEquals(5, id.length());
+			assertTrue(ids.add(id), "ID " + id + " was handed out twice");
+			if (i % 2 == 0) {
+				catalog.add(entry(id, i, dir));
+			}
+		}
+
+		// Handed out or cataloged, none of them comes up again
+		for (int i = 0; i < 1_000; i++) {
+			assertFalse(ids.contains(catalog.newId()));
+		}
+	}
+
+	@Test
+	void pagesOfALongListCopyOnlyThePage(@TempDir Path dir) throws IOException {
+		int backups = 200_000;
+		int pageSize = 20;
+		Path file = dir.resolve("catalog.jsonl");
+		Gson gson = new Gson();
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			// Written out of order; the catalog sorts by time when it loads
+			for (int i = backups - 1; i >= 0; i--) {
+				String id = Integer.toString(100_000 + i);
+				writer.write(gson.toJson(Map.of("op", "add", "id", id, "entry", entry(id, i, dir))));
+				writer.newLine();
+			}
+		}
+		BackupCatalog catalog = new BackupCatalog(file);
+		catalog.load();
+		assertEquals(backups, catalog.size());
+
+		long mostAllocated = 0;
+		int seen = 0;
+		for (int from = 0; from < backups; from += pageSize) {
+			long before = THREADS.getCurrentThreadAllocatedBytes();
+			List<BackupCatalog.Entry> page = catalog.getEntries(from, pageSize);
+			mostAllocated = Math.max(mostAllocated, THREADS.getCurrentThreadAllocatedBytes() - before);
+
+			assertEquals(Math.min(pageSize, backups - from), page.size());
+			for (BackupCatalog.Entry entry : page) {
+				assertEquals((long) seen++, entry.getTimestamp());
+			}
+		}
+		assertEquals(backups, seen);
+		assertTrue(catalog.getEntries(backups, pageSize).isEmpty());
+		// A copy of the whole list would take at least four bytes per backup
+		assertTrue(mostAllocated < backups, "A page of " + pageSize + " allocated " + mostAllocated + " bytes");
+	}
+}
@@ -0,0 +1,117 @@
+package com.ExcuseMeImJack;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupConfigTest {
+
+	// Writes the defaults with the given change made to their JSON
+	private static Path writeChanged(Path dir, Consumer<JsonObject> change) throws IOException {
+		Path file = dir.resolve(BackupConfig.FILE_NAME);
+		BackupConfig.defaults().save(file);
+		JsonObject json = JsonParser.parseString(Files.readString(file)).getAsJsonObject();
+		change.accept(json);
+		Files.writeString(file, json.toString());
+		return file;
+	}
+
+	@Test
+	void firstLoadWritesTheDefaults(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("config").resolve(BackupConfig.FILE_NAME);
+		BackupConfig written = BackupConfig.load(file);
+		assertTrue(Files.exists(file));
+		assertTrue(written.validate().isEmpty());
+
+		BackupConfig reloaded = BackupConfig.load(file);
+		assertEquals(written.getBackupRoot(), reloaded.getBackupRoot());
+		assertEquals(written.getUnits().keySet(), reloaded.getUnits().keySet());
+		assertEquals(BackupFormat.INCREMENTAL, reloaded.getType("auto").getFormat());
+		assertTrue(reloaded.changesNeedingRestart(written).isEmpty());
+	}
+
+	@Test
+	void everyInvalidSettingIsNamed(@TempDir Path dir) throws IOException {
+		Path file = writeChanged(dir, json -> {
+			json.addProperty("jobWorkers", 0);
+			json.addProperty("compressionLevel", 12);
+			json.getAsJsonObject("io").addProperty("backoffMspt", 0);
+			json.getAsJsonObject("types").getAsJsonObject("auto").getAsJsonObject("retention")
+					.addProperty("daily", -1);
+			json.getAsJsonObject("units").getAsJsonObject("minecraft:the_end").addProperty("intervalMinutes", 0);
+		});
+
+		IOException e = assertThrows(IOException.class, () -> BackupConfig.load(file));
+		for (String key : new String[] {"jobWorkers", "compressionLevel", "io.backoffMspt",
+				"types.auto.retention.daily", "units.minecraft:the_end.intervalMinutes"}) {
+			assertTrue(e.getMessage().contains(key + " must be"), "Not named: " + key + " in " + e.getMessage());
+		}
+	}
+
+	@Test
+	void theOverworldCannotBeAUnitOfItsOwn(@TempDir Path dir) throws IOException {
+		Path file = writeChanged(dir, json -> {
+			JsonObject units = json.getAsJsonObject("units");
+			units.add("minecraft:overworld", units.get("minecraft:the_nether"));
+		});
+
+		IOException e = assertThrows(IOException.class, () -> BackupConfig.load(file));
+		assertTrue(e.getMessage().contains("units.minecraft:overworld"), e.getMessage());
+	}
+
+	@Test
+	void theRootUnitMustBeSet(@TempDir Path dir) throws IOException {
+		Path file = writeChanged(dir, json -> json.getAsJsonObject("units").remove(BackupUnit.ROOT));
+
+		IOException e = assertThrows(IOException.class, () -> BackupConfig.load(file));
+		assertTrue(e.getMessage().contains("units." + BackupUnit.ROOT + " must be set"), e.getMessage());
+	}
+
+	@Test
+	void anInvalidFilterPatternIsNamed(@TempDir Path dir) throws IOException {
+		Path file = writeChanged(dir, json -> {
+			JsonArray excludes = new JsonArray();
+			excludes.add("regex:[unclosed");
+			json.getAsJsonObject("types").getAsJsonObject("manual").add("excludes", excludes);
+		});
+
+		IOException e = assertThrows(IOException.class, () -> BackupConfig.load(file));
+		assertTrue(e.getMessage().contains("types.manual has an invalid pattern"), e.getMessage());
+	}
+
+	@Test
+	void unreadableAndEmptyFilesFailToLoad(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve(BackupConfig.FILE_NAME);
+		Files.writeString(file, "{ \"jobWorkers\": ");
+		assertThrows(IOException.class, () -> BackupConfig.load(file));
+
+		Files.writeString(file, "");
+		assertThrows(IOException.class, () -> BackupConfig.load(file));
+	}
+
+	@Test
+	void intervalChangesApplyToOneUnitOrAll() {
+		BackupConfig defaults = BackupConfig.defaults();
+		BackupConfig nether = defaults.withIntervalMinutes("minecraft:the_nether", 45);
+		assertEquals(45, nether.getUnits().get("minecraft:the_nether").getIntervalMinutes());
+		assertEquals(defaults.getUnits().get("minecraft:the_end").getIntervalMinutes(),
+				nether.getUnits().get("minecraft:the_end").getIntervalMinutes());
+		// The original is left as it was
+		assertEquals(10, defaults.getUnits().get("minecraft:the_nether").getIntervalMinutes());
+
+		for (BackupConfig.Unit unit : defaults.withIntervalMinutes(null, 5).getUnits().values()) {
+			assertEquals(5, unit.getIntervalMinutes());
+		}
+	}
+}
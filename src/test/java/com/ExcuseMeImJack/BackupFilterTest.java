@@ -0,0 +1,136 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupFilterTest {
+
+	private static Path path(String relativePath) {
+		return Paths.get(relativePath);
+	}
+
+	@Test
+	void defaultFilterSkipsTheSessionLockAtTheWorldRoot() {
+		assertFalse(BackupFilter.DEFAULT.includesFile(path("session.lock")));
+		assertTrue(BackupFilter.DEFAULT.includesFile(path("level.dat")));
+	}
+
+	@Test
+	void defaultExcludesMatchByNameAtAnyDepth() {
+		assertFalse(BackupFilter.DEFAULT.includesDirectory(path("logs")));
+		assertFalse(BackupFilter.DEFAULT.includesDirectory(path("DIM-1/tmp")));
+		assertFalse(BackupFilter.DEFAULT.includesFile(path("region/r.0.0.mca.tmp")));
+		assertFalse(BackupFilter.DEFAULT.includesFile(path("DIM1/session.lock")));
+		assertTrue(BackupFilter.DEFAULT.includesDirectory(path("region")));
+		assertTrue(BackupFilter.DEFAULT.includesFile(path("region/r.0.0.mca")));
+	}
+
+	@Test
+	void everyFileIsIncludedWithoutIncludeRules() {
+		BackupFilter filter = new BackupFilter(List.of(), List.of());
+		assertTrue(filter.includesFile(path("session.lock")));
+		assertTrue(filter.includesFile(path("playerdata/abc.dat")));
+	}
+
+	@Test
+	void includeGlobsLimitTheFiles() {
+		BackupFilter filter = new BackupFilter(List.of("*.dat", "region/*.mca"), BackupFilter.DEFAULT_EXCLUDES);
+		assertTrue(filter.includesFile(path("level.dat")));
+		assertTrue(filter.includesFile(path("playerdata/abc.dat")));
+		assertTrue(filter.includesFile(path("region/r.0.0.mca")));
+		// Patterns with a '/' match the whole relative path, not a name at any depth
+		assertFalse(filter.includesFile(path("DIM-1/region/r.0.0.mca")));
+		assertFalse(filter.includesFile(path("stats/abc.json")));
+		// Directories are still walked, or nothing below them could be included
+		assertTrue(filter.includesDirectory(path("DIM-1")));
+	}
+
+	@Test
+	void excludesWinOverIncludes(@TempDir Path worldDir) throws IOException {
+		for (String file : List.of("level.dat", "level_old.dat", "session.lock", "playerdata/abc.dat",
+				"region/r.0.0.mca")) {
+			Files.createDirectories(worldDir.resolve(file).getParent());
+			Files.writeString(worldDir.resolve(file), file);
+		}
+
+		BackupFilter filter = new BackupFilter(List.of("*.dat"), List.of("playerdata", "*_old.dat"));
+		assertFalse(filter.includesDirectory(path("playerdata")));
+		assertEquals(Set.of(path("level.dat")), WorldSnapshot.scan(worldDir, filter).keySet());
+	}
+
+	@Test
+	void scanWithTheDefaultFilterCapturesEveryWorldFile(@TempDir Path worldDir) throws IOException {
+		List<String> worldFiles = List.of("level.dat", "region/r.0.0.mca", "entities/r.0.0.mca", "poi/r.0.0.mca",
+				"playerdata/069a79f4-44e9-4726-a5be-fca90e38aaf5.dat", "DIM-1/region/r.0.0.mca",
+				"DIM-1/entities/r.-1.0.mca", "DIM1/poi/r.0.-1.mca",
+				// Deeper than the three levels the old filter walked
+				"dimensions/examplemod/deep_caves/region/r.0.0.mca");
+		for (String file : worldFiles) {
+			Files.createDirectories(worldDir.resolve(file).getParent());
+			Files.writeString(worldDir.resolve(file), file);
+		}
+		for (String file : List.of("session.lock", "logs/latest.log", "region/r.0.0.mca.tmp")) {
+			Files.createDirectories(worldDir.resolve(file).getParent());
+			Files.writeString(worldDir.resolve(file), file);
+		}
+
+		Set<Path> expected = new HashSet<>();
+		for (String file : worldFiles) {
+			expected.add(path(file));
+		}
+		assertEquals(expected, WorldSnapshot.scan(worldDir, BackupFilter.DEFAULT).keySet());
+	}
+
+	@Test
+	void pathGlobsExcludeOneFolderOnly() {
+		BackupFilter filter = new BackupFilter(List.of(), List.of("DIM1/region/**"));
+		assertFalse(filter.includesFile(path("DIM1/region/r.0.0.mca")));
+		assertTrue(filter.includesFile(path("region/r.0.0.mca")));
+		assertTrue(filter.includesFile(path("DIM-1/region/r.0.0.mca")));
+	}
+
+	@Test
+	void regexPatternsMatchTheRelativePath() {
+		BackupFilter filter = new BackupFilter(List.of(), List.of("regex:region/r\\.-?\\d+\\.-?\\d+\\.mcc"));
+		assertFalse(filter.includesFile(path("region/r.-1.2.mcc")));
+		assertTrue(filter.includesFile(path("region/r.-1.2.mca")));
+	}
+
+	@Test
+	void scopedFilterKeepsToItsFolder() {
+		BackupFilter nether = BackupFilter.DEFAULT.within("DIM-1", List.of());
+		assertTrue(nether.includesFile(path("DIM-1/region/r.0.0.mca")));
+		assertFalse(nether.includesFile(path("region/r.0.0.mca")));
+		assertFalse(nether.includesFile(path("level.dat")));
+		assertFalse(nether.includesFile(path("DIM-1/session.lock")));
+		assertFalse(nether.includesDirectory(path("region")));
+
+		BackupFilter end = BackupFilter.DEFAULT.within("dimensions/minecraft/the_end", List.of());
+		// The folders above the scope are walked to reach it
+		assertTrue(end.includesDirectory(path("dimensions")));
+		assertTrue(end.includesDirectory(path("dimensions/minecraft")));
+		assertFalse(end.includesDirectory(path("dimensions/other")));
+	}
+
+	@Test
+	void carvedOutFoldersAreLeftOut() {
+		BackupFilter root = BackupFilter.DEFAULT.within("", List.of("DIM-1", "DIM1"));
+		assertFalse(root.includesDirectory(path("DIM-1")));
+		assertFalse(root.includesFile(path("DIM1/region/r.0.0.mca")));
+		assertTrue(root.includesFile(path("region/r.0.0.mca")));
+		assertTrue(root.includesFile(path("level.dat")));
+		assertFalse(root.includesFile(path("session.lock")));
+	}
+}
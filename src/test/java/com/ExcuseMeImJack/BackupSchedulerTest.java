@@ -0,0 +1,64 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupSchedulerTest {
+
+	private static final long INTERVAL_TICKS = 8;
+
+	private static int ticksUntilDue(BackupScheduler scheduler, int limit) {
+		for (int ticks = 1; ticks <= limit; ticks++) {
+			if (scheduler.tick()) {
+				return ticks;
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	void nothingIsDueWhileTheWorldIsUnchanged() {
+		BackupScheduler scheduler = new BackupScheduler(new ChangeTracker(), INTERVAL_TICKS);
+		assertEquals(-1, ticksUntilDue(scheduler, 100));
+	}
+
+	@Test
+	void aQueuedBackupHoldsOffTheNextUntilItsSnapshotIsTaken() {
+		ChangeTracker changes = new ChangeTracker();
+		BackupScheduler scheduler = new BackupScheduler(changes, INTERVAL_TICKS);
+		changes.onChunkSaved("minecraft:overworld", 1);
+		assertEquals((int) INTERVAL_TICKS, ticksUntilDue(scheduler, 100));
+
+		CompletableFuture<Void> job = new CompletableFuture<>();
+		scheduler.backupQueued(job);
+		assertEquals(-1, ticksUntilDue(scheduler, 100));
+		// Queueing alone leaves the activity for the backup to pick up
+		assertTrue(scheduler.getActivity().changed());
+
+		scheduler.backupStarted();
+		assertFalse(scheduler.getActivity().changed());
+		assertEquals(-1, ticksUntilDue(scheduler, 100));
+	}
+
+	@Test
+	void aBackupThatNeverStartedLeavesTheNextOneDue() {
+		ChangeTracker changes = new ChangeTracker();
+		BackupScheduler scheduler = new BackupScheduler(changes, INTERVAL_TICKS);
+		changes.onChunkSaved("minecraft:overworld", 1);
+		assertEquals((int) INTERVAL_TICKS, ticksUntilDue(scheduler, 100));
+
+		CompletableFuture<Void> job = new CompletableFuture<>();
+		scheduler.backupQueued(job);
+		assertFalse(scheduler.tick());
+
+		// Cancelled before its snapshot, as when a restore cancels the automatic backups
+		job.cancel(true);
+		assertTrue(scheduler.tick());
+		assertTrue(scheduler.getActivity().changed());
+	}
+}
@@ -0,0 +1,67 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalBackupEngineTest {
+
+	// A region file with one chunk in the sector after the header, and optionally a second chunk whose location
+	// points past the end of the file
+	static byte[] regionFile(boolean badSector) {
+		ByteBuffer region = ByteBuffer.allocate(RegionFile.HEADER_SIZE + RegionFile.SECTOR_SIZE);
+		region.putInt(0, (2 << 8) | 1);
+		region.putInt(RegionFile.SECTOR_SIZE, 1_700_000_000);
+		if (badSector) {
+			region.putInt(4, (100 << 8) | 1);
+			region.putInt(RegionFile.SECTOR_SIZE + 4, 1_700_000_000);
+		}
+		region.position(RegionFile.HEADER_SIZE);
+		region.putInt(6).put((byte) 2).put(new byte[] {1, 2, 3, 4, 5});
+		return region.array();
+	}
+
+	private static BackupManifest backUp(Path worldDir, ObjectStore store) throws IOException {
+		CopyEngine copyEngine = new CopyEngine(2);
+		try {
+			WorldSnapshot snapshot = new WorldSnapshot(worldDir, WorldSnapshot.scan(worldDir, BackupFilter.DEFAULT),
+					System.currentTimeMillis(), 0);
+			return new IncrementalBackupEngine(store, copyEngine, true).backup(snapshot, null, "10000", "manual")
+					.manifest();
+		} finally {
+			copyEngine.shutdown();
+		}
+	}
+
+	@Test
+	void aRegionWithABadChunkIsStoredWhole(@TempDir Path dir) throws IOException {
+		Path worldDir = dir.resolve("world");
+		Files.createDirectories(worldDir.resolve("region"));
+		byte[] broken = regionFile(true);
+		Files.write(worldDir.resolve("region/r.0.0.mca"), broken);
+		Files.write(worldDir.resolve("region/r.1.0.mca"), regionFile(false));
+		ObjectStore store = new ObjectStore(dir.resolve("objects"));
+
+		BackupManifest manifest = backUp(worldDir, store);
+
+		BackupManifest.Entry good = manifest.get("region/r.1.0.mca");
+		assertNotNull(good);
+		assertTrue(good.isChunked());
+		BackupManifest.Entry bad = manifest.get("region/r.0.0.mca");
+		assertNotNull(bad);
+		assertFalse(bad.isChunked());
+		try (InputStream in = store.open(bad.getHash())) {
+			assertTrue(Arrays.equals(broken, in.readAllBytes()));
+		}
+	}
+}
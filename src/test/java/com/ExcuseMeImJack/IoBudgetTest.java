@@ -0,0 +1,104 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IoBudgetTest {
+
+	private static final long MIB = 1_048_576;
+
+	private static long millisSince(long startNanos) {
+		return (System.nanoTime() - startNanos) / 1_000_000;
+	}
+
+	@Test
+	void anUnlimitedBudgetNeverWaits() throws InterruptedIOException {
+		IoBudget budget = new IoBudget(0, 0);
+		assertTrue(budget.isUnlimited());
+		long start = System.nanoTime();
+		for (int i = 0; i < 10_000; i++) {
+			budget.acquire(64 * MIB);
+		}
+		assertTrue(millisSince(start) < 1000);
+	}
+
+	@Test
+	void bytesArePacedToTheLimitAfterTheFirstSecond() throws InterruptedIOException {
+		IoBudget budget = new IoBudget(MIB, 0);
+		long start = System.nanoTime();
+		// The bucket starts full
+		budget.acquire(MIB);
+		assertTrue(millisSince(start) < 200);
+
+		budget.acquire(MIB / 2);
+		long elapsed = millisSince(start);
+		assertTrue(elapsed >= 400 && elapsed < 5000, "Took " + elapsed + " ms");
+	}
+
+	@Test
+	void operationsArePacedToTheLimit() throws InterruptedIOException {
+		IoBudget budget = new IoBudget(0, 20);
+		long start = System.nanoTime();
+		for (int i = 0; i < 30; i++) {
+			budget.acquire(1);
+		}
+		long elapsed = millisSince(start);
+		assertTrue(elapsed >= 400 && elapsed < 5000, "Took " + elapsed + " ms");
+	}
+
+	@Test
+	void aReadLargerThanTheBucketLeavesItInDebt() throws InterruptedIOException {
+		IoBudget budget = new IoBudget(MIB, 0);
+		long start = System.nanoTime();
+		budget.acquire(2 * MIB);
+		assertTrue(millisSince(start) < 200);
+
+		// The next read waits for the extra MiB as well as its own byte
+		budget.acquire(1);
+		long elapsed = millisSince(start);
+		assertTrue(elapsed >= 900 && elapsed < 5000, "Took " + elapsed + " ms");
+	}
+
+	@Test
+	void laggingTicksHalveTheRateAndQuietTicksRestoreIt() {
+		IoBudget budget = new IoBudget(0, 0);
+		budget.adjustForMspt(60, 40);
+		assertEquals(0.5, budget.getBackoffFactor());
+		// Backing off limits even an unlimited budget
+		assertFalse(budget.isUnlimited());
+
+		// Between the recovery ratio and the threshold nothing changes
+		budget.adjustForMspt(35, 40);
+		assertEquals(0.5, budget.getBackoffFactor());
+
+		for (int i = 0; i < 20; i++) {
+			budget.adjustForMspt(100, 40);
+		}
+		assertEquals(1 / 64.0, budget.getBackoffFactor());
+
+		for (int i = 0; i < 30; i++) {
+			budget.adjustForMspt(10, 40);
+		}
+		assertEquals(1.0, budget.getBackoffFactor());
+		assertTrue(budget.isUnlimited());
+	}
+
+	@Test
+	void anInterruptedWaitThrows() throws InterruptedIOException {
+		IoBudget budget = new IoBudget(1000, 0);
+		budget.acquire(1000);
+		Thread.currentThread().interrupt();
+		try {
+			assertThrows(InterruptedIOException.class, () -> budget.acquire(1000));
+			assertTrue(Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(30)
+class JobSchedulerTest {
+
+	private static final long WAIT_SECONDS = 10;
+
+	private static void await(CountDownLatch latch) {
+		try {
+			if (!latch.await(WAIT_SECONDS, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("Timed out waiting for a latch");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void finish(Future<?> job) throws Exception {
+		job.get(WAIT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	// Parked jobs only count once a worker has tried them
+	private static void awaitQueueDepth(JobScheduler scheduler, int depth) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS);
+		while (scheduler.getQueueDepth() != depth) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("Queue depth stayed at " + scheduler.getQueueDepth());
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	// Occupies a world, or the only worker when world is null, until the returned latch is counted down
+	private static CountDownLatch hold(JobScheduler scheduler, String world) {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		scheduler.submit(JobScheduler.Priority.AUTO, world, null, () -> {
+			started.countDown();
+			await(release);
+		});
+		await(started);
+		return release;
+	}
+
+	@Test
+	void queuedJobsStartInPriorityOrder() throws Exception {
+		JobScheduler scheduler = new JobScheduler(1);
+		try {
+			CountDownLatch release = hold(scheduler, null);
+			List<String> order = Collections.synchronizedList(new ArrayList<>());
+			List<Future<?>> jobs = new ArrayList<>();
+			jobs.add(scheduler.submit(JobScheduler.Priority.AUTO, () -> order.add("auto 1")));
+			jobs.add(scheduler.submit(JobScheduler.Priority.MANUAL, () -> order.add("manual")));
+			jobs.add(scheduler.submit(JobScheduler.Priority.AUTO, () -> order.add("auto 2")));
+			jobs.add(scheduler.submit(JobScheduler.Priority.RESTORE, () -> order.add("restore")));
+			assertEquals(4, scheduler.getQueueDepth());
+
+			release.countDown();
+			for (Future<?> job : jobs) {
+				finish(job);
+			}
+			assertEquals(List.of("restore", "manual", "auto 1", "auto 2"), order);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void parkedJobsTakeTheWorldInPriorityOrder() throws Exception {
+		JobScheduler scheduler = new JobScheduler(4);
+		try {
+			CountDownLatch release = hold(scheduler, "world");
+			List<String> order = Collections.synchronizedList(new ArrayList<>());
+			List<Future<?>> jobs = new ArrayList<>();
+			jobs.add(scheduler.submit(JobScheduler.Priority.AUTO, "world", null, () -> order.add("auto")));
+			jobs.add(scheduler.submit(JobScheduler.Priority.MANUAL, "world", null, () -> order.add("manual")));
+			jobs.add(scheduler.submit(JobScheduler.Priority.RESTORE, "world", null, () -> order.add("restore")));
+			awaitQueueDepth(scheduler, 3);
+
+			release.countDown();
+			for (Future<?> job : jobs) {
+				finish(job);
+			}
+			assertEquals(List.of("restore", "manual", "auto"), order);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void jobsOnOneWorldRunOneAtATime() throws Exception {
+		JobScheduler scheduler = new JobScheduler(4);
+		try {
+			AtomicInteger running = new AtomicInteger();
+			AtomicInteger mostRunning = new AtomicInteger();
+			List<Future<?>> jobs = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				jobs.add(scheduler.submit(JobScheduler.Priority.values()[i % 3], "world", null, () -> {
+					mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					try {
+						Thread.sleep(2);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					running.decrementAndGet();
+				}));
+			}
+			for (Future<?> job : jobs) {
+				finish(job);
+			}
+			assertEquals(1, mostRunning.get());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void otherWorldsAreNotHeldUp() throws Exception {
+		JobScheduler scheduler = new JobScheduler(2);
+		try {
+			CountDownLatch release = hold(scheduler, "world");
+			Future<?> waiting = scheduler.submit(JobScheduler.Priority.RESTORE, "world", null, () -> {
+			});
+			// The parked job leaves the second worker free for another world
+			finish(scheduler.submit(JobScheduler.Priority.AUTO, "other", null, () -> {
+			}));
+			assertFalse(waiting.isDone());
+			assertTrue(scheduler.isWorldBusy("world"));
+
+			release.countDown();
+			finish(waiting);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void partsRunSideBySideAndTheWholeWorldWaitsForThem() throws Exception {
+		JobScheduler scheduler = new JobScheduler(4);
+		try {
+			String overworld = JobScheduler.partOf("world", "overworld");
+			String nether = JobScheduler.partOf("world", "nether");
+			CountDownLatch bothStarted = new CountDownLatch(2);
+			CountDownLatch release = new CountDownLatch(1);
+			List<Future<?>> parts = new ArrayList<>();
+			for (String part : List.of(overworld, nether)) {
+				parts.add(scheduler.submit(JobScheduler.Priority.AUTO, part, null, () -> {
+					bothStarted.countDown();
+					await(release);
+				}));
+			}
+			// Only returns if the two parts hold their locks at the same time
+			await(bothStarted);
+			assertTrue(scheduler.isWorldBusy("world"));
+			assertFalse(scheduler.isWorldBusy(JobScheduler.partOf("world", "end")));
+
+			List<String> order = Collections.synchronizedList(new ArrayList<>());
+			Future<?> whole = scheduler.submit(JobScheduler.Priority.MANUAL, "world", null, () -> order.add("world"));
+			// Submitted after the whole-world job, so it must not overtake it even though its part frees up
+			Future<?> later = scheduler.submit(JobScheduler.Priority.AUTO, overworld, null, () -> order.add("overworld"));
+			awaitQueueDepth(scheduler, 2);
+			assertFalse(whole.isDone());
+
+			release.countDown();
+			for (Future<?> part : parts) {
+				finish(part);
+			}
+			finish(whole);
+			finish(later);
+			assertEquals(List.of("world", "overworld"), order);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void jobsWithTheSameKeyCoalesceWhileWaiting() throws Exception {
+		JobScheduler scheduler = new JobScheduler(1);
+		try {
+			CountDownLatch release = hold(scheduler, null);
+			AtomicInteger runs = new AtomicInteger();
+			Future<?> first = scheduler.submit(JobScheduler.Priority.AUTO, "world", "auto", runs::incrementAndGet);
+			Future<?> second = scheduler.submit(JobScheduler.Priority.AUTO, "world", "auto", runs::incrementAndGet);
+			Future<?> other = scheduler.submit(JobScheduler.Priority.AUTO, "world", "other", runs::incrementAndGet);
+			assertSame(first, second);
+			assertNotSame(first, other);
+			assertTrue(scheduler.isWaiting("auto"));
+
+			release.countDown();
+			finish(first);
+			finish(other);
+			assertEquals(2, runs.get());
+			assertFalse(scheduler.isWaiting("auto"));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void aRunningJobIsNotJoined() throws Exception {
+		JobScheduler scheduler = new JobScheduler(2);
+		try {
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			Future<?> running = scheduler.submit(JobScheduler.Priority.AUTO, "world", "auto", () -> {
+				started.countDown();
+				await(release);
+			});
+			await(started);
+			assertFalse(scheduler.isWaiting("auto"));
+
+			// Parked behind the running one, and still joined by later submissions while it waits
+			Future<?> next = scheduler.submit(JobScheduler.Priority.AUTO, "world", "auto", () -> {
+			});
+			assertNotSame(running, next);
+			assertSame(next, scheduler.submit(JobScheduler.Priority.AUTO, "world", "auto", () -> {
+			}));
+
+			release.countDown();
+			finish(running);
+			finish(next);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void cancelStopsQueuedAndRunningJobsOfOnePriority() throws Exception {
+		JobScheduler scheduler = new JobScheduler(1);
+		try {
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch interrupted = new CountDownLatch(1);
+			Future<?> running = scheduler.submit(JobScheduler.Priority.AUTO, "world", null, () -> {
+				started.countDown();
+				try {
+					Thread.sleep(TimeUnit.SECONDS.toMillis(WAIT_SECONDS));
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+			});
+			await(started);
+			Future<?> queued = scheduler.submit(JobScheduler.Priority.AUTO, "world", null, () -> {
+			});
+			Future<?> manual = scheduler.submit(JobScheduler.Priority.MANUAL, "world", null, () -> {
+			});
+
+			assertEquals(2, scheduler.cancel(JobScheduler.Priority.AUTO));
+			await(interrupted);
+			assertTrue(running.isCancelled());
+			assertTrue(queued.isCancelled());
+			finish(manual);
+			assertFalse(manual.isCancelled());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void cancelByKeyLeavesOtherJobsOfTheSamePriority() throws Exception {
+		JobScheduler scheduler = new JobScheduler(2);
+		try {
+			CountDownLatch verifyStarted = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			Future<?> verify = scheduler.submit(JobScheduler.Priority.MANUAL, () -> {
+				verifyStarted.countDown();
+				await(release);
+			});
+			await(verifyStarted);
+			CountDownLatch backupStarted = new CountDownLatch(1);
+			Future<?> running = scheduler.submit(JobScheduler.Priority.AUTO, "world", "backup:auto:root", () -> {
+				backupStarted.countDown();
+				try {
+					Thread.sleep(TimeUnit.SECONDS.toMillis(WAIT_SECONDS));
+				} catch (InterruptedException e) {
+					// Cancelled
+				}
+			});
+			await(backupStarted);
+			Future<?> queued = scheduler.submit(JobScheduler.Priority.MANUAL, "world", "backup:manual", () -> {
+			});
+
+			assertEquals(2, scheduler.cancel("backup:"));
+			assertTrue(running.isCancelled());
+			assertTrue(queued.isCancelled());
+			assertFalse(verify.isDone());
+
+			release.countDown();
+			finish(verify);
+			assertFalse(verify.isCancelled());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void cancelUnderConcurrentSubmitsLeavesTheSchedulerUsable() throws Exception {
+		JobScheduler scheduler = new JobScheduler(3);
+		try {
+			int submitters = 4;
+			int jobsPerSubmitter = 200;
+			List<Future<?>> autoJobs = Collections.synchronizedList(new ArrayList<>());
+			List<Future<?>> manualJobs = Collections.synchronizedList(new ArrayList<>());
+			AtomicInteger manualRuns = new AtomicInteger();
+			CountDownLatch go = new CountDownLatch(1);
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < submitters; t++) {
+				String world = t % 2 == 0 ? "world" : JobScheduler.partOf("world", "part " + t);
+				Thread thread = new Thread(() -> {
+					await(go);
+					for (int i = 0; i < jobsPerSubmitter; i++) {
+						autoJobs.add(scheduler.submit(JobScheduler.Priority.AUTO, world, null, Thread::yield));
+						manualJobs.add(scheduler.submit(JobScheduler.Priority.MANUAL, world, null,
+								manualRuns::incrementAndGet));
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+
+			go.countDown();
+			boolean submitting = true;
+			while (submitting) {
+				scheduler.cancel(JobScheduler.Priority.AUTO);
+				submitting = false;
+				for (Thread thread : threads) {
+					submitting |= thread.isAlive();
+				}
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			scheduler.cancel(JobScheduler.Priority.AUTO);
+
+			// Every automatic job either ran or was cancelled, and none of the others was touched
+			for (Future<?> job : autoJobs) {
+				assertTrue(job.isDone());
+			}
+			for (Future<?> job : manualJobs) {
+				finish(job);
+				assertFalse(job.isCancelled());
+			}
+			assertEquals(submitters * jobsPerSubmitter, manualRuns.get());
+
+			// No cancelled job kept hold of the world
+			finish(scheduler.submit(JobScheduler.Priority.AUTO, "world", null, () -> {
+			}));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+}
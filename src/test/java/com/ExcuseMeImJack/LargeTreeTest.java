@@ -0,0 +1,83 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Walks a tree the size of a large pregenerated world. Run with ./gradlew largeTest; the default test task
+// leaves it out.
+@Tag("large")
+@Timeout(1800)
+class LargeTreeTest {
+
+	private static final int DIRECTORIES = 500;
+	private static final int FILES_PER_DIRECTORY = 1000;
+	private static final int FILES = DIRECTORIES * FILES_PER_DIRECTORY;
+	// Visiting a file costs its path, its attributes and the filter's checks, about 2.5 KiB to scan it and half
+	// a KiB to delete it. A buffer per file, or copying what was collected so far, costs many times this.
+	private static final long MAX_BYTES_PER_FILE = 8 << 10;
+	private static final long MAX_BYTES_PER_DELETED_FILE = 2 << 10;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private interface Walk {
+		void run() throws IOException;
+	}
+
+	// Bytes allocated by this thread while the walk runs; unlike the heap in use, this does not depend on when
+	// the garbage collector happens to run
+	private static long allocatedPerFile(Walk walk) throws IOException {
+		long before = THREADS.getCurrentThreadAllocatedBytes();
+		walk.run();
+		return (THREADS.getCurrentThreadAllocatedBytes() - before) / FILES;
+	}
+
+	private static void createTree(Path root) throws IOException {
+		for (int d = 0; d < DIRECTORIES; d++) {
+			Path dir = Files.createDirectories(root.resolve("dimensions/examplemod/d" + d / 10 + "/region" + d));
+			for (int f = 0; f < FILES_PER_DIRECTORY; f++) {
+				Files.createFile(dir.resolve("r." + d + "." + f + ".mca"));
+			}
+		}
+	}
+
+	@Test
+	void walkingHalfAMillionFilesCostsABoundedAmountPerFile(@TempDir Path dir) throws IOException {
+		Path world = dir.resolve("world");
+		Path copy = dir.resolve("copy");
+		createTree(world);
+
+		Map<?, ?>[] scanned = new Map<?, ?>[1];
+		long scan = allocatedPerFile(() -> scanned[0] = WorldSnapshot.scan(world, BackupFilter.DEFAULT));
+		assertEquals(FILES, scanned[0].size());
+		scanned[0] = null;
+		assertTrue(scan < MAX_BYTES_PER_FILE, "Scanning allocated " + scan + " bytes per file");
+
+		CopyEngine copyEngine = new CopyEngine(4);
+		try {
+			CopyEngine.CopyResult[] result = new CopyEngine.CopyResult[1];
+			long copyWalk = allocatedPerFile(() -> result[0] = copyEngine.copyTree(world, copy, BackupFilter.DEFAULT));
+			assertEquals(FILES, result[0].files());
+			assertTrue(copyWalk < MAX_BYTES_PER_FILE, "Walking the copy allocated " + copyWalk + " bytes per file");
+		} finally {
+			copyEngine.shutdown();
+		}
+
+		long delete = allocatedPerFile(() -> BackupFiles.deleteDirectory(copy));
+		assertFalse(Files.exists(copy));
+		assertTrue(delete < MAX_BYTES_PER_DELETED_FILE, "Deleting allocated " + delete + " bytes per file");
+		BackupFiles.deleteDirectory(world);
+	}
+}
@@ -0,0 +1,56 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObjectStoreTest {
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	@Test
+	void storingTheSameContentTwiceAddsOneObject(@TempDir Path dir) throws IOException {
+		ObjectStore store = new ObjectStore(dir.resolve("objects"));
+		Files.writeString(dir.resolve("a.dat"), "same");
+		Files.writeString(dir.resolve("b.dat"), "same");
+
+		ObjectStore.Stored first = store.store(dir.resolve("a.dat"));
+		ObjectStore.Stored second = store.store(dir.resolve("b.dat"));
+		assertTrue(first.added());
+		assertFalse(second.added());
+		assertEquals(first.hash(), second.hash());
+		try (InputStream in = store.open(first.hash())) {
+			assertEquals("same", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	void storingSmallFilesReusesTheCopyBuffer(@TempDir Path dir) throws IOException {
+		ObjectStore store = new ObjectStore(dir.resolve("objects"));
+		int files = 200;
+		for (int i = 0; i <= files; i++) {
+			Files.writeString(dir.resolve(i + ".dat"), "file " + i);
+		}
+		// The first file on a thread allocates its buffer
+		store.store(dir.resolve(files + ".dat"));
+
+		long before = THREADS.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < files; i++) {
+			store.store(dir.resolve(i + ".dat"));
+		}
+		long perFile = (THREADS.getCurrentThreadAllocatedBytes() - before) / files;
+		// A fresh 1 MiB buffer per file is what a world of small files must not cost
+		assertTrue(perFile < 64 << 10, "Storing a small file allocated " + perFile + " bytes");
+	}
+}
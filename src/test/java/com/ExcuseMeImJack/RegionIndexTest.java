@@ -0,0 +1,154 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionIndexTest {
+
+	private static final int TIMESTAMP = 1_700_000_000;
+
+	// A payload of the compression type byte and random data
+	private static byte[] payload(int length, long seed) {
+		byte[] payload = new byte[length];
+		new Random(seed).nextBytes(payload);
+		payload[0] = 2;
+		return payload;
+	}
+
+	// Writes the chunks in the reverse of their slot order with a free sector between each, the way a region
+	// looks after chunks were saved again and moved, so the rebuilt file's layout differs from the original
+	private static void writeRegion(Path file, Map<Integer, byte[]> chunks, Map<Integer, Integer> timestamps)
+			throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(RegionFile.HEADER_SIZE);
+		Integer[] slots = chunks.keySet().toArray(new Integer[0]);
+		Arrays.sort(slots, (a, b) -> b - a);
+		int sector = RegionFile.HEADER_SIZE / RegionFile.SECTOR_SIZE + 1;
+
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (int slot : slots) {
+				byte[] payload = chunks.get(slot);
+				int sectorCount = (4 + payload.length + RegionFile.SECTOR_SIZE - 1) / RegionFile.SECTOR_SIZE;
+				ByteBuffer chunk = ByteBuffer.allocate(sectorCount * RegionFile.SECTOR_SIZE);
+				chunk.putInt(payload.length).put(payload).clear();
+				out.write(chunk, (long) sector * RegionFile.SECTOR_SIZE);
+				header.putInt(slot * 4, (sector << 8) | sectorCount);
+				header.putInt(RegionFile.SECTOR_SIZE + slot * 4, timestamps.getOrDefault(slot, TIMESTAMP));
+				sector += sectorCount + 1;
+			}
+			out.write(header, 0);
+		}
+	}
+
+	// Keeps the location and timestamp of chunks 0, 66 and 99 from writeRegion, and gives the changed chunk 33
+	// and the new chunk 500 new sectors and timestamps at the end of the file
+	private static void writeRegionKeepingOthers(Path file, Map<Integer, byte[]> chunks) throws IOException {
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			long sector = out.size() / RegionFile.SECTOR_SIZE;
+			for (int slot : new int[] {33, 500}) {
+				byte[] payload = chunks.get(slot);
+				ByteBuffer chunk = ByteBuffer.allocate(RegionFile.SECTOR_SIZE);
+				chunk.putInt(payload.length).put(payload).clear();
+				out.write(chunk, sector * RegionFile.SECTOR_SIZE);
+				out.write(ByteBuffer.allocate(4).putInt(0, (int) (sector << 8) | 1), slot * 4L);
+				out.write(ByteBuffer.allocate(4).putInt(0, TIMESTAMP + 60), RegionFile.SECTOR_SIZE + slot * 4L);
+				sector++;
+			}
+		}
+	}
+
+	private static void assertSameChunks(Map<Integer, byte[]> chunks, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			RegionFile region = RegionFile.readHeader(channel);
+			for (int index = 0; index < RegionFile.CHUNK_COUNT; index++) {
+				byte[] expected = chunks.get(index);
+				if (expected == null) {
+					assertFalse(region.hasChunk(index), "Unexpected chunk " + index);
+				} else {
+					assertTrue(Arrays.equals(expected, region.readPayload(channel, index)), "Chunk " + index + " differs");
+				}
+			}
+		}
+	}
+
+	@Test
+	void aRebuiltRegionHoldsTheStoredChunks(@TempDir Path dir) throws IOException {
+		ObjectStore store = new ObjectStore(dir.resolve("objects"));
+		Map<Integer, byte[]> chunks = new LinkedHashMap<>();
+		chunks.put(0, payload(100, 1));
+		// Spans two sectors
+		chunks.put(RegionFile.index(5, 7), payload(6000, 2));
+		chunks.put(RegionFile.CHUNK_COUNT - 1, payload(1, 3));
+		Path file = dir.resolve("r.0.0.mca");
+		writeRegion(file, chunks, Map.of(0, TIMESTAMP + 42));
+
+		RegionIndex.StoreResult result = RegionIndex.store(file, null, store);
+		assertEquals(3, result.storedChunks());
+		assertEquals(0, result.reusedChunks());
+
+		RegionIndex index = RegionIndex.load(store, result.hash());
+		assertEquals(3, index.getChunkCount());
+		Path rebuilt = dir.resolve("rebuilt.mca");
+		long length = index.rebuild(store, rebuilt);
+		assertEquals(Files.size(rebuilt), length);
+		assertSameChunks(chunks, rebuilt);
+		// The original leaves a free sector after every chunk; the rebuilt file packs them together
+		assertTrue(Files.size(rebuilt) < Files.size(file));
+		try (FileChannel channel = FileChannel.open(rebuilt, StandardOpenOption.READ)) {
+			RegionFile region = RegionFile.readHeader(channel);
+			assertEquals(TIMESTAMP + 42, region.getTimestamp(0));
+			assertEquals(TIMESTAMP, region.getTimestamp(RegionFile.CHUNK_COUNT - 1));
+			assertTrue(RegionFile.check(ByteBuffer.wrap(Files.readAllBytes(rebuilt))).isEmpty());
+		}
+	}
+
+	@Test
+	void unchangedChunksAreCarriedOverFromThePreviousIndex(@TempDir Path dir) throws IOException {
+		ObjectStore store = new ObjectStore(dir.resolve("objects"));
+		Map<Integer, byte[]> chunks = new LinkedHashMap<>();
+		for (int i = 0; i < 4; i++) {
+			chunks.put(i * 33, payload(500 + i, i));
+		}
+		Path file = dir.resolve("r.0.0.mca");
+		writeRegion(file, chunks, Map.of());
+		RegionIndex first = RegionIndex.load(store, RegionIndex.store(file, null, store).hash());
+
+		// Saving a chunk again moves it and gives it a new timestamp; a new chunk is added
+		chunks.put(33, payload(700, 10));
+		chunks.put(500, payload(300, 11));
+		writeRegionKeepingOthers(file, chunks);
+
+		RegionIndex.StoreResult second = RegionIndex.store(file, first, store);
+		assertEquals(2, second.storedChunks());
+		assertEquals(3, second.reusedChunks());
+		RegionIndex index = RegionIndex.load(store, second.hash());
+		assertEquals(2, index.getPackHashes().size());
+
+		Path rebuilt = dir.resolve("rebuilt.mca");
+		index.rebuild(store, rebuilt);
+		assertSameChunks(chunks, rebuilt);
+	}
+
+	@Test
+	void aFileShorterThanTheHeaderIsNotIndexed(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("r.0.0.mca");
+		Files.write(file, new byte[100]);
+		assertNull(RegionIndex.store(file, null, new ObjectStore(dir.resolve("objects"))));
+	}
+}
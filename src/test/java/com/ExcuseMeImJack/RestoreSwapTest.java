@@ -0,0 +1,147 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RestoreSwapTest {
+
+	private static void writeFile(Path file, String content) throws IOException {
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, content);
+	}
+
+	// The folders a swap left beside the world, holding what it replaced
+	private static List<Path> rollbackDirs(Path worldDir) throws IOException {
+		try (Stream<Path> siblings = Files.list(worldDir.getParent())) {
+			return siblings.filter(path -> path.getFileName().toString().startsWith("world.before-restore-")).toList();
+		}
+	}
+
+	// A live world with nether and end units, and a prepared root restore that carries both over
+	private static RestoreSwap prepareWorld(Path dir) throws IOException {
+		Path worldDir = dir.resolve("world");
+		writeFile(worldDir.resolve("level.dat"), "live");
+		writeFile(worldDir.resolve("DIM-1/region/r.0.0.mca"), "live nether");
+		writeFile(worldDir.resolve("DIM1/region/r.0.0.mca"), "live end");
+		Path stagingDir = RestoreSwap.stagingDirFor(worldDir);
+		writeFile(stagingDir.resolve("level.dat"), "restored");
+		RestoreSwap swap = new RestoreSwap(worldDir, stagingDir, "10000", 1, null, List.of("DIM-1", "DIM1"));
+		swap.save(dir.resolve(RestoreSwap.FILE_NAME));
+		return swap;
+	}
+
+	private static void assertWorldRestored(Path dir) throws IOException {
+		Path worldDir = dir.resolve("world");
+		assertEquals("restored", Files.readString(worldDir.resolve("level.dat")));
+		assertEquals("live nether", Files.readString(worldDir.resolve("DIM-1/region/r.0.0.mca")));
+		assertEquals("live end", Files.readString(worldDir.resolve("DIM1/region/r.0.0.mca")));
+		assertFalse(Files.exists(RestoreSwap.stagingDirFor(worldDir)));
+		assertFalse(Files.exists(dir.resolve(RestoreSwap.FILE_NAME)));
+
+		List<Path> rollbackDirs = rollbackDirs(worldDir);
+		assertEquals(1, rollbackDirs.size());
+		assertEquals("live", Files.readString(rollbackDirs.get(0).resolve("level.dat")));
+	}
+
+	@Test
+	void aWorldSwapKeepsTheReplacedWorldAndCarriesUnitsOver(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve(RestoreSwap.FILE_NAME);
+		prepareWorld(dir);
+
+		Path rollbackDir = RestoreSwap.load(file).apply(file);
+		assertNotNull(rollbackDir);
+		assertWorldRestored(dir);
+		assertNull(RestoreSwap.load(file));
+	}
+
+	@Test
+	void aWorldSwapStoppedPartWayIsFinishedByRunningItAgain(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve(RestoreSwap.FILE_NAME);
+		Path worldDir = dir.resolve("world");
+		Path stagingDir = RestoreSwap.stagingDirFor(worldDir);
+
+		// Stopped after carrying one unit over
+		prepareWorld(dir);
+		Files.move(worldDir.resolve("DIM-1"), stagingDir.resolve("DIM-1"));
+		RestoreSwap.load(file).apply(file);
+		assertWorldRestored(dir);
+	}
+
+	@Test
+	void aWorldSwapStoppedBetweenItsRenamesIsFinishedByRunningItAgain(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve(RestoreSwap.FILE_NAME);
+		Path worldDir = dir.resolve("world");
+		Path stagingDir = RestoreSwap.stagingDirFor(worldDir);
+
+		// Stopped with the live world moved aside and the prepared one not yet in its place
+		prepareWorld(dir);
+		Files.move(worldDir.resolve("DIM-1"), stagingDir.resolve("DIM-1"));
+		Files.move(worldDir.resolve("DIM1"), stagingDir.resolve("DIM1"));
+		Files.move(worldDir, worldDir.resolveSibling("world.before-restore-2026-01-01_00-00-00"));
+		assertNull(RestoreSwap.load(file).apply(file));
+		assertWorldRestored(dir);
+	}
+
+	@Test
+	void aWorldSwapStoppedBeforeRemovingThePendingFileIsFinishedByRunningItAgain(@TempDir Path dir)
+			throws IOException {
+		Path file = dir.resolve(RestoreSwap.FILE_NAME);
+		Path worldDir = dir.resolve("world");
+		Path stagingDir = RestoreSwap.stagingDirFor(worldDir);
+
+		prepareWorld(dir);
+		Files.move(worldDir.resolve("DIM-1"), stagingDir.resolve("DIM-1"));
+		Files.move(worldDir.resolve("DIM1"), stagingDir.resolve("DIM1"));
+		Files.move(worldDir, worldDir.resolveSibling("world.before-restore-2026-01-01_00-00-00"));
+		Files.move(stagingDir, worldDir);
+		assertNull(RestoreSwap.load(file).apply(file));
+		assertWorldRestored(dir);
+	}
+
+	@Test
+	void aUnitSwapStoppedPartWayIsFinishedByRunningItAgain(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve(RestoreSwap.FILE_NAME);
+		Path worldDir = dir.resolve("world");
+		writeFile(worldDir.resolve("level.dat"), "live");
+		writeFile(worldDir.resolve("DIM-1/region/r.0.0.mca"), "live nether");
+		Path stagingDir = RestoreSwap.stagingDirFor(worldDir);
+		writeFile(stagingDir.resolve("DIM-1/region/r.0.0.mca"), "restored nether");
+		new RestoreSwap(worldDir, stagingDir, "10000", 1, "DIM-1", List.of()).save(file);
+
+		// Stopped with the live nether moved into the rollback folder
+		Path replacedDir = worldDir.resolveSibling("world.before-restore-2026-01-01_00-00-00").resolve("DIM-1");
+		Files.createDirectories(replacedDir.getParent());
+		Files.move(worldDir.resolve("DIM-1"), replacedDir);
+
+		assertNull(RestoreSwap.load(file).apply(file));
+		assertEquals("restored nether", Files.readString(worldDir.resolve("DIM-1/region/r.0.0.mca")));
+		assertEquals("live", Files.readString(worldDir.resolve("level.dat")));
+		assertEquals("live nether", Files.readString(replacedDir.resolve("region/r.0.0.mca")));
+		assertFalse(Files.exists(stagingDir));
+		assertFalse(Files.exists(file));
+	}
+
+	@Test
+	void aSwapWithNeitherWorldNorPreparedRestoreFails(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve(RestoreSwap.FILE_NAME);
+		Path worldDir = dir.resolve("world");
+		new RestoreSwap(worldDir, RestoreSwap.stagingDirFor(worldDir), "10000", 1).save(file);
+
+		assertThrows(IOException.class, () -> RestoreSwap.load(file).apply(file));
+		// Left in place so the failure is reported again on the next start
+		assertTrue(Files.exists(file));
+	}
+}
@@ -0,0 +1,126 @@
+package com.ExcuseMeImJack;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetentionPolicyTest {
+
+	private static final ZoneId UTC = ZoneOffset.UTC;
+	private static final long HOUR = Duration.ofHours(1).toMillis();
+	private static final long DAY = Duration.ofDays(1).toMillis();
+
+	private static long at(String instant) {
+		return Instant.parse(instant).toEpochMilli();
+	}
+
+	private static BackupCatalog.Entry backup(long timestamp, long size) {
+		String id = Long.toString(timestamp);
+		return new BackupCatalog.Entry(id, "auto", timestamp, Paths.get(id), size, 1, "sha256:" + id,
+				BackupFormat.INCREMENTAL);
+	}
+
+	private static List<BackupCatalog.Entry> backups(long first, long step, int count, long size) {
+		List<BackupCatalog.Entry> backups = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			backups.add(backup(first + i * step, size));
+		}
+		return backups;
+	}
+
+	// The backups select leaves, oldest first
+	private static List<BackupCatalog.Entry> kept(RetentionPolicy policy, List<BackupCatalog.Entry> backups, long now) {
+		List<BackupCatalog.Entry> kept = new ArrayList<>(backups);
+		kept.removeAll(policy.select(backups, now, UTC));
+		return kept;
+	}
+
+	private static long newest(List<BackupCatalog.Entry> backups) {
+		return backups.get(backups.size() - 1).getTimestamp();
+	}
+
+	@Test
+	void keepLastKeepsTheNewestBackups() {
+		List<BackupCatalog.Entry> backups = backups(at("2026-03-02T10:00:00Z"), HOUR, 5, 100);
+		List<BackupCatalog.Entry> expired = RetentionPolicy.keepLast(2).select(backups, newest(backups), UTC);
+		assertEquals(backups.subList(0, 3), expired);
+	}
+
+	@Test
+	void theNewestBackupIsAlwaysKept() {
+		List<BackupCatalog.Entry> backups = backups(at("2026-03-02T10:00:00Z"), HOUR, 3, 100);
+		assertEquals(List.of(backups.get(2)), kept(RetentionPolicy.keepLast(0), backups, newest(backups)));
+	}
+
+	@Test
+	void hourlyTierKeepsTheNewestBackupOfEachHour() {
+		List<BackupCatalog.Entry> backups = new ArrayList<>();
+		for (String time : List.of("10:00", "10:20", "10:40", "11:10", "11:50", "12:30")) {
+			backups.add(backup(at("2026-03-02T" + time + ":00Z"), 100));
+		}
+		RetentionPolicy policy = new RetentionPolicy(0, 2, 0, 0, 0, 0, 0);
+		assertEquals(List.of(backups.get(4), backups.get(5)), kept(policy, backups, newest(backups)));
+	}
+
+	@Test
+	void dailyWeeklyAndMonthlyTiersEachKeepTheNewestOfTheirLatestBuckets() {
+		// One backup a day at noon from 2026-01-01 to 2026-03-11, a Wednesday
+		List<BackupCatalog.Entry> backups = backups(at("2026-01-01T12:00:00Z"), DAY, 70, 100);
+		RetentionPolicy policy = new RetentionPolicy(0, 0, 3, 2, 2, 0, 0);
+
+		List<Long> kept = new ArrayList<>();
+		for (BackupCatalog.Entry entry : kept(policy, backups, newest(backups))) {
+			kept.add(entry.getTimestamp());
+		}
+		assertEquals(List.of(
+				// Newest of February
+				at("2026-02-28T12:00:00Z"),
+				// Newest of the week before, which ended on Sunday
+				at("2026-03-08T12:00:00Z"),
+				// The latest three days; the newest is also this week's and this month's
+				at("2026-03-09T12:00:00Z"),
+				at("2026-03-10T12:00:00Z"),
+				at("2026-03-11T12:00:00Z")), kept);
+	}
+
+	@Test
+	void keepLastAndTiersOverlapRatherThanAdd() {
+		// Two backups a day for three days
+		List<BackupCatalog.Entry> backups = backups(at("2026-03-02T06:00:00Z"), 12 * HOUR, 6, 100);
+		RetentionPolicy policy = new RetentionPolicy(2, 0, 2, 0, 0, 0, 0);
+		// keepLast holds both of the last day; the daily tier adds only the newest of the day before
+		assertEquals(backups.subList(3, 6), kept(policy, backups, newest(backups)));
+	}
+
+	@Test
+	void maxAgeDropsBackupsEveryTierWouldKeep() {
+		List<BackupCatalog.Entry> backups = backups(at("2026-03-02T12:00:00Z"), DAY, 5, 100);
+		RetentionPolicy policy = new RetentionPolicy(10, 0, 10, 0, 0, 0, (long) (2.5 * DAY));
+		assertEquals(backups.subList(2, 5), kept(policy, backups, newest(backups)));
+
+		// Even a newest backup older than the cap is kept
+		assertEquals(List.of(backups.get(4)), kept(policy, backups, newest(backups) + 30 * DAY));
+	}
+
+	@Test
+	void maxTotalSizeKeepsTheNewestBackupsThatFit() {
+		List<BackupCatalog.Entry> backups = backups(at("2026-03-02T12:00:00Z"), HOUR, 5, 100);
+		RetentionPolicy policy = new RetentionPolicy(10, 0, 0, 0, 0, 250, 0);
+		assertEquals(backups.subList(3, 5), kept(policy, backups, newest(backups)));
+
+		List<BackupCatalog.Entry> large = new ArrayList<>(backups.subList(0, 4));
+		large.add(backup(newest(backups), 1_000));
+		List<BackupCatalog.Entry> kept = kept(policy, large, newest(large));
+		assertEquals(1, kept.size());
+		assertTrue(kept.get(0).getSize() > 250);
+	}
+}